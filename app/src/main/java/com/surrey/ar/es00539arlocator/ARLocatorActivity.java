@@ -18,17 +18,22 @@ package com.surrey.ar.es00539arlocator;
 import android.app.Activity;
 import android.app.ActivityManager;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.os.Build;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseLongArray;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewStub;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -36,7 +41,6 @@ import android.widget.Toast;
 import com.google.ar.core.Anchor;
 import com.google.ar.core.ArCoreApk;
 import com.google.ar.core.AugmentedImage;
-import com.google.ar.core.AugmentedImageDatabase;
 import com.google.ar.core.Config;
 import com.google.ar.core.Frame;
 import com.google.ar.core.HitResult;
@@ -47,6 +51,7 @@ import com.google.ar.core.TrackingState;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 import com.google.ar.core.exceptions.UnavailableApkTooOldException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
+import com.google.ar.core.exceptions.UnavailableDeviceNotCompatibleException;
 import com.google.ar.core.exceptions.UnavailableSdkTooOldException;
 import com.google.ar.core.exceptions.UnavailableUserDeclinedInstallationException;
 import com.google.ar.sceneform.AnchorNode;
@@ -58,11 +63,32 @@ import com.google.ar.sceneform.math.Vector3;
 import com.google.ar.sceneform.rendering.ModelRenderable;
 import com.google.ar.sceneform.ux.ArFragment;
 import com.google.ar.sceneform.ux.BaseArFragment;
-import com.google.ar.sceneform.ux.TransformableNode;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -71,33 +97,83 @@ import java.util.function.Consumer;
 public class ARLocatorActivity extends AppCompatActivity {
   private static final String TAG = ARLocatorActivity.class.getSimpleName();
   private static final double MIN_OPENGL_VERSION = 3.0;
+  private static final String TYPE_KEYS = "keys";
+  private static final String TYPE_OCULOS = "oculos";
+  private static final String TYPE_EARTH = "earth";
+  private static final String TYPE_TRIANGLE = "triangle";
+  // Largest plan decode used to find the walls, larger plans are downsampled
+  private static final int MAX_NAVIGATION_PIXELS = 2 * 1024 * 1024;
+  // Map projections per second, the map is not redrawn faster than this anyway
+  private static final float MAP_UPDATE_RATE = OvermapView.DEFAULT_MAX_REDRAW_RATE;
+  // Image database partition detected while the location is unknown, with every origin marker
+  private static final String DISCOVERY_PARTITION = "";
+  // Origin marker of the positions saved in the single log used before there were locations
+  private static final String LEGACY_ORIGIN_MARKER = "augmented_images_earth";
 
   private ArFragment arFragment;
-  private ModelRenderable currentRenderable;
-  private ModelRenderable keysRenderable;
-  private ModelRenderable oculosRenderable;
-  private ModelRenderable earthRenderable;
-  private ModelRenderable triangleRenderable;
-  private AnchorNode keysNode;
-  private AnchorNode oculosNode;
+  private RenderableRegistry renderables;
+  private final ObjectRegistry objectRegistry = new ObjectRegistry();
+  private final SparseArray<AnchorNode> objectNodes = new SparseArray<>();
+  // Recycles object nodes by type instead of creating new ones for every placement
+  private NodePool nodePool;
+  // Keys of objects in the position store, by object id, and the same keys as a set to tell the
+  // objects of this device from the shared ones. Set through persistKey()
+  private final SparseLongArray persistentKeys = new SparseLongArray();
+  private final Set<Long> ownKeys = new HashSet<>();
+  private PositionStore positionStore;
+  // Shares positions with other devices through a relay, see startSync()
+  private SyncClient syncClient;
+  // Objects placed by other devices, by their key
+  private final Map<Long, TrackedObject> syncedObjects = new HashMap<>();
+  private List<PositionLog.Entry> restoredPositions;
+  // Per-frame scratch buffers, reused so the frame path does not allocate
+  private final float[] triangleRotation = new float[4];
+  private final Quaternion triangleWorldRotation = new Quaternion();
   private AnchorNode earthNode;
+  // Marker poses only create a new anchor once they really moved
+  private final AnchorUpdatePolicy anchorPolicy = new AnchorUpdatePolicy();
+  private final float[] markerPose = new float[7];
   private Node triangleNode;
   private ImageButton modelButton;
   private ImageButton mapButton;
   private TextView locationView;
-  private OvermapView overmapView;
+  private Overmap overmapView;
   private Session session;
   private boolean installRequested;
-  private boolean shouldConfigureSession;
+  // Set while the session is created and configured off the main thread, see startSession()
+  private boolean sessionStarting;
+  private boolean resumed;
   private ArSceneView arSceneView;
-  private String augmented_keys;
-  private String augmented_images_earth;
-  private boolean location_known;
-
-  protected void addModel(Consumer<ModelRenderable> im, int resource) {
-      ModelRenderable.builder()
-              .setSource(this, resource)
-              .build()
+  private LocationRegistry locations;
+  // Frame update logic shared with trace replay, holds the earth origin and current location
+  private LocatorEngine engine;
+  // Set while frames are being recorded, see toggleRecording()
+  private TraceRecorder traceRecorder;
+  private final TraceFrame traceFrame = new TraceFrame();
+  // Detects the markers of the current location and its neighbors, see swapImageDb()
+  private AugmentedImageDbLoader imageDbLoader;
+  // Owned by the image database loader once the session is configured
+  private Config sessionConfig;
+  // Per-stage timings of onUpdateFrame, long press the location to dump them
+  private final FrameProfiler frameProfiler = new FrameProfiler();
+  // Splits onUpdateFrame into tasks run by priority within a time budget
+  private final FrameScheduler frameScheduler =
+          new FrameScheduler(Clock.SYSTEM, FrameScheduler.DEFAULT_BUDGET_NANOS);
+  // Startup stage timings up to the first frame, appended to files/startup_times.txt
+  private static final Clock STARTUP_CLOCK = SystemClock::elapsedRealtimeNanos;
+  // Whether an activity was already created in this process, a later one is a warm start
+  private static boolean processStarted;
+  private boolean coldStart;
+  private StartupPipeline startup;
+  private boolean firstFrameSeen;
+  // Runs the blocking startup stages, such as session creation, off the main thread
+  private final ExecutorService startupExecutor = Executors.newSingleThreadExecutor();
+  private FrameScheduler.Task imagesTask;
+  // The frame being updated, only set during onUpdateFrame
+  private Frame currentFrame;
+
+  protected void addModel(String type, Consumer<ModelRenderable> im) {
+      renderables.get(type)
               .thenAccept(im)
               .exceptionally(
                       throwable -> {
@@ -109,12 +185,6 @@ public class ARLocatorActivity extends AppCompatActivity {
                       });
   }
 
-  private void addAugmentedImage(AugmentedImageDatabase augmentedImageDatabase, int resource) {
-        augmentedImageDatabase.addImage(
-                getResources().getResourceEntryName(resource),
-                BitmapFactory.decodeResource(getResources(), resource));
-  }
-
   @Override
   @SuppressWarnings({"AndroidApiChecker", "FutureReturnValueIgnored"})
   // CompletableFuture requires api level 24
@@ -122,52 +192,67 @@ public class ARLocatorActivity extends AppCompatActivity {
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
     Log.e(TAG, "Initializing AR Locator");
+    // A cold start is timed from the start of the process, a warm one from here
+    coldStart = !processStarted;
+    processStarted = true;
+    startup = new StartupPipeline(STARTUP_CLOCK, coldStart
+            ? Process.getStartElapsedRealtime() * 1_000_000L : STARTUP_CLOCK.nanoTime());
+    startup.mark("create");
 
     installRequested = false;
-    location_known = false;
 
     if (!checkIsSupportedDeviceOrFinish(this)) {
       return;
     }
 
-    setContentView(R.layout.activity_ux);
-
-    addModel(renderable -> {
-        oculosRenderable = renderable;
-        currentRenderable = renderable;
-    }, R.raw.oculos);
-
-    addModel(renderable -> {
-        keysRenderable = renderable;
-    }, R.raw.keys);
+    startup.run("content view", () -> {
+        setContentView(R.layout.activity_ux);
+        return null;
+    });
+    locations = startup.run("locations", this::loadLocations);
+    engine = new LocatorEngine(locations, objectRegistry, anchorPolicy);
+    imageDbLoader = new AugmentedImageDbLoader(this);
 
-    addModel(renderable -> {
-        earthRenderable = renderable;
-    }, R.raw.earth);
+    // Models load on first use, the model button cycles through the placeable ones
+    renderables = new RenderableRegistry(this,
+            RenderableRegistry.DEFAULT_MAX_CONCURRENT_LOADS, RenderableRegistry.DEFAULT_MEMORY_BUDGET);
+    renderables.registerPlaceable(TYPE_OCULOS, R.raw.oculos, R.drawable.preview_glasses);
+    renderables.registerPlaceable(TYPE_KEYS, R.raw.keys, R.drawable.preview_keys);
+    renderables.register(TYPE_EARTH, R.raw.earth);
+    renderables.register(TYPE_TRIANGLE, R.raw.triangle);
+    engine.setCurrentType(TYPE_OCULOS);
 
+    // The guidance model loads once the first frame is shown, see onFirstFrame()
     triangleNode = new Node();
-    addModel(renderable -> {
-        triangleRenderable = renderable;
-        triangleNode.setParent(arFragment.getArSceneView().getScene().getCamera());
-        triangleNode.setLocalPosition(new Vector3(0f,-0.1f,-0.2f));
-        triangleNode.setRenderable(renderable);
-    }, R.raw.triangle);
 
-
-
-    overmapView = findViewById(R.id.overmapView);
+    ViewStub overmapStub = findViewById(R.id.overmapStub);
+    overmapStub.setLayoutResource(getResources().getBoolean(R.bool.overmap_render_thread)
+            ? R.layout.overmap_surface_view : R.layout.overmap_view);
+    overmapView = (Overmap) overmapStub.inflate();
+    // Hidden until the map button is pressed
+    overmapView.setVisibility(View.GONE);
     modelButton = findViewById(R.id.modelButton);
     mapButton = findViewById(R.id.mapButton);
     locationView = findViewById(R.id.locationView);
     arFragment = (ArFragment) getSupportFragmentManager().findFragmentById(R.id.ux_fragment);
     arSceneView = arFragment.getArSceneView();
-    augmented_keys = getResources().getResourceEntryName(R.drawable.augmented_keys);
-    augmented_images_earth = getResources().getResourceEntryName(R.drawable.augmented_images_earth);
+    // Every node keeps its model from being evicted until the pool drops it
+    nodePool = new NodePool(arFragment.getTransformationSystem(),
+            (type, node) -> {
+                renderables.retain(type);
+                addModel(type, node::setRenderable);
+            },
+            renderables::release, NodePool.DEFAULT_MAX_IDLE_PER_TYPE);
 
-    // ##### Set Origin point for map #####
-    overmapView.setOrigin(298, 250);
+    // The map and its origin are set by the location, see res/raw/locations.json
+    overmapView.setObjects(objectRegistry);
+    overmapView.setTrail(engine.getTrail());
 
     locationView.setText("Location: Unknown");
+    locationView.setOnLongClickListener((View v) -> {
+        dumpFrameStats(true);
+        return true;
+    });
 
     mapButton.setVisibility(View.GONE);
     mapButton.setOnClickListener((View v) -> {
@@ -179,203 +264,762 @@ public class ARLocatorActivity extends AppCompatActivity {
     });
 
     modelButton.setOnClickListener((View v) -> {
-        if (currentRenderable == oculosRenderable) {
-            currentRenderable = keysRenderable;
-            modelButton.setImageResource(R.drawable.preview_keys);
-        } else if (currentRenderable == keysRenderable) {
-            currentRenderable = oculosRenderable;
-            modelButton.setImageResource(R.drawable.preview_glasses);
-        }
+        String type = renderables.nextPlaceableType(engine.getCurrentType());
+        engine.setCurrentType(type);
+        modelButton.setImageResource(renderables.getPreview(type));
+        renderables.prefetch(type);
+    });
+    modelButton.setOnLongClickListener((View v) -> {
+        toggleRecording();
+        return true;
     });
 
+    frameScheduler.add("guidance", FrameScheduler.PRIORITY_CRITICAL, this::updateGuidance);
+    imagesTask = frameScheduler.add("augmented images", FrameScheduler.PRIORITY_HIGH, this::updateImages);
+    frameScheduler.add("map projection", FrameScheduler.PRIORITY_NORMAL, this::updateMap)
+            .setMaxRate(MAP_UPDATE_RATE);
+
     initializeSceneView();
 
     arFragment.setOnTapArPlaneListener(
         (HitResult hitResult, Plane plane, MotionEvent motionEvent) -> {
-          if (currentRenderable == null) {
-            return;
-          }
+          // Every tap places a new object of the current type
           Anchor anchor = hitResult.createAnchor();
-          if (currentRenderable == oculosRenderable) {
-              oculosNode = addNode(anchor, oculosNode, oculosRenderable);
-          } else if (currentRenderable == keysRenderable) {
-              keysNode = addNode(anchor, keysNode, keysRenderable);
+          if (traceRecorder != null) {
+              Pose pose = anchor.getPose();
+              traceFrame.addTap(pose.tx(), pose.ty(), pose.tz(),
+                      pose.qx(), pose.qy(), pose.qz(), pose.qw());
           }
+          placeObject(engine.getCurrentType(), anchor, null);
         });
   }
 
-    private AnchorNode addNode(Anchor anchor, AnchorNode currentNode, ModelRenderable renderable) {
-        // Detach if it exists
+    // Reads the locations and their markers from res/raw/locations.json
+    private LocationRegistry loadLocations() {
+        LocationRegistry registry = new LocationRegistry();
+        try (InputStream in = getResources().openRawResource(R.raw.locations)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            JSONArray list = new JSONObject(new String(bytes.toByteArray(), StandardCharsets.UTF_8))
+                    .getJSONArray("locations");
+            for (int i = 0; i < list.length(); i++) {
+                JSONObject json = list.getJSONObject(i);
+                String name = json.getString("name");
+                if (json.has("plan")) {
+                    String plan = json.getString("plan");
+                    registry.addLocation(new Location(name, plan, openPlan(plan)));
+                } else {
+                    registry.addLocation(new Location(name, json.getString("map"),
+                            json.getInt("originX"), json.getInt("originY")));
+                }
+                JSONArray markers = json.getJSONArray("markers");
+                for (int j = 0; j < markers.length(); j++) {
+                    JSONObject marker = markers.getJSONObject(j);
+                    if (marker.optBoolean("origin")) {
+                        registry.addOriginMarker(marker.getString("image"), name);
+                    } else {
+                        registry.addObjectMarker(marker.getString("image"), name,
+                                marker.getString("object"));
+                    }
+                }
+            }
+            // Neighbors may be listed before they are defined
+            for (int i = 0; i < list.length(); i++) {
+                JSONObject json = list.getJSONObject(i);
+                JSONArray neighbors = json.optJSONArray("neighbors");
+                for (int j = 0; neighbors != null && j < neighbors.length(); j++) {
+                    registry.addNeighbors(json.getString("name"), neighbors.getString(j));
+                }
+            }
+        } catch (IOException | JSONException e) {
+            throw new IllegalStateException("Could not read locations", e);
+        }
+        return registry;
+    }
+
+    // Maps a compiled plan straight out of the APK, where it is stored uncompressed
+    private FloorPlan openPlan(String name) throws IOException {
+        int resource = getResources().getIdentifier(name, "raw", getPackageName());
+        AssetFileDescriptor descriptor = getResources().openRawResourceFd(resource);
+        if (descriptor == null) {
+            throw new IOException("Floor plan " + name + " is compressed in the APK");
+        }
+        try (FileInputStream in = descriptor.createInputStream()) {
+            return FloorPlan.map(in.getChannel(), descriptor.getStartOffset(), descriptor.getLength());
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    private int[] markerImages(List<LocationRegistry.Marker> markers) {
+        int[] images = new int[markers.size()];
+        int i = 0;
+        for (LocationRegistry.Marker marker : markers) {
+            images[i++] = getResources().getIdentifier(marker.getName(), "drawable", getPackageName());
+        }
+        return images;
+    }
+
+    // Swaps the map, origin and saved positions without recreating the activity
+    private void switchLocation(Location location) {
+        locationView.setText("Location: " + location.getName());
+        if (location.getPlan() != null) {
+            overmapView.setPlan(location.getPlan());
+        } else {
+            overmapView.setMap(getResources().getIdentifier(location.getMap(), "drawable", getPackageName()),
+                    location.getOriginX(), location.getOriginY());
+        }
+        mapButton.setVisibility(View.VISIBLE);
+        loadNavigation(location);
+        swapImageDb(location);
+
+        // Have the models ready for the object markers of this location
+        for (LocationRegistry.Marker marker : locations.getMarkers(location)) {
+            if (!marker.isOrigin()) {
+                renderables.prefetch(marker.getObjectType());
+            }
+        }
+
+        // Each location keeps its own positions, relative to its own origin marker. The new
+        // store waits for the old one to close, which may be on the same file
+        CompletableFuture<Void> previousClosed = CompletableFuture.completedFuture(null);
+        if (positionStore != null) {
+            releaseObjects();
+            previousClosed = positionStore.close();
+        }
+        persistentKeys.clear();
+        ownKeys.clear();
+        restoredPositions = null;
+        positionStore = new PositionStore(positionsFile(location), previousClosed);
+        positionStore.load()
+                .thenAcceptAsync(entries -> {
+                    if (engine.getLocation() == location) {
+                        restoredPositions = entries;
+                        restorePositions();
+                    }
+                }, this::runOnUiThread)
+                .exceptionally(throwable -> {
+                    Log.e(TAG, "Could not restore object positions", throwable);
+                    return null;
+                });
+        startSync(location);
+    }
+
+    // Named by a hash of the location name, which need not be a valid file name. Positions saved
+    // under an older name are moved to it: the single positions.log held positions relative to
+    // the earth marker, and later logs were named after the location itself
+    private File positionsFile(Location location) {
+        File file = new File(getFilesDir(),
+                "positions_" + AugmentedImageDbLoader.hash(location.getName()) + ".log");
+        if (file.exists()) {
+            return file;
+        }
+        File named = new File(getFilesDir(), "positions_" + location.getName() + ".log");
+        File single = new File(getFilesDir(), "positions.log");
+        File legacy = named.isFile() ? named : null;
+        if (legacy == null && single.isFile()) {
+            for (LocationRegistry.Marker marker : locations.getMarkers(location)) {
+                if (marker.isOrigin() && marker.getName().equals(LEGACY_ORIGIN_MARKER)) {
+                    legacy = single;
+                }
+            }
+        }
+        if (legacy != null && !legacy.renameTo(file)) {
+            Log.w(TAG, "Could not move " + legacy + " to " + file + ", its positions are not restored");
+        }
+        return file;
+    }
+
+    // Shares the positions of the location with other devices when a relay is configured
+    private void startSync(Location location) {
+        if (syncClient != null) {
+            syncClient.close();
+            syncClient = null;
+        }
+        syncedObjects.clear();
+        String relay = getString(R.string.sync_relay);
+        if (relay.isEmpty()) {
+            return;
+        }
+        int colon = relay.lastIndexOf(':');
+        String host = colon < 0 ? relay : relay.substring(0, colon);
+        int port = colon < 0 ? SyncProtocol.DEFAULT_PORT : Integer.parseInt(relay.substring(colon + 1));
+        try {
+            // Decoded on the sync thread, only the registry and scene changes run here
+            syncClient = new SyncClient(host, port, location.getName(),
+                    changes -> runOnUiThread(() -> applySynced(location, changes)));
+            syncClient.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not start sharing positions", e);
+        }
+    }
+
+    private void share(TrackedObject object) {
+        long key = persistentKeys.get(object.getId(), -1);
+        if (syncClient != null && key != -1) {
+            syncClient.put(key, object.getType(), object.getX(), object.getY(), object.getZ());
+        }
+    }
+
+    // Places, moves or removes the objects shared by other devices
+    private void applySynced(Location location, List<SyncProtocol.Change> changes) {
+        if (engine.getLocation() != location || session == null) {
+            return;
+        }
+        for (SyncProtocol.Change change : changes) {
+            if (ownKeys.contains(change.key)) {
+                // Tracked by this device, which is where it is most accurate
+                continue;
+            }
+            TrackedObject object = syncedObjects.get(change.key);
+            if (change.isRemoval()) {
+                if (object != null) {
+                    syncedObjects.remove(change.key);
+                    AnchorNode node = objectNodes.get(object.getId());
+                    if (node != null) {
+                        nodePool.release(object.getType(), node);
+                        objectNodes.remove(object.getId());
+                    }
+                    objectRegistry.remove(object);
+                }
+                continue;
+            }
+            // Added again when it left the registry with the objects of another location
+            if (object == null || !objectRegistry.move(object, change.x, change.y, change.z)) {
+                object = objectRegistry.add(change.type, change.x, change.y, change.z);
+                syncedObjects.put(change.key, object);
+            }
+            Anchor anchor = session.createAnchor(relativePose(change.x, change.y, change.z));
+            objectNodes.put(object.getId(),
+                    addNode(anchor, objectNodes.get(object.getId()), object.getType()));
+        }
+    }
+
+    // Guidance points straight at the target until the walls of the new plan are known
+    private void loadNavigation(Location location) {
+        engine.setNavigation(null);
+        CompletableFuture.supplyAsync(() -> {
+            // Compiled plans carry their grid
+            OccupancyGrid grid = location.getPlan() != null ? location.getPlan().readGrid()
+                    : decodeGrid(getResources().getIdentifier(location.getMap(), "drawable", getPackageName()));
+            return new NavigationGuide(grid, location.getOriginX(), location.getOriginY(),
+                    NavigationGuide.DEFAULT_MAX_FIELDS);
+        }).thenAcceptAsync(navigation -> {
+            if (engine.getLocation() == location) {
+                engine.setNavigation(navigation);
+            }
+        }, this::runOnUiThread).exceptionally(throwable -> {
+            Log.e(TAG, "Could not read the walls of " + location.getName(), throwable);
+            return null;
+        });
+    }
+
+    // Finds the walls of a plain drawable plan, decoded within the bitmap budget
+    private OccupancyGrid decodeGrid(int map) {
+        BitmapLoader bitmaps = BitmapLoader.get(this);
+        int[] size = new int[2];
+        bitmaps.readSize(map, size);
+        int sampleSize = 1;
+        while ((long) size[0] * size[1] / (sampleSize * sampleSize) > MAX_NAVIGATION_PIXELS
+                && 2 * sampleSize <= OccupancyGrid.DEFAULT_CELL_PIXELS) {
+            sampleSize *= 2;
+        }
+        // Decoded like OvermapView does, so grid cells line up with the map pixels. Only the
+        // luminance is read, half the bytes of ARGB_8888
+        int[] usedSampleSize = new int[1];
+        Bitmap plan = bitmaps.decodeSampled(map, sampleSize,
+                Integer.highestOneBit(OccupancyGrid.DEFAULT_CELL_PIXELS), Bitmap.Config.RGB_565,
+                usedSampleSize);
+        if (plan == null) {
+            throw new IllegalStateException("Could not decode " + getResources().getResourceEntryName(map));
+        }
+        int[] pixels = new int[plan.getWidth() * plan.getHeight()];
+        plan.getPixels(pixels, 0, plan.getWidth(), 0, 0, plan.getWidth(), plan.getHeight());
+        OccupancyGrid grid = OccupancyGrid.fromPixels(pixels, plan.getWidth(), plan.getHeight(),
+                usedSampleSize[0], OccupancyGrid.DEFAULT_CELL_PIXELS, OccupancyGrid.DEFAULT_WALL_LUMINANCE);
+        bitmaps.release(plan);
+        return grid;
+    }
+
+    private AnchorNode addNode(Anchor anchor, AnchorNode currentNode, String type) {
+        // Move the existing node to the new anchor, keeping its model
         if (currentNode != null) {
-            currentNode.getAnchor().detach();
-            currentNode.setParent(null);
+            NodePool.reanchor(currentNode, anchor);
+            return currentNode;
         }
+        return nodePool.acquire(type, anchor, arSceneView.getScene());
+    }
+
+    // The objects of the previous location are saved in its store, their nodes go back to the pool
+    private void releaseObjects() {
+        List<TrackedObject> objects = objectRegistry.getObjects();
+        for (int i = objects.size() - 1; i >= 0; i--) {
+            TrackedObject object = objects.get(i);
+            AnchorNode node = objectNodes.get(object.getId());
+            if (node != null) {
+                nodePool.release(object.getType(), node);
+            }
+            objectRegistry.remove(object);
+        }
+        objectNodes.clear();
+        engine.clearMarkerObjects();
+    }
+
+    // Places (or re-anchors, when existing is not null) an object and keeps the registry in sync
+    private TrackedObject placeObject(String type, Anchor anchor, TrackedObject existing) {
+        Pose pose = anchor.getPose();
+        TrackedObject object = engine.place(type, pose.tx(), pose.ty(), pose.tz(), existing);
+        AnchorNode node = addNode(anchor, objectNodes.get(object.getId()), type);
+        objectNodes.put(object.getId(), node);
+        persistPosition(object);
+        return object;
+    }
+
+    // Positions are only meaningful relative to the earth marker, so wait until it is known
+    private void persistPosition(TrackedObject object) {
+        if (engine.getLocation() == null) {
+            return;
+        }
+        long key = persistentKeys.get(object.getId(), -1);
+        if (key == -1) {
+            key = positionStore.newKey();
+            persistKey(object, key);
+        }
+        positionStore.put(key, object.getType(), object.getX(), object.getY(), object.getZ());
+        share(object);
+    }
 
-        // Create the Anchor.
-        AnchorNode anchorNode = new AnchorNode(anchor);
-        anchorNode.setParent(arSceneView.getScene());
+    private void persistKey(TrackedObject object, long key) {
+        persistentKeys.put(object.getId(), key);
+        ownKeys.add(key);
+    }
 
-        // Create the transformable and add it to the anchor.
-        TransformableNode node = new TransformableNode(arFragment.getTransformationSystem());
-        node.setParent(anchorNode);
-        node.setRenderable(renderable);
-        node.select();
+    // Marker objects keep the same key across runs so they are not restored twice
+    private static long markerKey(String name) {
+        return (1L << 62) | (name.hashCode() & 0xffffffffL);
+    }
 
-        return anchorNode;
+    // Re-anchors the objects saved by earlier runs around the earth marker
+    private void restorePositions() {
+        Location location = engine.getLocation();
+        if (restoredPositions == null || location == null || session == null) {
+            return;
+        }
+        Map<Long, String> markerKeys = new HashMap<>();
+        for (LocationRegistry.Marker marker : locations.getMarkers(location)) {
+            if (!marker.isOrigin()) {
+                markerKeys.put(markerKey(marker.getName()), marker.getName());
+            }
+        }
+        for (PositionLog.Entry entry : restoredPositions) {
+            String marker = markerKeys.get(entry.key);
+            if (marker != null && engine.getMarkerObject(marker) != null) {
+                // Already seen during this run
+                continue;
+            }
+            TrackedObject object = objectRegistry.add(entry.type, entry.x, entry.y, entry.z);
+            persistKey(object, entry.key);
+            objectNodes.put(object.getId(), addNode(
+                    session.createAnchor(relativePose(entry.x, entry.y, entry.z)), null, entry.type));
+            share(object);
+            if (marker != null) {
+                engine.putMarkerObject(marker, object);
+            }
+        }
+        restoredPositions = null;
+    }
+
+    // World pose of a position relative to the earth marker
+    private Pose relativePose(float x, float y, float z) {
+        float[] earthOrigin = engine.getEarthOrigin();
+        return Pose.makeTranslation(earthOrigin[0] + x, earthOrigin[1] + y, earthOrigin[2] - z);
     }
     private void initializeSceneView() {
         arSceneView.getScene().addOnUpdateListener(this::onUpdateFrame);
     }
 
-    private void pointTriangle(AnchorNode node) {
-        Vector3 trianglePosition = triangleNode.getWorldPosition();
-        Vector3 nodePosition = node.getWorldPosition();
-        Vector3 direction = Vector3.subtract(trianglePosition, nodePosition);
-        Quaternion lookRotation = Quaternion.lookRotation(direction, Vector3.up());
-        triangleNode.setWorldRotation(lookRotation);
+    // Points the guidance triangle at the nearest object of the selected type
+    private void pointTriangle() {
+        TrackedObject target = engine.getGuidanceTarget();
+        if (target == null) {
+            triangleNode.setEnabled(false);
+            return;
+        }
+        // The world model matrix is cached by the node, reading it does not allocate
+        float[] triangle = triangleNode.getWorldModelMatrix().data;
+        if (engine.aim(target, triangle[12], triangle[13], triangle[14], triangleRotation)) {
+            triangleWorldRotation.set(triangleRotation[0], triangleRotation[1],
+                    triangleRotation[2], triangleRotation[3]);
+            triangleNode.setWorldRotation(triangleWorldRotation);
+        }
         triangleNode.setEnabled(true);
     }
 
-    public static Vector3 getRelativePosition(Vector3 origin, Vector3 position) {
-        Vector3 distance = Vector3.subtract(position, origin);
-        Vector3 relativePosition = new Vector3();
-        relativePosition.x = Vector3.dot(distance, Vector3.right());
-        relativePosition.y = Vector3.dot(distance, Vector3.up());
-        relativePosition.z = Vector3.dot(distance, Vector3.forward());
-
-        return relativePosition;
+    // Logs the frame timings, and also writes them to files/frame_stats.txt when toFile is set
+    private void dumpFrameStats(boolean toFile) {
+        StringBuilder stats = new StringBuilder();
+        try {
+            frameProfiler.dump(stats);
+            frameScheduler.dump(stats);
+            imageDbLoader.dump(stats);
+            nodePool.dump(stats);
+            BitmapLoader.get(this).dump(stats);
+            if (syncClient != null) {
+                syncClient.dump(stats);
+            }
+            startup.dump(stats);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+        }
+        Log.i(TAG, "Frame timings (ms)\n" + stats);
+        if (toFile) {
+            File file = new File(getFilesDir(), "frame_stats.txt");
+            try (Writer writer = new FileWriter(file)) {
+                writer.write(stats.toString());
+                Toast.makeText(this, "Frame timings written to " + file, Toast.LENGTH_SHORT).show();
+            } catch (IOException e) {
+                Log.e(TAG, "Could not write frame timings", e);
+            }
+        }
     }
 
     private void onUpdateFrame(FrameTime frameTime) {
-        Frame frame = arSceneView.getArFrame();
-        Collection<AugmentedImage> updatedAugmentedImages = frame.getUpdatedTrackables(AugmentedImage.class);
+        long frameStart = frameProfiler.start();
+        frameProfiler.record(FrameProfiler.STAGE_FRAME_INTERVAL,
+                frameTime.getDeltaTime(TimeUnit.NANOSECONDS));
+        currentFrame = arSceneView.getArFrame();
+        if (!firstFrameSeen && currentFrame != null && currentFrame.getTimestamp() != 0) {
+            onFirstFrame();
+        }
+
+        float[] camera = arSceneView.getScene().getCamera().getWorldModelMatrix().data;
+        engine.updateCamera(camera[12], camera[13], camera[14]);
+        if (traceRecorder != null) {
+            traceCurrentFrame();
+        }
 
+        frameScheduler.runFrame();
+        recordFrame();
+        currentFrame = null;
+        frameProfiler.stop(FrameProfiler.STAGE_FRAME, frameStart);
+    }
+
+    private void updateGuidance() {
         if (triangleNode != null) {
-            if (currentRenderable == keysRenderable && keysNode != null) {
-                pointTriangle(keysNode);
-            } else if (currentRenderable == oculosRenderable && oculosNode != null) {
-                pointTriangle(oculosNode);
-            } else {
-                triangleNode.setEnabled(false);
-            }
+            long start = frameProfiler.start();
+            pointTriangle();
+            frameProfiler.stop(FrameProfiler.STAGE_GUIDANCE, start);
         }
+    }
 
+    private void updateMap() {
         if (overmapView.getVisibility() == View.VISIBLE) {
-            // Draw the map since its visible
-            //390, 250
-            Vector3 earth = earthNode.getWorldPosition();
-            Vector3 camera = arSceneView.getScene().getCamera().getWorldPosition();
-            Vector3 relative = getRelativePosition(earth, camera);
-            overmapView.setCamera(relative);
-            //Log.e(TAG, "Camera Relative: " + relative);
-
-            if (keysNode != null) {
-                Vector3 keys = keysNode.getWorldPosition();
-                Vector3 keysRelative = getRelativePosition(earth, keys);
-                overmapView.setKeys(keysRelative);
-                //Log.e(TAG, "Keys Relative: " + keysRelative);
-            }
-            if (oculosNode != null) {
-                Vector3 oculos = oculosNode.getWorldPosition();
-                Vector3 oculosRelative = getRelativePosition(earth, oculos);
-                overmapView.setOculos(oculosRelative);
-                //Log.e(TAG, "Oculos Relative: " + oculosRelative);
-            }
+            // Draw the map since its visible, objects are read from the registry
+            long start = frameProfiler.start();
+            float[] cameraRelative = engine.getCameraRelative();
+            overmapView.updateFrame(cameraRelative[0], cameraRelative[2]);
+            frameProfiler.stop(FrameProfiler.STAGE_MAP, start);
         }
+    }
 
-        for (AugmentedImage augmentedImage : updatedAugmentedImages) {
-            if (augmentedImage.getTrackingState() == TrackingState.TRACKING &&
-                    augmentedImage.getTrackingMethod() == AugmentedImage.TrackingMethod.FULL_TRACKING) {
+    private void updateImages() {
+        long start = frameProfiler.start();
+        // Updates of the frames this task was deferred on are gone, go through every image
+        Collection<AugmentedImage> augmentedImages = imagesTask.wasDeferred()
+                ? session.getAllTrackables(AugmentedImage.class)
+                : currentFrame.getUpdatedTrackables(AugmentedImage.class);
+        for (AugmentedImage augmentedImage : augmentedImages) {
+            updateImage(augmentedImage);
+        }
+        frameProfiler.stop(FrameProfiler.STAGE_IMAGES, start);
+    }
 
-                Anchor anchor = augmentedImage.createAnchor(augmentedImage.getCenterPose());
-                String name = augmentedImage.getName();
+    private void updateImage(AugmentedImage augmentedImage) {
+        if (augmentedImage.getTrackingState() != TrackingState.TRACKING
+                || augmentedImage.getTrackingMethod() != AugmentedImage.TrackingMethod.FULL_TRACKING) {
+            return;
+        }
+        String name = augmentedImage.getName();
+        Pose center = augmentedImage.getCenterPose();
+        LocationRegistry.Marker marker = engine.updateImage(name,
+                TraceFrame.TRACKING, TraceFrame.FULL_TRACKING,
+                center.tx(), center.ty(), center.tz(),
+                center.qx(), center.qy(), center.qz(), center.qw(), markerPose);
+        if (marker == null) {
+            return;
+        }
+        Anchor anchor = augmentedImage.createAnchor(new Pose(
+                new float[] {markerPose[0], markerPose[1], markerPose[2]},
+                new float[] {markerPose[3], markerPose[4], markerPose[5], markerPose[6]}));
 
-                if (name.equals(augmented_keys)) {
-                    keysNode = addNode(anchor, keysNode, keysRenderable);
-                } else if (name.equals(augmented_images_earth)) {
-                    earthNode = addNode(anchor, earthNode, earthRenderable);
-                    if (!location_known) {
-                        locationView.setText("Location: Office");
-                        mapButton.setVisibility(View.VISIBLE);
-                        location_known = true;
+        if (!marker.isOrigin()) {
+            TrackedObject object = engine.getMarkerObject(name);
+            if (object == null) {
+                // Take over the object another device shared for this marker, if any
+                object = syncedObjects.remove(markerKey(name));
+                if (object == null) {
+                    object = objectRegistry.add(marker.getObjectType(), 0f, 0f, 0f);
+                }
+                persistKey(object, markerKey(name));
+                engine.putMarkerObject(name, object);
+            }
+            placeObject(marker.getObjectType(), anchor, object);
+        } else {
+            earthNode = addNode(anchor, earthNode, TYPE_EARTH);
+            Pose pose = anchor.getPose();
+            boolean first = engine.getLocation() == null;
+            if (engine.moveOrigin(marker, pose.tx(), pose.ty(), pose.tz())) {
+                switchLocation(marker.getLocation());
+                if (first) {
+                    // Save what was placed before any location was known
+                    for (TrackedObject object : objectRegistry.getObjects()) {
+                        persistPosition(object);
                     }
                 }
             }
         }
     }
 
-    private boolean setupAugmentedImageDb(Config config) {
-        AugmentedImageDatabase augmentedImageDatabase;
-        augmentedImageDatabase = new AugmentedImageDatabase(session);
-        addAugmentedImage(augmentedImageDatabase, R.drawable.augmented_images_earth);
-        addAugmentedImage(augmentedImageDatabase, R.drawable.augmented_keys);
-        config.setAugmentedImageDatabase(augmentedImageDatabase);
-        return true;
+    // Copies what ARCore delivered for this frame into the trace, whatever gets scheduled
+    private void traceCurrentFrame() {
+        Pose cameraPose = currentFrame.getCamera().getPose();
+        traceFrame.setCamera(currentFrame.getTimestamp(), cameraPose.tx(), cameraPose.ty(),
+                cameraPose.tz(), cameraPose.qx(), cameraPose.qy(), cameraPose.qz(),
+                cameraPose.qw());
+        for (AugmentedImage augmentedImage : currentFrame.getUpdatedTrackables(AugmentedImage.class)) {
+            Pose center = augmentedImage.getCenterPose();
+            traceFrame.addImage(augmentedImage.getName(),
+                    traceTrackingState(augmentedImage.getTrackingState()),
+                    traceTrackingMethod(augmentedImage.getTrackingMethod()),
+                    center.tx(), center.ty(), center.tz(),
+                    center.qx(), center.qy(), center.qz(), center.qw());
+        }
     }
 
-    private void configureSession() {
-        Config config = new Config(session);
-        if (!setupAugmentedImageDb(config)) {
-           Log.e(TAG, "Could not setup augmented image database");
+    private static int traceTrackingState(TrackingState state) {
+        switch (state) {
+            case TRACKING:
+                return TraceFrame.TRACKING;
+            case PAUSED:
+                return TraceFrame.PAUSED;
+            default:
+                return TraceFrame.STOPPED;
+        }
+    }
+
+    private static int traceTrackingMethod(AugmentedImage.TrackingMethod method) {
+        switch (method) {
+            case FULL_TRACKING:
+                return TraceFrame.FULL_TRACKING;
+            case LAST_KNOWN_POSE:
+                return TraceFrame.LAST_KNOWN_POSE;
+            default:
+                return TraceFrame.NOT_TRACKING;
+        }
+    }
+
+    // Starts or stops recording frames to files/trace_<time>.arft, see TraceReplay
+    private void toggleRecording() {
+        if (traceRecorder != null) {
+            int frames = traceRecorder.getFrameCount();
+            int dropped = traceRecorder.getDroppedFrames();
+            stopRecording();
+            Toast.makeText(this, "Recorded " + frames + " frames, dropped " + dropped,
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        File file = new File(getFilesDir(), "trace_" + System.currentTimeMillis() + ".arft");
+        try {
+            // Opening the file and writing the header is a one-off, frames are written by the
+            // recorder thread
+            traceRecorder = new TraceRecorder(
+                    new FrameTraceWriter(new FileOutputStream(file), locations),
+                    TraceRecorder.DEFAULT_QUEUED_FRAMES);
+            traceFrame.clear();
+            Toast.makeText(this, "Recording frames to " + file, Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not start recording", e);
+        }
+    }
+
+    private void stopRecording() {
+        if (traceRecorder == null) {
+            return;
+        }
+        traceRecorder.close().exceptionally(throwable -> {
+            Log.e(TAG, "Could not finish recording", throwable);
+            return null;
+        });
+        traceRecorder = null;
+    }
+
+    // Queues the frame filled in by onUpdateFrame and the taps since the previous one
+    private void recordFrame() {
+        if (traceRecorder == null) {
+            return;
+        }
+        if (!traceRecorder.record(traceFrame)) {
+            Log.e(TAG, "Could not record frame, recording stopped", traceRecorder.getFailure());
+            stopRecording();
+        }
+        traceFrame.clear();
+    }
+
+    // Swaps the session to the markers of the location and its neighbors in the background, and
+    // preloads the databases of the neighbors, the locations that can come next
+    private void swapImageDb(Location location) {
+        if (session == null || sessionConfig == null) {
+            return;
         }
+        String partition = location == null ? DISCOVERY_PARTITION : location.getName();
+        imageDbLoader.swap(session, sessionConfig, partition,
+                markerImages(locations.getDetectableMarkers(location)))
+                .thenAcceptAsync(markers -> {
+                    if (markers != null) {
+                        Log.i(TAG, "Detecting " + markers + " markers for location " + partition);
+                        // The new database tracks its markers from scratch
+                        anchorPolicy.reset();
+                    }
+                }, this::runOnUiThread)
+                .exceptionally(throwable -> {
+                    Log.e(TAG, "Could not setup augmented image database", throwable);
+                    return null;
+                });
+
+        Set<String> retained = new HashSet<>();
+        retained.add(partition);
+        if (location != null) {
+            for (Location neighbor : locations.getNeighbors(location)) {
+                imageDbLoader.preload(session, neighbor.getName(),
+                        markerImages(locations.getDetectableMarkers(neighbor)));
+                retained.add(neighbor.getName());
+            }
+        }
+        imageDbLoader.retain(retained);
+    }
+
+    // Runs on the startup thread, the image database is added once the session is attached
+    private static Config newSessionConfig(Session session) {
+        Config config = new Config(session);
         config.setUpdateMode(Config.UpdateMode.LATEST_CAMERA_IMAGE);
         session.configure(config);
+        return config;
     }
 
     @Override
     protected void onResume() {
         super.onResume();
+        resumed = true;
 
         if (session == null) {
-            Exception exception = null;
-            String message = null;
+            if (sessionStarting) {
+                // Resumed once it is attached
+                return;
+            }
             try {
-                switch (ArCoreApk.getInstance().requestInstall(this, !installRequested)) {
-                    case INSTALL_REQUESTED:
-                        installRequested = true;
-                        return;
-                    case INSTALLED:
-                        break;
-                }
-
-                // ARCore requires camera permissions to operate. If we did not yet obtain runtime
-                // permission on Android M and above, now is a good time to ask the user for it.
-                if (!CameraPermissionHelper.hasCameraPermission(this)) {
-                    CameraPermissionHelper.requestCameraPermission(this);
+                if (!startup.run("install check", this::checkInstallAndPermission)) {
                     return;
                 }
-
-                session = new Session(/* context = */ this);
-            } catch (UnavailableArcoreNotInstalledException
-                    | UnavailableUserDeclinedInstallationException e) {
-                message = "Please install ARCore";
-                exception = e;
-            } catch (UnavailableApkTooOldException e) {
-                message = "Please update ARCore";
-                exception = e;
-            } catch (UnavailableSdkTooOldException e) {
-                message = "Please update this app";
-                exception = e;
-            } catch (Exception e) {
-                message = "This device does not support AR";
-                exception = e;
-            }
-
-            if (message != null) {
-                Log.e(TAG, message);
-                Log.e(TAG, "Exception creating session", exception);
+            } catch (CompletionException e) {
+                onSessionFailed(e.getCause());
+                return;
+            } catch (RuntimeException e) {
+                onSessionFailed(e);
                 return;
             }
+            startSession();
+            return;
+        }
 
-            shouldConfigureSession = true;
+        resumeSession();
+    }
+
+    // Returns false if ARCore is being installed or the camera permission is being asked for
+    private boolean checkInstallAndPermission()
+            throws UnavailableDeviceNotCompatibleException,
+            UnavailableUserDeclinedInstallationException {
+        switch (ArCoreApk.getInstance().requestInstall(this, !installRequested)) {
+            case INSTALL_REQUESTED:
+                installRequested = true;
+                return false;
+            case INSTALLED:
+                break;
         }
 
-        if (shouldConfigureSession) {
-            configureSession();
-            shouldConfigureSession = false;
-            arSceneView.setupSession(session);
+        // ARCore requires camera permissions to operate. If we did not yet obtain runtime
+        // permission on Android M and above, now is a good time to ask the user for it.
+        if (!CameraPermissionHelper.hasCameraPermission(this)) {
+            CameraPermissionHelper.requestCameraPermission(this);
+            return false;
         }
+        return true;
+    }
+
+    /**
+     * Creates and configures the session on the startup thread, both of which take long enough
+     * to hold up the first frame, and attaches it on the main thread.
+     */
+    @SuppressWarnings("FutureReturnValueIgnored")
+    private void startSession() {
+        sessionStarting = true;
+        CompletableFuture<Session> created = startup.stage("session", startupExecutor,
+                () -> new Session(/* context = */ this));
+        CompletableFuture<Config> configured = startup.stage("configure", startupExecutor,
+                () -> newSessionConfig(created.join()), created);
+        startup.stage("attach", this::runOnUiThread, () -> {
+            attachSession(created.join(), configured.join());
+            return null;
+        }, configured).exceptionally(throwable -> {
+            runOnUiThread(() -> {
+                sessionStarting = false;
+                if (isDestroyed()) {
+                    // Gone before the session was configured
+                    created.thenAccept(Session::close);
+                    return;
+                }
+                onSessionFailed(throwable instanceof CompletionException
+                        ? throwable.getCause() : throwable);
+            });
+            return null;
+        });
+    }
 
+    private void attachSession(Session created, Config config) {
+        sessionStarting = false;
+        if (isDestroyed()) {
+            created.close();
+            return;
+        }
+        session = created;
+        sessionConfig = config;
+        arSceneView.setupSession(session);
+        swapImageDb(engine.getLocation());
+        if (resumed) {
+            resumeSession();
+        }
+    }
+
+    private void onSessionFailed(Throwable exception) {
+        String message;
+        if (exception instanceof UnavailableArcoreNotInstalledException
+                || exception instanceof UnavailableUserDeclinedInstallationException) {
+            message = "Please install ARCore";
+        } else if (exception instanceof UnavailableApkTooOldException) {
+            message = "Please update ARCore";
+        } else if (exception instanceof UnavailableSdkTooOldException) {
+            message = "Please update this app";
+        } else {
+            message = "This device does not support AR";
+        }
+        Log.e(TAG, message);
+        Log.e(TAG, "Exception creating session", exception);
+    }
+
+    private void resumeSession() {
         // Note that order matters - see the note in onPause(), the reverse applies here.
         try {
             session.resume();
@@ -388,11 +1032,82 @@ public class ARLocatorActivity extends AppCompatActivity {
             session = null;
             return;
         }
+        if (!firstFrameSeen) {
+            startup.mark("session resumed");
+        }
+    }
+
+    /**
+     * Starts what the first frame did not need: the guidance and placeable models, and the map
+     * icons. Then logs the startup stages and appends the time to first frame to
+     * files/startup_times.txt.
+     */
+    private void onFirstFrame() {
+        firstFrameSeen = true;
+        startup.mark("first frame");
+        startup.run("deferred", () -> {
+            // Shown for the whole session
+            renderables.retain(TYPE_TRIANGLE);
+            addModel(TYPE_TRIANGLE, renderable -> {
+                triangleNode.setParent(arSceneView.getScene().getCamera());
+                triangleNode.setLocalPosition(new Vector3(0f,-0.1f,-0.2f));
+                triangleNode.setRenderable(renderable);
+            });
+            // The first tap is likely to place the selected model
+            renderables.prefetch(TYPE_OCULOS);
+            return null;
+        });
+        startupExecutor.execute(() -> {
+            // Built here so that drawing the map only reads it
+            IconAtlas icons = startup.run("map icons", () -> BitmapLoader.get(this).getIcons());
+            runOnUiThread(() -> overmapView.setIcons(icons));
+            logStartup();
+        });
+    }
+
+    // Runs on the startup thread
+    private void logStartup() {
+        StringBuilder stats = new StringBuilder();
+        try {
+            startup.dump(stats);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+        }
+        String kind = coldStart ? "cold" : "warm";
+        double firstFrameMillis = startup.getEndNanos("first frame") / 1e6;
+        Log.i(TAG, String.format(Locale.US, "%s start, first frame after %.1f ms%n%s",
+                kind, firstFrameMillis, stats));
+        File file = new File(getFilesDir(), "startup_times.txt");
+        try (Writer writer = new FileWriter(file, true)) {
+            writer.write(String.format(Locale.US, "%s %.1f%n", kind, firstFrameMillis));
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write startup time", e);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (imageDbLoader != null) {
+            imageDbLoader.shutdown();
+        }
+        if (positionStore != null) {
+            positionStore.close();
+        }
+        if (syncClient != null) {
+            syncClient.close();
+        }
+        startupExecutor.shutdown();
     }
 
     @Override
     public void onPause() {
         super.onPause();
+        resumed = false;
+        stopRecording();
+        Log.i(TAG, "Marker anchors created: " + anchorPolicy.getAnchorsCreated()
+                + " for " + anchorPolicy.getUpdates() + " tracked updates");
+        dumpFrameStats(false);
         if (session != null) {
             // Note that the order matters - GLSurfaceView is paused first so that it does not try
             // to query the session. If Session is paused before GLSurfaceView, GLSurfaceView may
@@ -0,0 +1,296 @@
+package com.surrey.ar.es00539arlocator;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.ar.core.AugmentedImageDatabase;
+import com.google.ar.core.Config;
+import com.google.ar.core.Session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds augmented image databases off the main thread, one per partition of the markers, and
+ * caches their serialized form on disk. Each cache file is keyed by a hash of its marker set and
+ * the installed APK, so adding, removing or replacing a marker rebuilds that partition once.
+ *
+ * <p>The session detects one partition at a time. {@link #preload} keeps the serialized bytes of
+ * partitions likely to be needed next in memory, so that {@link #swap} only has to deserialize
+ * them. Everything runs on a single background thread, in order.
+ */
+class AugmentedImageDbLoader {
+    private static final String TAG = AugmentedImageDbLoader.class.getSimpleName();
+    private static final String CACHE_PREFIX = "augmented_images_";
+    private static final String CACHE_SUFFIX = ".imgdb";
+    // ARCore wants markers of at least 300 pixels a side, larger ones do not detect any better
+    private static final int MARKER_SIZE = 512;
+
+    private final Context context;
+    private final BitmapLoader bitmaps;
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService decodeExecutor = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors()));
+    // Serialized databases by partition, only touched on the load thread
+    private final Map<String, byte[]> preloaded = new HashMap<>();
+    private final AtomicInteger swapGeneration = new AtomicInteger();
+    private final LatencyHistogram swapLatency = new LatencyHistogram();
+    private volatile int activeMarkers;
+    private volatile long lastLoadMillis;
+    private volatile boolean lastLoadCached;
+
+    AugmentedImageDbLoader(Context context) {
+        this.context = context.getApplicationContext();
+        this.bitmaps = BitmapLoader.get(context);
+    }
+
+    /**
+     * Makes the session detect the given partition, on a background thread. A swap that is
+     * overtaken by a later one before it starts is skipped. Completes with the number of markers
+     * now detected, or null when skipped.
+     */
+    CompletableFuture<Integer> swap(Session session, Config config, String partition, int[] markers) {
+        int generation = swapGeneration.incrementAndGet();
+        long start = System.nanoTime();
+        int[] copy = markers.clone();
+        return CompletableFuture.supplyAsync(() -> {
+            if (generation != swapGeneration.get()) {
+                return null;
+            }
+            AugmentedImageDatabase database = loadBlocking(session, partition, copy);
+            config.setAugmentedImageDatabase(database);
+            session.configure(config);
+            activeMarkers = database.getNumImages();
+            swapLatency.record(System.nanoTime() - start);
+            return activeMarkers;
+        }, loadExecutor);
+    }
+
+    /** Builds the partition if needed and keeps its serialized form in memory for {@link #swap}. */
+    void preload(Session session, String partition, int[] markers) {
+        int[] copy = markers.clone();
+        loadExecutor.execute(() -> {
+            if (preloaded.containsKey(partition)) {
+                return;
+            }
+            try {
+                preloaded.put(partition, serializedBlocking(session, partition, copy));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Could not preload image database " + partition, e);
+            }
+        });
+    }
+
+    /** Drops the preloaded partitions that are not in the given set. */
+    void retain(Set<String> partitions) {
+        loadExecutor.execute(() -> preloaded.keySet().retainAll(partitions));
+    }
+
+    /** Time from requesting a swap until the session detects the new markers. */
+    LatencyHistogram getSwapLatency() {
+        return swapLatency;
+    }
+
+    /** Number of markers in the database the session detects. */
+    int getActiveMarkers() {
+        return activeMarkers;
+    }
+
+    /** Time taken by the last completed load, and whether it came from a cache. */
+    long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+
+    boolean wasLastLoadCached() {
+        return lastLoadCached;
+    }
+
+    /** Writes the swap count and latencies in milliseconds, and the active marker count. */
+    void dump(Appendable out) throws IOException {
+        out.append(String.format(Locale.US,
+                "image db swaps %d, p50 %.3f, p95 %.3f, max %.3f, %d active markers%n",
+                swapLatency.getCount(), swapLatency.getPercentile(50) / 1e6,
+                swapLatency.getPercentile(95) / 1e6, swapLatency.getMax() / 1e6, activeMarkers));
+    }
+
+    void shutdown() {
+        loadExecutor.shutdown();
+        decodeExecutor.shutdown();
+    }
+
+    private AugmentedImageDatabase loadBlocking(Session session, String partition, int[] markers) {
+        long start = SystemClock.elapsedRealtime();
+        byte[] serialized = preloaded.get(partition);
+        if (serialized != null) {
+            try {
+                AugmentedImageDatabase database = AugmentedImageDatabase.deserialize(
+                        session, new ByteArrayInputStream(serialized));
+                report(start, partition, true, database);
+                return database;
+            } catch (IOException e) {
+                Log.e(TAG, "Discarding unreadable preloaded image database", e);
+                preloaded.remove(partition);
+            }
+        }
+
+        File cacheFile = cacheFile(partition, markers);
+        if (cacheFile.exists()) {
+            try (InputStream in = new FileInputStream(cacheFile)) {
+                AugmentedImageDatabase database = AugmentedImageDatabase.deserialize(session, in);
+                report(start, partition, true, database);
+                return database;
+            } catch (Exception e) {
+                Log.e(TAG, "Discarding unreadable image database cache", e);
+                cacheFile.delete();
+            }
+        }
+
+        AugmentedImageDatabase database = build(session, markers);
+        store(database, partition, cacheFile);
+        report(start, partition, false, database);
+        return database;
+    }
+
+    // The serialized database, read from the cache or built and cached first
+    private byte[] serializedBlocking(Session session, String partition, int[] markers) {
+        File cacheFile = cacheFile(partition, markers);
+        if (!cacheFile.exists()) {
+            store(build(session, markers), partition, cacheFile);
+        }
+        try (InputStream in = new FileInputStream(cacheFile)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) cacheFile.length());
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read image database cache " + cacheFile, e);
+        }
+    }
+
+    // Decode every marker in parallel, then add them in order
+    private AugmentedImageDatabase build(Session session, int[] markers) {
+        Resources resources = context.getResources();
+        List<Future<Bitmap>> decoded = new ArrayList<>(markers.length);
+        for (int marker : markers) {
+            decoded.add(decodeExecutor.submit(
+                    () -> bitmaps.decode(marker, MARKER_SIZE, MARKER_SIZE, Bitmap.Config.ARGB_8888)));
+        }
+
+        AugmentedImageDatabase database = new AugmentedImageDatabase(session);
+        for (int i = 0; i < markers.length; i++) {
+            Bitmap bitmap;
+            try {
+                bitmap = decoded.get(i).get();
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not decode marker " + markers[i], e);
+            }
+            if (bitmap == null) {
+                throw new IllegalStateException("Could not decode marker " + markers[i]);
+            }
+            database.addImage(resources.getResourceEntryName(markers[i]), bitmap);
+            bitmaps.release(bitmap);
+        }
+        return database;
+    }
+
+    private void store(AugmentedImageDatabase database, String partition, File cacheFile) {
+        // Older caches of the same partition are stale, other partitions are kept
+        String partitionPrefix = CACHE_PREFIX + hash(partition) + "_";
+        File[] stale = context.getFilesDir().listFiles(
+                (dir, name) -> name.startsWith(partitionPrefix) && name.endsWith(CACHE_SUFFIX));
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+        // Write to a temporary file first so a crash never leaves a truncated cache behind
+        File temporary = new File(cacheFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temporary)) {
+            database.serialize(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not cache image database", e);
+            temporary.delete();
+            return;
+        }
+        if (!temporary.renameTo(cacheFile)) {
+            Log.e(TAG, "Could not move image database cache into place");
+            temporary.delete();
+        }
+    }
+
+    private File cacheFile(String partition, int[] markers) {
+        return new File(context.getFilesDir(),
+                CACHE_PREFIX + hash(partition) + "_" + markerSetHash(markers) + CACHE_SUFFIX);
+    }
+
+    private String markerSetHash(int[] markers) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            Resources resources = context.getResources();
+            for (int marker : markers) {
+                digest.update(resources.getResourceEntryName(marker).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            // Resources only change with the APK
+            long updated = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+            digest.update(Long.toString(updated).getBytes(StandardCharsets.UTF_8));
+            return hex(digest.digest());
+        } catch (NoSuchAlgorithmException | PackageManager.NameNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Partition names are location names, which need not be valid file names. Also names the
+    // position log of each location
+    static String hash(String partition) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return hex(digest.digest(partition.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private void report(long start, String partition, boolean cached, AugmentedImageDatabase database) {
+        lastLoadMillis = SystemClock.elapsedRealtime() - start;
+        lastLoadCached = cached;
+        Log.i(TAG, (cached ? "Loaded cached" : "Built") + " image database " + partition + " with "
+                + database.getNumImages() + " markers in " + lastLoadMillis + " ms");
+    }
+}
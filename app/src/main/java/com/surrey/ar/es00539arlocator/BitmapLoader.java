@@ -0,0 +1,158 @@
+package com.surrey.ar.es00539arlocator;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Decodes bitmap resources within a memory budget shared by the whole app. Each decode is sampled
+ * down to the size it is shown at, at most the display size, and further when the budget runs
+ * low, in the pixel format the caller needs. The small overlay icons share one {@link IconAtlas}.
+ * Safe to use from any thread.
+ */
+class BitmapLoader {
+    private static final String TAG = BitmapLoader.class.getSimpleName();
+    static final int ICON_KEYS = 0;
+    static final int ICON_OCULOS = 1;
+    static final int ICON_STICKMAN = 2;
+    // Decoded bitmaps may take this share of the app's memory class, ARCore needs the rest
+    private static final int BUDGET_DIVISOR = 4;
+    // How much further than needed a decode may be sampled down when the budget runs low
+    private static final int MAX_BUDGET_SAMPLE_SIZE = 4;
+
+    private static BitmapLoader instance;
+
+    private final Resources resources;
+    private final BitmapBudget budget;
+    private final int displaySize;
+    private IconAtlas icons;
+
+    private BitmapLoader(Context context) {
+        resources = context.getResources();
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        budget = new BitmapBudget(activityManager.getMemoryClass() * 1024L * 1024 / BUDGET_DIVISOR);
+        DisplayMetrics metrics = resources.getDisplayMetrics();
+        displaySize = Math.max(metrics.widthPixels, metrics.heightPixels);
+    }
+
+    static synchronized BitmapLoader get(Context context) {
+        if (instance == null) {
+            instance = new BitmapLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** Keys, glasses and stickman icons, see {@link #ICON_KEYS} and the others. */
+    synchronized IconAtlas getIcons() {
+        if (icons == null) {
+            icons = IconAtlas.build(this,
+                    R.drawable.little_keys, R.drawable.little_glasses, R.drawable.stickman);
+        }
+        return icons;
+    }
+
+    /** Reads the size a resource decodes to at full resolution into {@code out}. */
+    void readSize(int resource, int[] out) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resource, options);
+        out[0] = options.outWidth;
+        out[1] = options.outHeight;
+    }
+
+    /**
+     * Decodes a resource no larger than needed to show it at the requested size, 0 meaning the
+     * display size. Use {@link Bitmap.Config#RGB_565} for opaque images, it takes half the bytes.
+     * Returns null when the resource cannot be decoded.
+     */
+    Bitmap decode(int resource, int requestedWidth, int requestedHeight, Bitmap.Config config) {
+        int[] size = new int[2];
+        readSize(resource, size);
+        int width = Math.min(requestedWidth > 0 ? requestedWidth : displaySize, displaySize);
+        int height = Math.min(requestedHeight > 0 ? requestedHeight : displaySize, displaySize);
+        int needed = BitmapBudget.sampleSizeFor(size[0], size[1], width, height);
+        return decode(resource, size, needed, needed * MAX_BUDGET_SAMPLE_SIZE, config, null);
+    }
+
+    /**
+     * Decodes a resource at the given sample size, for callers that read its pixels rather than
+     * show it, or sampled further down up to {@code maxSampleSize} when the budget runs low. The
+     * sample size used is written to {@code usedSampleSize[0]}. Returns null when the resource
+     * cannot be decoded.
+     */
+    Bitmap decodeSampled(int resource, int sampleSize, int maxSampleSize, Bitmap.Config config,
+                         int[] usedSampleSize) {
+        int[] size = new int[2];
+        readSize(resource, size);
+        return decode(resource, size, sampleSize, maxSampleSize, config, usedSampleSize);
+    }
+
+    private Bitmap decode(int resource, int[] size, int needed, int maxSampleSize,
+                          Bitmap.Config config, int[] usedSampleSize) {
+        int sampleSize = budget.fit(size[0], size[1], bytesPerPixel(config), needed,
+                Math.max(needed, maxSampleSize));
+        if (sampleSize != needed) {
+            Log.w(TAG, "Bitmap budget low, decoding " + resources.getResourceEntryName(resource)
+                    + " at 1/" + sampleSize);
+        }
+        if (usedSampleSize != null) {
+            usedSampleSize[0] = sampleSize;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = config;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, resource, options);
+        if (bitmap != null) {
+            budget.add(bitmap.getAllocationByteCount());
+        }
+        return bitmap;
+    }
+
+    /** Counts a bitmap created elsewhere against the budget, until it is released. */
+    void track(Bitmap bitmap) {
+        budget.add(bitmap.getAllocationByteCount());
+    }
+
+    /** Recycles a bitmap from {@link #decode} or {@link #track}. */
+    void release(Bitmap bitmap) {
+        if (bitmap != null && !bitmap.isRecycled()) {
+            budget.remove(bitmap.getAllocationByteCount());
+            bitmap.recycle();
+        }
+    }
+
+    BitmapBudget getBudget() {
+        return budget;
+    }
+
+    /** Writes the decoded and peak bytes against the budget, in megabytes. */
+    void dump(Appendable out) throws IOException {
+        out.append(String.format(Locale.US, "bitmaps %.1f MB decoded, %.1f MB peak, %.1f MB budget%n",
+                megabytes(budget.getDecodedBytes()), megabytes(budget.getPeakBytes()),
+                megabytes(budget.getMaxBytes())));
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.surrey.ar.es00539arlocator;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import java.util.Arrays;
+
+/**
+ * Small icons packed into a single bitmap and drawn through source rectangles, so that every
+ * icon shares one allocation and one texture. Read only once built, any thread can draw it.
+ */
+class IconAtlas {
+    // Transparent pixels around each icon, so that filtering never picks up a neighbor
+    private static final int PADDING = 1;
+
+    private final Bitmap atlas;
+    private final Rect[] sources;
+
+    private IconAtlas(Bitmap atlas, Rect[] sources) {
+        this.atlas = atlas;
+        this.sources = sources;
+    }
+
+    /** Decodes the icons at their natural size and packs them, tallest first. */
+    static IconAtlas build(BitmapLoader loader, int... resources) {
+        Bitmap[] icons = new Bitmap[resources.length];
+        Integer[] order = new Integer[resources.length];
+        long area = 0;
+        int widest = 0;
+        for (int i = 0; i < resources.length; i++) {
+            icons[i] = loader.decode(resources[i], 0, 0, Bitmap.Config.ARGB_8888);
+            if (icons[i] == null) {
+                throw new IllegalArgumentException("Could not decode icon " + resources[i]);
+            }
+            area += (long) (icons[i].getWidth() + 2 * PADDING) * (icons[i].getHeight() + 2 * PADDING);
+            widest = Math.max(widest, icons[i].getWidth() + 2 * PADDING);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> icons[b].getHeight() - icons[a].getHeight());
+
+        // Roughly square, so neither side gets close to the texture size limit
+        ShelfPacker packer = new ShelfPacker(Math.max(widest, (int) Math.ceil(Math.sqrt(area))), PADDING);
+        Rect[] sources = new Rect[resources.length];
+        int[] position = new int[2];
+        for (int i : order) {
+            packer.add(icons[i].getWidth(), icons[i].getHeight(), position);
+            sources[i] = new Rect(position[0], position[1],
+                    position[0] + icons[i].getWidth(), position[1] + icons[i].getHeight());
+        }
+
+        Bitmap atlas = Bitmap.createBitmap(packer.getWidth(), packer.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(atlas);
+        for (int i = 0; i < icons.length; i++) {
+            canvas.drawBitmap(icons[i], sources[i].left, sources[i].top, null);
+            loader.release(icons[i]);
+        }
+        loader.track(atlas);
+        return new IconAtlas(atlas, sources);
+    }
+
+    int getWidth(int icon) {
+        return sources[icon].width();
+    }
+
+    int getHeight(int icon) {
+        return sources[icon].height();
+    }
+
+    Bitmap getBitmap() {
+        return atlas;
+    }
+
+    /**
+     * Draws an icon with its top left corner at the given pixel. {@code destination} is scratch
+     * space owned by the caller, which keeps drawing from several threads allocation free.
+     */
+    void draw(Canvas canvas, int icon, int left, int top, Rect destination) {
+        Rect source = sources[icon];
+        destination.set(left, top, left + source.width(), top + source.height());
+        canvas.drawBitmap(atlas, source, destination, null);
+    }
+}
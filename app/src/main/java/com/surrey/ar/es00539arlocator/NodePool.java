@@ -0,0 +1,122 @@
+package com.surrey.ar.es00539arlocator;
+
+import com.google.ar.core.Anchor;
+import com.google.ar.sceneform.AnchorNode;
+import com.google.ar.sceneform.Node;
+import com.google.ar.sceneform.NodeParent;
+import com.google.ar.sceneform.math.Quaternion;
+import com.google.ar.sceneform.math.Vector3;
+import com.google.ar.sceneform.ux.TransformableNode;
+import com.google.ar.sceneform.ux.TransformationSystem;
+
+import java.io.IOException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Recycles the anchor and transformable node pairs that show placed objects, keyed by object
+ * type so that a recycled pair already has its model. Released pairs are detached from the
+ * scene and kept, up to a cap per type, until a placement of the same type re-anchors and
+ * re-parents them. Pairs beyond the cap are dropped, and the model loader is told so that the
+ * model can be freed once no pair shows it. The bookkeeping is a {@link TypedPool}. Scene graph
+ * changes must happen on the UI thread, so use this from there.
+ */
+class NodePool {
+    static final int DEFAULT_MAX_IDLE_PER_TYPE = 64;
+
+    private final TransformationSystem transformationSystem;
+    // Sets the model of a newly created node, possibly once it has loaded
+    private final BiConsumer<String, TransformableNode> modelLoader;
+    // Idle pairs by type, the model releaser is told the type of every pair that is dropped
+    private final TypedPool<AnchorNode> idle;
+
+    NodePool(TransformationSystem transformationSystem,
+             BiConsumer<String, TransformableNode> modelLoader, Consumer<String> modelReleaser,
+             int maxIdlePerType) {
+        this.transformationSystem = transformationSystem;
+        this.modelLoader = modelLoader;
+        this.idle = new TypedPool<>(modelReleaser, maxIdlePerType);
+    }
+
+    /** Idle pairs kept per type, extra releases are left to the garbage collector. */
+    void setMaxIdlePerType(int maxIdlePerType) {
+        idle.setMaxIdlePerType(maxIdlePerType);
+    }
+
+    /** Returns a pair showing the given type, anchored to the anchor and added to the parent. */
+    AnchorNode acquire(String type, Anchor anchor, NodeParent parent) {
+        AnchorNode anchorNode = idle.poll(type);
+        if (anchorNode != null) {
+            anchorNode.setAnchor(anchor);
+            anchorNode.setParent(parent);
+            select(anchorNode);
+            return anchorNode;
+        }
+
+        anchorNode = new AnchorNode(anchor);
+        anchorNode.setParent(parent);
+        TransformableNode node = new TransformableNode(transformationSystem);
+        node.setParent(anchorNode);
+        modelLoader.accept(type, node);
+        node.select();
+        return anchorNode;
+    }
+
+    /** Moves a pair to a new anchor, detaching the one it had. */
+    static void reanchor(AnchorNode anchorNode, Anchor anchor) {
+        Anchor previous = anchorNode.getAnchor();
+        anchorNode.setAnchor(anchor);
+        if (previous != null) {
+            previous.detach();
+        }
+    }
+
+    /** Takes a pair out of the scene, detaching its anchor, and keeps it for the given type. */
+    void release(String type, AnchorNode anchorNode) {
+        Anchor anchor = anchorNode.getAnchor();
+        anchorNode.setAnchor(null);
+        if (anchor != null) {
+            anchor.detach();
+        }
+        anchorNode.setParent(null);
+
+        if (!idle.offer(type, anchorNode)) {
+            return;
+        }
+        // Undo what the user did to the last object with it
+        for (Node child : anchorNode.getChildren()) {
+            child.setLocalPosition(Vector3.zero());
+            child.setLocalRotation(Quaternion.identity());
+            child.setLocalScale(Vector3.one());
+        }
+    }
+
+    private static void select(AnchorNode anchorNode) {
+        for (Node child : anchorNode.getChildren()) {
+            if (child instanceof TransformableNode) {
+                ((TransformableNode) child).select();
+            }
+        }
+    }
+
+    long getHits() {
+        return idle.getHits();
+    }
+
+    long getMisses() {
+        return idle.getMisses();
+    }
+
+    /** Releases that found the pool for their type full. */
+    long getDrops() {
+        return idle.getDrops();
+    }
+
+    int getIdleCount() {
+        return idle.getIdleCount();
+    }
+
+    void dump(Appendable out) throws IOException {
+        idle.dump("node pool", out);
+    }
+}
@@ -0,0 +1,41 @@
+package com.surrey.ar.es00539arlocator;
+
+import com.google.ar.sceneform.math.Vector3;
+
+/**
+ * The floor plan overlay as the activity uses it, implemented by {@link OvermapView} and
+ * {@link OvermapSurfaceView}. Positions are relative to the origin marker, in meters, and every
+ * method must be called from the UI thread.
+ */
+interface Overmap {
+    /** Switches to another floor plan, with the origin marker at the given map pixel. */
+    void setMap(int resource, int originX, int originY);
+
+    /** Switches to a compiled floor plan, with the origin marker the plan places. */
+    void setPlan(FloorPlan plan);
+
+    void setOrigin(int x, int y);
+
+    /** Objects to draw, picked up again whenever the registry version changes. */
+    void setObjects(ObjectRegistry registry);
+
+    /** Walked path to draw, picked up again whenever the trail version changes. */
+    void setTrail(BreadcrumbTrail trail);
+
+    /** Icons to draw the markers and objects with, built before the map is shown. */
+    void setIcons(IconAtlas icons);
+
+    /** Moves the camera marker and picks up any change in the object registry. */
+    void updateFrame(float cameraX, float cameraZ);
+
+    void setCamera(Vector3 pos);
+
+    void setKeys(Vector3 pos);
+
+    void setOculos(Vector3 pos);
+
+    // Implemented by View
+    int getVisibility();
+
+    void setVisibility(int visibility);
+}
@@ -0,0 +1,560 @@
+package com.surrey.ar.es00539arlocator;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.google.ar.sceneform.math.Vector3;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Floor plan with the camera and objects drawn over it, drawn on its own render thread so that
+ * drawing the map takes no time from the UI thread. The UI thread only projects positions to
+ * plan pixels and hands them over through a lock-free {@link TripleBuffer}. The render thread
+ * draws the latest positions, no more often than the redraw throttle allows, and owns the plan
+ * bitmap or tiles.
+ */
+public class OvermapSurfaceView extends SurfaceView implements Overmap, SurfaceHolder.Callback {
+    private static final String TAG = OvermapSurfaceView.class.getSimpleName();
+    // Largest view size used in tiled mode, the view then scrolls to follow the camera
+    private static final int TILED_VIEWPORT = 1024;
+    // How long surfaceDestroyed waits for a draw in progress
+    private static final long SURFACE_RELEASE_TIMEOUT_MILLIS = 1000;
+
+    // Icons, read only once constructed, so the render thread can draw them
+    private final BitmapLoader bitmaps;
+    private final Map<String, Integer> kinds = new HashMap<>();
+    // Set once built at startup and only read by the render thread, markers are left out until then
+    private volatile IconAtlas iconAtlas;
+
+    // UI thread state: the projection and what was last handed to the render thread
+    private final MapProjection projection = new MapProjection();
+    private final BatchProjector projector = new BatchProjector();
+    // Set by the location, none until then
+    private int mapResource;
+    // Drawn instead of the resource when set
+    private FloorPlan mapPlan;
+    private int mapGeneration;
+    private int originX;
+    private int originY;
+    private int width;
+    private int height;
+    private ObjectRegistry objects;
+    private int objectsVersion;
+    private boolean objectsStale;
+    private final List<TrackedObject> visibleObjects = new ArrayList<>();
+    private int objectCount;
+    // Positions and pixels of the objects with a known kind, in separate arrays for the projector
+    private float[] objectXs = new float[0];
+    private float[] objectZs = new float[0];
+    private int[] objectPixelsX = new int[0];
+    private int[] objectPixelsY = new int[0];
+    private int[] objectKinds = new int[0];
+    private BreadcrumbTrail trail;
+    private int trailVersion;
+    private boolean trailStale;
+    // Bumped on every projection of the trail, so frames know when to copy it
+    private int trailSerial;
+    private int trailCount;
+    private float[] trailPixels = new float[0];
+    private final MapFrame markers = new MapFrame();
+    private boolean changed;
+
+    private final TripleBuffer<MapFrame> frames =
+            new TripleBuffer<>(new MapFrame(), new MapFrame(), new MapFrame());
+    private final AtomicBoolean drawPosted = new AtomicBoolean();
+    private final Runnable draw = this::draw;
+
+    // Render thread state
+    private HandlerThread renderThread;
+    private volatile Handler renderHandler;
+    private volatile boolean surfaceReady;
+    // Decodes plan tiles, so that a slow tile never delays drawing the ones already cached
+    private ExecutorService tileDecoder;
+    private Bitmap mapImage;
+    // Where the plan is drawn, in plan pixels, whatever size it was decoded at
+    private final Rect mapRect = new Rect();
+    private final Rect iconRect = new Rect();
+    private TiledMapRenderer tiledMap;
+    private float mapScale = 1f;
+    private final RedrawThrottle throttle = new RedrawThrottle(OvermapView.DEFAULT_MAX_REDRAW_RATE);
+    private final Paint originPaint = new Paint();
+    private final Paint trailPaint = new Paint();
+    // Trail path and the frame trail version it was built from
+    private final Path trailPath = new Path();
+    private int pathVersion;
+
+    public OvermapSurfaceView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        bitmaps = BitmapLoader.get(context);
+        kinds.put("keys", BitmapLoader.ICON_KEYS);
+        kinds.put("oculos", BitmapLoader.ICON_OCULOS);
+
+        originPaint.setColor(Color.BLUE);
+        originPaint.setAntiAlias(true);
+        originPaint.setStrokeWidth(5);
+        originPaint.setStyle(Paint.Style.STROKE);
+        trailPaint.setColor(OvermapView.TRAIL_COLOR);
+        trailPaint.setAntiAlias(true);
+        trailPaint.setStrokeWidth(OvermapView.TRAIL_WIDTH);
+        trailPaint.setStyle(Paint.Style.STROKE);
+        trailPaint.setStrokeJoin(Paint.Join.ROUND);
+        trailPaint.setStrokeCap(Paint.Cap.ROUND);
+
+        // Above the AR camera surface
+        setZOrderMediaOverlay(true);
+        getHolder().addCallback(this);
+    }
+
+    @Override
+    public void setMap(int resource, int originX, int originY) {
+        mapResource = resource;
+        mapPlan = null;
+        loadMap();
+        setOrigin(originX, originY);
+    }
+
+    @Override
+    public void setPlan(FloorPlan plan) {
+        mapPlan = plan;
+        loadMap();
+        setOrigin(plan.getOriginX(), plan.getOriginY());
+    }
+
+    @Override
+    public void setOrigin(int x, int y) {
+        originX = x;
+        originY = y;
+        projection.set(originX, originY, width, height);
+        projector.set(originX, originY, width, height);
+        markers.setMarker(MapFrame.ORIGIN, x, y);
+        objectsStale = true;
+        trailStale = true;
+        changed = true;
+        update();
+    }
+
+    @Override
+    public void setObjects(ObjectRegistry registry) {
+        objects = registry;
+        objectCount = 0;
+        objectsStale = true;
+        changed = true;
+        update();
+    }
+
+    @Override
+    public void setTrail(BreadcrumbTrail trail) {
+        this.trail = trail;
+        trailStale = true;
+        update();
+    }
+
+    @Override
+    public void setIcons(IconAtlas icons) {
+        iconAtlas = icons;
+        requestDraw();
+    }
+
+    @Override
+    public void updateFrame(float cameraX, float cameraZ) {
+        moveMarker(MapFrame.CAMERA, cameraX, cameraZ);
+        update();
+    }
+
+    @Override
+    public void setCamera(Vector3 pos) {
+        setMarker(MapFrame.CAMERA, pos);
+    }
+
+    @Override
+    public void setKeys(Vector3 pos) {
+        setMarker(MapFrame.KEYS, pos);
+    }
+
+    @Override
+    public void setOculos(Vector3 pos) {
+        setMarker(MapFrame.OCULOS, pos);
+    }
+
+    /** Screen pixels per plan pixel in tiled mode, lower values zoom out. */
+    public void setMapScale(float scale) {
+        Handler handler = renderHandler;
+        if (handler != null) {
+            handler.post(() -> mapScale = scale);
+            requestDraw();
+        }
+    }
+
+    public void setMaxRedrawRate(float maxRate) {
+        Handler handler = renderHandler;
+        if (handler != null) {
+            handler.post(() -> throttle.setMaxRate(maxRate));
+        }
+    }
+
+    /** Redraw counters, updated by the render thread. */
+    public RedrawThrottle getRedrawThrottle() {
+        return throttle;
+    }
+
+    private void setMarker(int marker, Vector3 pos) {
+        if (pos == null) {
+            if (markers.getMarkerX(marker) != MapFrame.HIDDEN) {
+                markers.setMarker(marker, MapFrame.HIDDEN, MapFrame.HIDDEN);
+                changed = true;
+            }
+        } else {
+            moveMarker(marker, pos.x, pos.z);
+        }
+        update();
+    }
+
+    private void moveMarker(int marker, float x, float z) {
+        int pixelX = projection.toPixelX(z);
+        int pixelY = projection.toPixelY(x);
+        if (pixelX != markers.getMarkerX(marker) || pixelY != markers.getMarkerY(marker)) {
+            markers.setMarker(marker, pixelX, pixelY);
+            changed = true;
+        }
+    }
+
+    // Re-projects the registry if it changed, and hands anything new to the render thread
+    private void update() {
+        if (objects != null && width > 0
+                && (objectsStale || objects.getVersion() != objectsVersion)) {
+            objectsVersion = objects.getVersion();
+            objectsStale = false;
+            projectObjects();
+            changed = true;
+        }
+        if (trail != null && width > 0 && (trailStale || trail.getVersion() != trailVersion)) {
+            trailVersion = trail.getVersion();
+            trailStale = false;
+            projectTrail();
+            trailSerial++;
+            changed = true;
+        }
+        if (!changed) {
+            return;
+        }
+        MapFrame frame = frames.getBack();
+        frame.setMarkers(markers);
+        frame.setObjects(objectCount, objectPixelsX, objectPixelsY, objectKinds);
+        frame.setTrail(trailSerial, trailCount, trailPixels);
+        frames.publish();
+        changed = false;
+        requestDraw();
+    }
+
+    private void projectObjects() {
+        visibleObjects.clear();
+        int count = objects.withinBounds(projection.getMinX(), projection.getMinZ(),
+                projection.getMaxX(), projection.getMaxZ(), visibleObjects);
+        if (objectKinds.length < count) {
+            objectXs = new float[2 * count];
+            objectZs = new float[2 * count];
+            objectPixelsX = new int[2 * count];
+            objectPixelsY = new int[2 * count];
+            objectKinds = new int[2 * count];
+        }
+        int drawn = 0;
+        for (int i = 0; i < count; i++) {
+            TrackedObject object = visibleObjects.get(i);
+            Integer kind = kinds.get(object.getType());
+            if (kind == null) {
+                continue;
+            }
+            objectXs[drawn] = object.getX();
+            objectZs[drawn] = object.getZ();
+            objectKinds[drawn] = kind;
+            drawn++;
+        }
+        projector.project(objectXs, objectZs, drawn, objectPixelsX, objectPixelsY);
+        objectCount = drawn;
+    }
+
+    private void projectTrail() {
+        trailCount = trail.size();
+        if (trailPixels.length < 2 * trailCount) {
+            trailPixels = new float[2 * trail.getCapacity()];
+        }
+        for (int i = 0; i < trailCount; i++) {
+            trailPixels[2 * i] = projection.toPixelX(trail.getZ(i));
+            trailPixels[2 * i + 1] = projection.toPixelY(trail.getX(i));
+        }
+    }
+
+    // Decodes the plan on the render thread, then sizes the view for it on the UI thread
+    private void loadMap() {
+        Handler handler = renderHandler;
+        if (handler == null) {
+            // Loaded once attached
+            return;
+        }
+        int generation = ++mapGeneration;
+        int resource = mapResource;
+        FloorPlan plan = mapPlan;
+        if (plan == null && resource == 0) {
+            return;
+        }
+        handler.post(() -> {
+            int[] size = new int[2];
+            boolean tiled = plan != null ? usePlan(plan, size) : decodeMap(resource, size);
+            int mapWidth = size[0];
+            int mapHeight = size[1];
+            requestDraw();
+            post(() -> {
+                if (generation != mapGeneration) {
+                    return;
+                }
+                width = mapWidth;
+                height = mapHeight;
+                setMinimumWidth(tiled ? Math.min(width, TILED_VIEWPORT) : width);
+                setMinimumHeight(tiled ? Math.min(height, TILED_VIEWPORT) : height);
+                requestLayout();
+                projection.set(originX, originY, width, height);
+                projector.set(originX, originY, width, height);
+                objectsStale = true;
+                trailStale = true;
+                update();
+            });
+        });
+    }
+
+    // Render thread, reads the plan size into size and returns whether it is drawn from tiles
+    private boolean decodeMap(int resource, int[] size) {
+        releaseMap();
+        bitmaps.readSize(resource, size);
+        if (4L * size[0] * size[1] > OvermapView.TILED_THRESHOLD_BYTES) {
+            try {
+                BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(
+                        getResources().openRawResource(resource), false);
+                setTiles(TiledMapRenderer.fromRegions(decoder));
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open tiled map, decoding it whole", e);
+            }
+        }
+        // Floor plans are opaque
+        mapImage = bitmaps.decode(resource, 0, 0, Bitmap.Config.RGB_565);
+        mapRect.set(0, 0, size[0], size[1]);
+        return false;
+    }
+
+    // Render thread, compiled plans are always drawn from their tiles
+    private boolean usePlan(FloorPlan plan, int[] size) {
+        releaseMap();
+        setTiles(TiledMapRenderer.fromPlan(plan));
+        size[0] = plan.getWidth();
+        size[1] = plan.getHeight();
+        return true;
+    }
+
+    // Render thread
+    private void setTiles(TiledMapRenderer.TileSource source) {
+        tiledMap = new TiledMapRenderer(renderHandler::post, tileDecoder, this::requestDraw, source,
+                bitmaps, TiledMapRenderer.DEFAULT_CACHE_BYTES);
+    }
+
+    // Render thread
+    private void releaseMap() {
+        if (tiledMap != null) {
+            tiledMap.release();
+            tiledMap = null;
+        }
+        bitmaps.release(mapImage);
+        mapImage = null;
+    }
+
+    private void requestDraw() {
+        Handler handler = renderHandler;
+        if (handler != null && drawPosted.compareAndSet(false, true)) {
+            handler.post(draw);
+        }
+    }
+
+    // Render thread
+    private void draw() {
+        drawPosted.set(false);
+        if (!surfaceReady) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        long delay = throttle.delayUntilNext(now);
+        if (delay > 0) {
+            if (drawPosted.compareAndSet(false, true)) {
+                renderHandler.postDelayed(draw, delay);
+            }
+            return;
+        }
+        // Without a new frame, redraw the last one, for instance once a tile arrived
+        frames.acquire();
+        MapFrame frame = frames.getFront();
+        SurfaceHolder holder = getHolder();
+        Canvas canvas = holder.lockCanvas();
+        if (canvas == null) {
+            return;
+        }
+        try {
+            render(canvas, frame);
+        } finally {
+            holder.unlockCanvasAndPost(canvas);
+        }
+        throttle.onRedraw(now);
+    }
+
+    // Render thread
+    private void render(Canvas canvas, MapFrame frame) {
+        canvas.drawColor(Color.WHITE);
+        if (tiledMap != null) {
+            // Center the view on the camera and only draw the tiles that are visible
+            boolean hasCamera = frame.getMarkerX(MapFrame.CAMERA) != MapFrame.HIDDEN;
+            float halfWidth = canvas.getWidth() / 2f / mapScale;
+            float halfHeight = canvas.getHeight() / 2f / mapScale;
+            float centerX = TiledMapRenderer.clampCenter(hasCamera
+                    ? frame.getMarkerX(MapFrame.CAMERA) : frame.getMarkerX(MapFrame.ORIGIN),
+                    halfWidth, tiledMap.getWidth());
+            float centerY = TiledMapRenderer.clampCenter(hasCamera
+                    ? frame.getMarkerY(MapFrame.CAMERA) : frame.getMarkerY(MapFrame.ORIGIN),
+                    halfHeight, tiledMap.getHeight());
+            canvas.save();
+            canvas.translate(canvas.getWidth() / 2f, canvas.getHeight() / 2f);
+            canvas.scale(mapScale, mapScale);
+            canvas.translate(-centerX, -centerY);
+            tiledMap.draw(canvas, mapScale, centerX - halfWidth, centerY - halfHeight,
+                    centerX + halfWidth, centerY + halfHeight);
+            drawMarkers(canvas, frame);
+            canvas.restore();
+        } else if (mapImage != null) {
+            canvas.drawBitmap(mapImage, null, mapRect, null);
+            drawMarkers(canvas, frame);
+        }
+    }
+
+    private void drawMarkers(Canvas canvas, MapFrame frame) {
+        if (frame.getMarkerX(MapFrame.ORIGIN) != MapFrame.HIDDEN) {
+            canvas.drawCircle(frame.getMarkerX(MapFrame.ORIGIN), frame.getMarkerY(MapFrame.ORIGIN),
+                    20, originPaint);
+        }
+        drawTrail(canvas, frame);
+        IconAtlas icons = iconAtlas;
+        if (icons == null) {
+            return;
+        }
+        int[] pixelsX = frame.getObjectPixelsX();
+        int[] pixelsY = frame.getObjectPixelsY();
+        int[] objectKinds = frame.getObjectKinds();
+        for (int i = 0; i < frame.getObjectCount(); i++) {
+            icons.draw(canvas, objectKinds[i], pixelsX[i], pixelsY[i], iconRect);
+        }
+        drawMarker(canvas, icons, frame, MapFrame.KEYS, BitmapLoader.ICON_KEYS);
+        drawMarker(canvas, icons, frame, MapFrame.OCULOS, BitmapLoader.ICON_OCULOS);
+        drawMarker(canvas, icons, frame, MapFrame.CAMERA, BitmapLoader.ICON_STICKMAN);
+    }
+
+    // Render thread, the path is only rebuilt when the frame carries a new trail
+    private void drawTrail(Canvas canvas, MapFrame frame) {
+        int count = frame.getTrailCount();
+        float[] pixels = frame.getTrailPixels();
+        if (frame.getTrailVersion() != pathVersion) {
+            pathVersion = frame.getTrailVersion();
+            trailPath.rewind();
+            for (int i = 0; i < count; i++) {
+                if (i == 0) {
+                    trailPath.moveTo(pixels[0], pixels[1]);
+                } else {
+                    trailPath.lineTo(pixels[2 * i], pixels[2 * i + 1]);
+                }
+            }
+        }
+        canvas.drawPath(trailPath, trailPaint);
+        if (count > 0 && frame.getMarkerX(MapFrame.CAMERA) != MapFrame.HIDDEN) {
+            canvas.drawLine(pixels[2 * count - 2], pixels[2 * count - 1],
+                    frame.getMarkerX(MapFrame.CAMERA), frame.getMarkerY(MapFrame.CAMERA), trailPaint);
+        }
+    }
+
+    private void drawMarker(Canvas canvas, IconAtlas icons, MapFrame frame, int marker, int icon) {
+        if (frame.getMarkerX(marker) != MapFrame.HIDDEN) {
+            icons.draw(canvas, icon, frame.getMarkerX(marker), frame.getMarkerY(marker), iconRect);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        renderThread = new HandlerThread(TAG);
+        renderThread.start();
+        tileDecoder = Executors.newSingleThreadExecutor();
+        renderHandler = new Handler(renderThread.getLooper());
+        loadMap();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        Handler handler = renderHandler;
+        renderHandler = null;
+        ExecutorService decoder = tileDecoder;
+        tileDecoder = null;
+        // Runs before the thread quits, as quitSafely lets pending work finish. The decoder still
+        // runs the tile source release that releaseMap queues
+        handler.post(() -> {
+            releaseMap();
+            decoder.shutdown();
+        });
+        renderThread.quitSafely();
+        renderThread = null;
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        surfaceReady = true;
+        requestDraw();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        requestDraw();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        surfaceReady = false;
+        // The surface goes away once this returns, let a draw in progress finish first
+        Handler handler = renderHandler;
+        if (handler == null) {
+            return;
+        }
+        CountDownLatch drained = new CountDownLatch(1);
+        handler.post(drained::countDown);
+        try {
+            drained.await(SURFACE_RELEASE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
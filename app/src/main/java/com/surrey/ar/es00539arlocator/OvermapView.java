@@ -2,30 +2,109 @@ package com.surrey.ar.es00539arlocator;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.view.View;
 
 import com.google.ar.sceneform.math.Vector3;
 
-public class OvermapView extends View {
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Floor plan with the camera and objects drawn over it, drawn on the UI thread. See
+ * {@link OvermapSurfaceView} for one that draws on its own thread; the activity uses this one
+ * when {@code R.bool.overmap_render_thread} is false.
+ *
+ * <p>Every redraw draws the whole view: hardware accelerated views ignore the rectangle passed
+ * to invalidate. The work is saved by redrawing less often instead, only when a marker moved
+ * to another pixel or the objects or the trail changed, and no more often than the
+ * {@link RedrawThrottle} allows.
+ */
+public class OvermapView extends View implements Overmap {
+    private static final String TAG = OvermapView.class.getSimpleName();
+    // Redraws per second while the map is open, independent of the AR frame rate
+    public static final float DEFAULT_MAX_REDRAW_RATE = 15f;
+    // Plans whose full ARGB_8888 decode would exceed this are drawn from tiles instead
+    public static final long TILED_THRESHOLD_BYTES = 8L * 1024 * 1024;
+    // Largest view size used in tiled mode, the view then scrolls to follow the camera
+    private static final int TILED_VIEWPORT = 1024;
+    static final int TRAIL_COLOR = 0x802060FF;
+    static final float TRAIL_WIDTH = 6f;
+
     Bitmap overmapImage;
-    Bitmap keysImage;
-    Bitmap oculosImage;
-    Bitmap stickmanImage;
+    private final BitmapLoader bitmaps;
+    // Set once built at startup, markers are left out until then
+    private IconAtlas iconAtlas;
     int originX;
     int originY;
     int width;
     int height;
+    private final MapProjection projection = new MapProjection();
+    private final BatchProjector projector = new BatchProjector();
     private final int paintColor = Color.BLACK;
     private Paint drawPaint;
 
-    private Vector3 keys;
-    private Vector3 oculos;
-    private Vector3 camera;
+    // Pixel position of each single marker, x is -1 when the marker is not shown
+    private final int[] keys = {-1, -1};
+    private final int[] oculos = {-1, -1};
+    private final int[] camera = {-1, -1};
+
+    private ObjectRegistry objects;
+    private int objectsVersion;
+    private boolean objectsStale;
+    private final Map<String, Integer> icons = new HashMap<>();
+    private final List<TrackedObject> visibleObjects = new ArrayList<>();
+
+    // Positions of the objects with an icon, in separate arrays for the projector
+    private float[] objectXs = new float[0];
+    private float[] objectZs = new float[0];
+    // Projected registry objects, swapped with the previous projection on every refresh
+    private int objectCount;
+    private int[] objectPixelsX = new int[0];
+    private int[] objectPixelsY = new int[0];
+    private int[] objectIcons = new int[0];
+    private int[] previousPixelsX = new int[0];
+    private int[] previousPixelsY = new int[0];
+    private int[] previousIcons = new int[0];
+
+    // Walked path in plan pixels, rebuilt only when the trail keeps a new point. The tail joins
+    // its last point to the camera
+    private BreadcrumbTrail trail;
+    private int trailVersion;
+    private boolean trailStale;
+    private final Path trailPath = new Path();
+    private int tailX = -1;
+    private int tailY;
+    private Paint trailPaint;
+
+    // Set when something changed since the last redraw
+    private boolean dirty;
+    private final RedrawThrottle throttle = new RedrawThrottle(DEFAULT_MAX_REDRAW_RATE);
+    private final Runnable flushRedraw = this::flushRedraw;
+    private boolean redrawPosted;
+    private final Rect mapRect = new Rect();
+    private final Rect iconRect = new Rect();
+
+    // Set when the plan is too large for a single bitmap
+    private TiledMapRenderer tiledMap;
+    private float mapScale = 1f;
+    // Decodes tiles off the UI thread, its thread stops while no tiles are needed
+    private final ThreadPoolExecutor tileDecoder =
+            new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
 
     // Setup paint with color and stroke styles
     private void setupPaint() {
@@ -36,74 +115,369 @@ public class OvermapView extends View {
         drawPaint.setStyle(Paint.Style.STROKE);
         drawPaint.setStrokeJoin(Paint.Join.ROUND);
         drawPaint.setStrokeCap(Paint.Cap.ROUND);
+
+        trailPaint = new Paint(drawPaint);
+        trailPaint.setColor(TRAIL_COLOR);
+        trailPaint.setStrokeWidth(TRAIL_WIDTH);
     }
 
     public OvermapView(Context context, AttributeSet attrs) {
         super(context, attrs);
         setFocusable(true);
         setFocusableInTouchMode(true);
-        overmapImage = BitmapFactory.decodeResource(getResources(), R.drawable.overmap);
-        keysImage = BitmapFactory.decodeResource(getResources(), R.drawable.little_keys);
-        oculosImage = BitmapFactory.decodeResource(getResources(), R.drawable.little_glasses);
-        stickmanImage = BitmapFactory.decodeResource(getResources(), R.drawable.stickman);
-        width = overmapImage.getWidth();
-        height = overmapImage.getHeight();
-        this.setMinimumWidth(width);
-        this.setMinimumHeight(height);
+        bitmaps = BitmapLoader.get(context);
+        tileDecoder.allowCoreThreadTimeOut(true);
+        // The plan is set by the location
         originX = 0;
         originY = 0;
-        keys = null;
-        oculos = null;
-        camera = null;
+        projection.set(originX, originY, width, height);
+        projector.set(originX, originY, width, height);
+        icons.put("keys", BitmapLoader.ICON_KEYS);
+        icons.put("oculos", BitmapLoader.ICON_OCULOS);
         setupPaint();
     }
 
+    // Decode the plan in one piece, or set up tiles when it would be too large
+    private void loadOvermap(int resource) {
+        releaseOvermap();
+        int[] size = new int[2];
+        bitmaps.readSize(resource, size);
+        if (4L * size[0] * size[1] > TILED_THRESHOLD_BYTES) {
+            try {
+                BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(
+                        getResources().openRawResource(resource), false);
+                setTiles(TiledMapRenderer.fromRegions(decoder));
+                return;
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open tiled map, decoding it whole", e);
+            }
+        }
+        // Floor plans are opaque
+        overmapImage = bitmaps.decode(resource, 0, 0, Bitmap.Config.RGB_565);
+        width = size[0];
+        height = size[1];
+        mapRect.set(0, 0, width, height);
+        this.setMinimumWidth(width);
+        this.setMinimumHeight(height);
+        projection.set(originX, originY, width, height);
+        projector.set(originX, originY, width, height);
+    }
+
+    private void setTiles(TiledMapRenderer.TileSource source) {
+        tiledMap = new TiledMapRenderer(this::post, tileDecoder, this::invalidate, source,
+                bitmaps, TiledMapRenderer.DEFAULT_CACHE_BYTES);
+        width = tiledMap.getWidth();
+        height = tiledMap.getHeight();
+        this.setMinimumWidth(Math.min(width, TILED_VIEWPORT));
+        this.setMinimumHeight(Math.min(height, TILED_VIEWPORT));
+        projection.set(originX, originY, width, height);
+        projector.set(originX, originY, width, height);
+    }
+
+    private void releaseOvermap() {
+        if (tiledMap != null) {
+            tiledMap.release();
+            tiledMap = null;
+        }
+        bitmaps.release(overmapImage);
+        overmapImage = null;
+    }
+
+    /** Switches to another floor plan, with the origin marker at the given map pixel. */
+    @Override
+    public void setMap(int resource, int originX, int originY) {
+        loadOvermap(resource);
+        requestLayout();
+        setOrigin(originX, originY);
+    }
+
+    /** Switches to a compiled floor plan, drawn from its tiles. */
+    @Override
+    public void setPlan(FloorPlan plan) {
+        releaseOvermap();
+        setTiles(TiledMapRenderer.fromPlan(plan));
+        requestLayout();
+        setOrigin(plan.getOriginX(), plan.getOriginY());
+    }
+
+    public boolean isTiled() {
+        return tiledMap != null;
+    }
+
+    /** Screen pixels per plan pixel in tiled mode, lower values zoom out. */
+    public void setMapScale(float scale) {
+        this.mapScale = scale;
+        invalidateAll();
+    }
+
+    public void setMaxRedrawRate(float maxRate) {
+        throttle.setMaxRate(maxRate);
+    }
+
+    public RedrawThrottle getRedrawThrottle() {
+        return throttle;
+    }
+
+    @Override
     public void setOrigin(int x, int y) {
         this.originX = x;
         this.originY = y;
-        this.invalidate();
+        projection.set(originX, originY, width, height);
+        projector.set(originX, originY, width, height);
+        objectsStale = true;
+        trailStale = true;
+        invalidateAll();
+    }
+
+    @Override
+    public void setObjects(ObjectRegistry registry) {
+        this.objects = registry;
+        this.objectCount = 0;
+        this.objectsStale = true;
+        invalidateAll();
+    }
+
+    @Override
+    public void setTrail(BreadcrumbTrail trail) {
+        this.trail = trail;
+        this.trailStale = true;
+        invalidateAll();
+    }
+
+    @Override
+    public void setIcons(IconAtlas icons) {
+        this.iconAtlas = icons;
+        invalidateAll();
     }
 
+    /**
+     * Batched per-frame update: moves the camera marker and picks up any change in the object
+     * registry or the trail, then schedules at most one redraw if anything changed.
+     */
+    @Override
+    public void updateFrame(float cameraX, float cameraZ) {
+        moveMarker(camera, cameraX, cameraZ);
+        if (trail != null && (trailStale || trail.getVersion() != trailVersion)) {
+            trailVersion = trail.getVersion();
+            trailStale = false;
+            refreshTrail();
+            dirty = true;
+        }
+        if (objects != null && (objectsStale || objects.getVersion() != objectsVersion)) {
+            objectsVersion = objects.getVersion();
+            objectsStale = false;
+            refreshObjects();
+        }
+        if (!dirty) {
+            throttle.onSkippedUpdate();
+        }
+        requestRedraw();
+    }
+
+    @Override
     public void setCamera(Vector3 pos) {
-        this.camera = pos;
-        this.invalidate();
+        setMarker(camera, pos);
     }
 
+    @Override
     public void setKeys(Vector3 pos) {
-        this.keys = pos;
-        this.invalidate();
+        setMarker(keys, pos);
     }
 
+    @Override
     public void setOculos(Vector3 pos) {
-        this.oculos = pos;
-        this.invalidate();
+        setMarker(oculos, pos);
+    }
+
+    private void setMarker(int[] marker, Vector3 pos) {
+        if (pos == null) {
+            if (marker[0] >= 0) {
+                marker[0] = -1;
+                dirty = true;
+            }
+        } else {
+            moveMarker(marker, pos.x, pos.z);
+        }
+        requestRedraw();
+    }
+
+    private void moveMarker(int[] marker, float x, float z) {
+        int newX = toPixelX(z);
+        int newY = toPixelY(x);
+        if (newX == marker[0] && newY == marker[1]) {
+            return;
+        }
+        marker[0] = newX;
+        marker[1] = newY;
+        dirty = true;
+    }
+
+    // Transform relative position to map pixels
+    private int toPixelX(float z) {
+        return projection.toPixelX(z);
+    }
+
+    private int toPixelY(float x) {
+        return projection.toPixelY(x);
     }
 
-    // Transform and draw relative vector
-    private void drawTransform(Canvas canvas, Vector3 pos, Bitmap bitmap) {
-        int newY = (int) (originY + (100f * pos.x));
-        if (newY < 0) { newY = 0; }
-        if (newY >= height) { newY = height - 1; }
-        int newX = (int) (originX + (100f * pos.z));
-        if (newX < 0) { newX = 0; }
-        if (newX >= width) { newX = width - 1; }
-        canvas.drawBitmap(bitmap, newX, newY, null);
+    // Re-project the registry objects on the map, redrawing only if an icon moved
+    private void refreshObjects() {
+        visibleObjects.clear();
+        int count = objects.withinBounds(projection.getMinX(), projection.getMinZ(),
+                projection.getMaxX(), projection.getMaxZ(), visibleObjects);
+
+        int[] pixelsX = previousPixelsX;
+        int[] pixelsY = previousPixelsY;
+        int[] kinds = previousIcons;
+        if (kinds.length < count) {
+            pixelsX = new int[2 * count];
+            pixelsY = new int[2 * count];
+            kinds = new int[2 * count];
+        }
+        if (objectXs.length < count) {
+            objectXs = new float[2 * count];
+            objectZs = new float[2 * count];
+        }
+        int drawn = 0;
+        for (int i = 0; i < count; i++) {
+            TrackedObject object = visibleObjects.get(i);
+            Integer icon = icons.get(object.getType());
+            if (icon == null) {
+                continue;
+            }
+            objectXs[drawn] = object.getX();
+            objectZs[drawn] = object.getZ();
+            kinds[drawn] = icon;
+            drawn++;
+        }
+        projector.project(objectXs, objectZs, drawn, pixelsX, pixelsY);
+
+        if (drawn != objectCount) {
+            dirty = true;
+        }
+        for (int i = 0; i < drawn && !dirty; i++) {
+            dirty = pixelsX[i] != objectPixelsX[i]
+                    || pixelsY[i] != objectPixelsY[i]
+                    || kinds[i] != objectIcons[i];
+        }
+
+        previousPixelsX = objectPixelsX;
+        previousPixelsY = objectPixelsY;
+        previousIcons = objectIcons;
+        objectPixelsX = pixelsX;
+        objectPixelsY = pixelsY;
+        objectIcons = kinds;
+        objectCount = drawn;
+    }
+
+    // Projects the kept points into one path, the tail is drawn on its own
+    private void refreshTrail() {
+        trailPath.rewind();
+        tailX = -1;
+        int count = trail.size();
+        for (int i = 0; i < count; i++) {
+            int x = toPixelX(trail.getZ(i));
+            int y = toPixelY(trail.getX(i));
+            if (i == 0) {
+                trailPath.moveTo(x, y);
+            } else {
+                trailPath.lineTo(x, y);
+            }
+            tailX = x;
+            tailY = y;
+        }
+    }
+
+    private void invalidateAll() {
+        dirty = true;
+        requestRedraw();
+    }
+
+    // Coalesce every change into one invalidate, no sooner than the throttle allows
+    private void requestRedraw() {
+        if (!dirty || redrawPosted) {
+            return;
+        }
+        long delay = throttle.delayUntilNext(SystemClock.uptimeMillis());
+        if (delay == 0) {
+            flushRedraw();
+        } else {
+            redrawPosted = true;
+            postDelayed(flushRedraw, delay);
+        }
+    }
+
+    private void flushRedraw() {
+        redrawPosted = false;
+        if (!dirty) {
+            return;
+        }
+        throttle.onRedraw(SystemClock.uptimeMillis());
+        invalidate();
+        dirty = false;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(flushRedraw);
+        redrawPosted = false;
+        if (tiledMap != null) {
+            // Tiles are decoded again on demand if the view comes back
+            tiledMap.getCache().clear();
+        }
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
-        canvas.drawBitmap(overmapImage, 0, 0, null);
+        if (tiledMap != null) {
+            // Center the view on the camera and only draw the tiles that are visible
+            float halfWidth = getWidth() / 2f / mapScale;
+            float halfHeight = getHeight() / 2f / mapScale;
+            float centerX = TiledMapRenderer.clampCenter(camera[0] >= 0 ? camera[0] : originX,
+                    halfWidth, width);
+            float centerY = TiledMapRenderer.clampCenter(camera[0] >= 0 ? camera[1] : originY,
+                    halfHeight, height);
+            canvas.save();
+            canvas.translate(getWidth() / 2f, getHeight() / 2f);
+            canvas.scale(mapScale, mapScale);
+            canvas.translate(-centerX, -centerY);
+            tiledMap.draw(canvas, mapScale, centerX - halfWidth, centerY - halfHeight,
+                    centerX + halfWidth, centerY + halfHeight);
+            drawMarkers(canvas);
+            canvas.restore();
+            return;
+        }
+
+        // Scaled back up when the plan was decoded at a lower resolution
+        canvas.drawBitmap(overmapImage, null, mapRect, null);
+        drawMarkers(canvas);
+    }
+
+    private void drawMarkers(Canvas canvas) {
         drawPaint.setColor(Color.BLUE);
         canvas.drawCircle(originX, originY, 20, drawPaint);
 
-        if (keys != null) {
-            drawTransform(canvas, keys, keysImage);
+        canvas.drawPath(trailPath, trailPaint);
+        if (tailX >= 0 && camera[0] >= 0) {
+            canvas.drawLine(tailX, tailY, camera[0], camera[1], trailPaint);
+        }
+
+        if (iconAtlas == null) {
+            return;
+        }
+        for (int i = 0; i < objectCount; i++) {
+            iconAtlas.draw(canvas, objectIcons[i], objectPixelsX[i], objectPixelsY[i], iconRect);
+        }
+        if (keys[0] >= 0) {
+            iconAtlas.draw(canvas, BitmapLoader.ICON_KEYS, keys[0], keys[1], iconRect);
         }
-        if (oculos != null) {
-            drawTransform(canvas, oculos, oculosImage);
+        if (oculos[0] >= 0) {
+            iconAtlas.draw(canvas, BitmapLoader.ICON_OCULOS, oculos[0], oculos[1], iconRect);
         }
-        if (camera != null) {
-            drawTransform(canvas, camera, stickmanImage);
+        if (camera[0] >= 0) {
+            iconAtlas.draw(canvas, BitmapLoader.ICON_STICKMAN, camera[0], camera[1], iconRect);
         }
     }
-}
\ No newline at end of file
+}
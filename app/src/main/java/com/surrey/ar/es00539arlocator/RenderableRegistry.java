@@ -0,0 +1,133 @@
+package com.surrey.ar.es00539arlocator;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+
+import com.google.ar.sceneform.rendering.ModelRenderable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Models keyed by object type. Renderables load on first use, or ahead of time through
+ * {@link #prefetch}, and the least recently used ones are dropped when the estimated memory
+ * budget is exceeded. A renderable set on a node stays in use as long as the node exists, so
+ * every node {@link #retain retains} its type until it is dropped, and only renderables no node
+ * holds are evicted. Sceneform loads must start on the UI thread, so use this from there.
+ */
+class RenderableRegistry {
+    static final int DEFAULT_MAX_CONCURRENT_LOADS = 2;
+    static final long DEFAULT_MEMORY_BUDGET = 32L * 1024 * 1024;
+    // Used when the size of a compressed model resource cannot be read
+    private static final long DEFAULT_MODEL_COST = 1024 * 1024;
+
+    private final Context context;
+    private final Map<String, Model> models = new HashMap<>();
+    private final List<String> placeableTypes = new ArrayList<>();
+    private final AsyncLruCache<String, ModelRenderable> cache;
+
+    private static final class Model {
+        final int resource;
+        final int preview;
+        long cost;
+
+        Model(int resource, int preview) {
+            this.resource = resource;
+            this.preview = preview;
+        }
+    }
+
+    RenderableRegistry(Context context, int maxConcurrentLoads, long memoryBudget) {
+        this.context = context;
+        this.cache = new AsyncLruCache<>(this::build, this::costOf, maxConcurrentLoads, memoryBudget);
+    }
+
+    /** Registers a model the user can place, in the order the model button cycles through. */
+    void registerPlaceable(String type, int resource, int preview) {
+        register(type, resource, preview);
+        placeableTypes.add(type);
+    }
+
+    /** Registers a model that is only placed by the app itself, such as marker models. */
+    void register(String type, int resource) {
+        register(type, resource, 0);
+    }
+
+    private void register(String type, int resource, int preview) {
+        Model model = new Model(resource, preview);
+        model.cost = estimateCost(resource);
+        models.put(type, model);
+    }
+
+    List<String> getPlaceableTypes() {
+        return Collections.unmodifiableList(placeableTypes);
+    }
+
+    /** Returns the placeable type after the given one, wrapping around. */
+    String nextPlaceableType(String type) {
+        int index = placeableTypes.indexOf(type);
+        return placeableTypes.get((index + 1) % placeableTypes.size());
+    }
+
+    int getPreview(String type) {
+        return models.get(type).preview;
+    }
+
+    CompletableFuture<ModelRenderable> get(String type) {
+        return cache.get(type);
+    }
+
+    CompletableFuture<ModelRenderable> prefetch(String type) {
+        return cache.prefetch(type);
+    }
+
+    /** Keeps the renderable of the type loaded, for as long as a node shows it. */
+    void retain(String type) {
+        cache.retain(type);
+    }
+
+    /** Called once a node showing the type is dropped. */
+    void release(String type) {
+        cache.release(type);
+    }
+
+    AsyncLruCache<String, ModelRenderable> getCache() {
+        return cache;
+    }
+
+    private CompletableFuture<ModelRenderable> build(String type) {
+        Model model = models.get(type);
+        if (model == null) {
+            CompletableFuture<ModelRenderable> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("Unknown model " + type));
+            return failed;
+        }
+        return ModelRenderable.builder()
+                .setSource(context, model.resource)
+                .build();
+    }
+
+    private long costOf(String type) {
+        Model model = models.get(type);
+        return model == null ? DEFAULT_MODEL_COST : model.cost;
+    }
+
+    // The packed model size is a good enough proxy for the memory a renderable holds
+    private long estimateCost(int resource) {
+        Resources resources = context.getResources();
+        try (AssetFileDescriptor descriptor = resources.openRawResourceFd(resource)) {
+            if (descriptor != null && descriptor.getLength() > 0) {
+                return descriptor.getLength();
+            }
+        } catch (Resources.NotFoundException | IOException e) {
+            // Compressed resources have no file descriptor
+        }
+        return DEFAULT_MODEL_COST;
+    }
+}
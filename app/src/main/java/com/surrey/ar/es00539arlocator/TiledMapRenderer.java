@@ -0,0 +1,231 @@
+package com.surrey.ar.es00539arlocator;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Draws a large floor plan from tiles that are decoded on demand in the background and kept in a
+ * byte-budgeted LRU cache. Only tiles that intersect the visible part of the plan are requested.
+ * Must be used from the thread that runs the owner's executor, usually the UI thread. Tiles are
+ * decoded on the decoder, which must run one task at a time on another thread, so that decoding
+ * never holds up drawing.
+ */
+class TiledMapRenderer implements TilePyramid.TileVisitor {
+    private static final String TAG = TiledMapRenderer.class.getSimpleName();
+    static final int TILE_SIZE = 256;
+    static final long DEFAULT_CACHE_BYTES = 16L * 1024 * 1024;
+
+    /** Where tiles come from. Only used from the decoder, one tile at a time. */
+    interface TileSource {
+        int getWidth();
+
+        int getHeight();
+
+        int getTileSize();
+
+        /** Decodes the tile covering the given plan pixels at its level, or returns null. */
+        Bitmap decode(int level, int column, int row, int[] bounds, BitmapFactory.Options options);
+
+        void release();
+    }
+
+    // Runs on the thread that draws, and what to do when a new tile can be drawn
+    private final Executor owner;
+    private final Executor decoder;
+    private final Runnable onTileReady;
+    private final TileSource source;
+    private final BitmapLoader bitmaps;
+    private final TilePyramid pyramid;
+    private final TileCache<Bitmap> cache;
+    private final Set<Long> pendingTiles = new HashSet<>();
+    // Tiles the source could not decode, not requested again
+    private final Set<Long> failedTiles = new HashSet<>();
+    // Also read by the decoder, to skip the tiles still queued once released
+    private volatile boolean released;
+
+    // Scratch state used while visiting tiles
+    private Canvas drawCanvas;
+    private final int[] bounds = new int[4];
+    private final Rect destination = new Rect();
+
+    TiledMapRenderer(Executor owner, Executor decoder, Runnable onTileReady, TileSource source,
+                     BitmapLoader bitmaps, long cacheBytes) {
+        this.owner = owner;
+        this.decoder = decoder;
+        this.onTileReady = onTileReady;
+        this.source = source;
+        this.bitmaps = bitmaps;
+        this.pyramid = new TilePyramid(source.getWidth(), source.getHeight(), source.getTileSize());
+        // Tiles count against the bitmap budget while they are cached
+        this.cache = new TileCache<>(cacheBytes, Bitmap::getAllocationByteCount, bitmaps::release);
+    }
+
+    /** Tiles cut from a plan image as they are needed. */
+    static TileSource fromRegions(BitmapRegionDecoder decoder) {
+        return new TileSource() {
+            @Override
+            public int getWidth() {
+                return decoder.getWidth();
+            }
+
+            @Override
+            public int getHeight() {
+                return decoder.getHeight();
+            }
+
+            @Override
+            public int getTileSize() {
+                return TILE_SIZE;
+            }
+
+            @Override
+            public Bitmap decode(int level, int column, int row, int[] bounds,
+                                 BitmapFactory.Options options) {
+                options.inSampleSize = TilePyramid.getSampleSize(level);
+                return decoder.decodeRegion(new Rect(bounds[0], bounds[1], bounds[2], bounds[3]),
+                        options);
+            }
+
+            @Override
+            public void release() {
+                decoder.recycle();
+            }
+        };
+    }
+
+    /** Tiles already cut and sampled by the plan compiler, decoded from the mapped package. */
+    static TileSource fromPlan(FloorPlan plan) {
+        return new TileSource() {
+            @Override
+            public int getWidth() {
+                return plan.getWidth();
+            }
+
+            @Override
+            public int getHeight() {
+                return plan.getHeight();
+            }
+
+            @Override
+            public int getTileSize() {
+                return plan.getTileSize();
+            }
+
+            @Override
+            public Bitmap decode(int level, int column, int row, int[] bounds,
+                                 BitmapFactory.Options options) {
+                ByteBuffer tile = plan.getTile(level, column, row);
+                if (tile == null) {
+                    return null;
+                }
+                return BitmapFactory.decodeStream(new ByteBufferInputStream(tile), null, options);
+            }
+
+            @Override
+            public void release() {
+                // The mapping goes away with the plan
+            }
+        };
+    }
+
+    /**
+     * Keeps a view that follows the camera inside the plan: the center coordinate to draw
+     * around, given half the view size and the plan size in plan pixels. A plan smaller than the
+     * view stays centered.
+     */
+    static float clampCenter(float center, float halfView, int planSize) {
+        if (2 * halfView >= planSize) {
+            return planSize / 2f;
+        }
+        return Math.max(halfView, Math.min(planSize - halfView, center));
+    }
+
+    int getWidth() {
+        return pyramid.getWidth();
+    }
+
+    int getHeight() {
+        return pyramid.getHeight();
+    }
+
+    TileCache<Bitmap> getCache() {
+        return cache;
+    }
+
+    /**
+     * Draws the tiles covering the given plan rectangle. The canvas must already map plan
+     * pixels to the screen; {@code scale} is the resulting screen pixels per plan pixel.
+     */
+    void draw(Canvas canvas, float scale, float left, float top, float right, float bottom) {
+        drawCanvas = canvas;
+        pyramid.forEachTile(pyramid.levelFor(scale), left, top, right, bottom, this);
+        drawCanvas = null;
+    }
+
+    @Override
+    public void visit(int level, int column, int row) {
+        long key = TilePyramid.key(level, column, row);
+        Bitmap tile = cache.get(key);
+        if (tile == null) {
+            requestTile(key);
+            return;
+        }
+        pyramid.getTileBounds(level, column, row, bounds);
+        destination.set(bounds[0], bounds[1], bounds[2], bounds[3]);
+        drawCanvas.drawBitmap(tile, null, destination, null);
+    }
+
+    private void requestTile(long key) {
+        if (released || failedTiles.contains(key) || !pendingTiles.add(key)) {
+            return;
+        }
+        decoder.execute(() -> {
+            if (released) {
+                return;
+            }
+            int level = TilePyramid.levelOf(key);
+            int column = TilePyramid.columnOf(key);
+            int row = TilePyramid.rowOf(key);
+            int[] region = new int[4];
+            pyramid.getTileBounds(level, column, row, region);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            // Floor plans are opaque, half the bytes of ARGB_8888
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            Bitmap tile = null;
+            try {
+                tile = source.decode(level, column, row, region, options);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                Log.e(TAG, "Could not decode tile " + Long.toHexString(key), e);
+            }
+            Bitmap decoded = tile;
+            owner.execute(() -> {
+                pendingTiles.remove(key);
+                if (decoded == null) {
+                    failedTiles.add(key);
+                } else if (!released) {
+                    bitmaps.track(decoded);
+                    cache.put(key, decoded);
+                    onTileReady.run();
+                } else {
+                    decoded.recycle();
+                }
+            });
+        });
+    }
+
+    /** Drops the tiles, and releases the source on the decoder after any tile it is decoding. */
+    void release() {
+        released = true;
+        cache.clear();
+        decoder.execute(source::release);
+    }
+}
@@ -0,0 +1,84 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projecting N positions to plan pixels one at a time with {@link MapProjection}, the way the
+ * overmap used to per object, against whole batches with {@link BatchProjector}. A quarter of the
+ * positions are outside the plan, so both clamp sides are taken.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchProjectorBenchmark {
+    @Param({"10", "1000", "100000"})
+    int points;
+
+    private float[] xs;
+    private float[] zs;
+    private int[] pixels;
+    private int[] pixelsX;
+    private int[] pixelsY;
+    private final MapProjection projection = new MapProjection();
+    private final BatchProjector projector = new BatchProjector();
+    private final BatchProjector rotated = new BatchProjector();
+
+    @Setup
+    public void setUp() {
+        projection.set(298, 250, 1024, 768);
+        projector.set(298, 250, 1024, 768);
+        rotated.set(298, 250, 1024, 768, MapProjection.PIXELS_PER_METER, 0.3f);
+        Random random = new Random(42);
+        xs = new float[points];
+        zs = new float[points];
+        for (int i = 0; i < points; i++) {
+            float spread = random.nextInt(4) == 0 ? 3f : 1f;
+            xs[i] = projection.getMinX()
+                    + (projection.getMaxX() - projection.getMinX()) * spread * random.nextFloat();
+            zs[i] = projection.getMinZ()
+                    + (projection.getMaxZ() - projection.getMinZ()) * spread * random.nextFloat();
+        }
+        pixels = new int[2 * points];
+        pixelsX = new int[points];
+        pixelsY = new int[points];
+    }
+
+    @Benchmark
+    public int[] perObject() {
+        for (int i = 0; i < points; i++) {
+            pixels[2 * i] = projection.toPixelX(zs[i]);
+            pixels[2 * i + 1] = projection.toPixelY(xs[i]);
+        }
+        return pixels;
+    }
+
+    @Benchmark
+    public int[] batch() {
+        projector.project(xs, zs, points, pixelsX, pixelsY);
+        return pixelsY;
+    }
+
+    // Same work, a full affine transform is no slower than the axis swap
+    @Benchmark
+    public int[] batchRotated() {
+        rotated.project(xs, zs, points, pixelsX, pixelsY);
+        return pixelsY;
+    }
+
+    // Serial below BatchProjector.PARALLEL_THRESHOLD
+    @Benchmark
+    public int[] batchParallel() {
+        projector.projectParallel(xs, zs, points, pixelsX, pixelsY);
+        return pixelsY;
+    }
+}
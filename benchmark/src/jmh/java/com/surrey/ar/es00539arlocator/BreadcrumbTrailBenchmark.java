@@ -0,0 +1,62 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording and simplifying a walk into the breadcrumb trail. One operation is ten minutes of
+ * camera positions at 60 frames per second, a walk along straight corridors with turns and
+ * tracking jitter. A larger tolerance passes more samples per segment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BreadcrumbTrailBenchmark {
+    private static final int SAMPLES = 10 * 60 * 60;
+    private static final float STEP = 1.4f / 60f;
+    private static final float JITTER = 0.01f;
+
+    @Param({"0.05", "0.1", "0.5"})
+    float tolerance;
+
+    private final float[] walk = new float[2 * SAMPLES];
+    private BreadcrumbTrail trail;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        float x = 0f;
+        float z = 0f;
+        double heading = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            // Turn at a corner now and then, otherwise walk straight
+            if (random.nextInt(600) == 0) {
+                heading += (random.nextBoolean() ? 0.5 : -0.5) * Math.PI;
+            }
+            x += STEP * (float) Math.cos(heading);
+            z += STEP * (float) Math.sin(heading);
+            walk[2 * i] = x + JITTER * (float) random.nextGaussian();
+            walk[2 * i + 1] = z + JITTER * (float) random.nextGaussian();
+        }
+        trail = new BreadcrumbTrail(BreadcrumbTrail.DEFAULT_CAPACITY, tolerance,
+                BreadcrumbTrail.DEFAULT_MIN_SPACING);
+    }
+
+    @Benchmark
+    public int record() {
+        trail.clear();
+        for (int i = 0; i < SAMPLES; i++) {
+            trail.add(walk[2 * i], walk[2 * i + 1]);
+        }
+        return trail.size();
+    }
+}
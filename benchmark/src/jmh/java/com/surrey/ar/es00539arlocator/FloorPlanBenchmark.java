@@ -0,0 +1,85 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a compiled floor plan package, which should not depend on the plan size, and reading
+ * what the app reads on a location switch: the occupancy grid and the tiles of one screen.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FloorPlanBenchmark {
+    // Encoded size of a mostly empty 256 pixel PNG tile
+    private static final int TILE_BYTES = 2048;
+
+    @Param({"1024", "8192", "32768"})
+    int planPixels;
+
+    private File file;
+    private FloorPlan plan;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        OccupancyGrid grid = new OccupancyGrid(planPixels / OccupancyGrid.DEFAULT_CELL_PIXELS,
+                planPixels / OccupancyGrid.DEFAULT_CELL_PIXELS, OccupancyGrid.DEFAULT_CELL_PIXELS);
+        for (int row = 0; row < grid.getRows(); row += 50) {
+            for (int column = 0; column < grid.getColumns(); column++) {
+                grid.setBlocked(column, row, true);
+            }
+        }
+        FloorPlanWriter writer = new FloorPlanWriter(planPixels, planPixels,
+                MapProjection.PIXELS_PER_METER);
+        writer.setOrigin(planPixels / 2, planPixels / 2);
+        writer.addMarker("origin", planPixels / 2f, planPixels / 2f);
+        writer.setGrid(grid);
+        file = File.createTempFile("plan", ".arfp");
+        byte[] tile = new byte[TILE_BYTES];
+        random.nextBytes(tile);
+        writer.write(file, 256, (level, column, row, bounds) -> tile);
+        plan = FloorPlan.open(file);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public FloorPlan open() throws IOException {
+        return FloorPlan.open(file);
+    }
+
+    @Benchmark
+    public OccupancyGrid readGrid() {
+        return plan.readGrid();
+    }
+
+    @Benchmark
+    public int readScreenTiles() {
+        // A 1024 pixel view at full resolution, 16 tiles
+        int bytes = 0;
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                ByteBuffer tile = plan.getTile(0, column, row);
+                bytes += tile.get(tile.position()) + tile.remaining();
+            }
+        }
+        return bytes;
+    }
+}
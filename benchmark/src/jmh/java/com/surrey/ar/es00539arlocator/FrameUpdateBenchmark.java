@@ -0,0 +1,79 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pure-Java part of onUpdateFrame: the camera position relative to the earth marker, the
+ * nearest object for the guidance triangle, the objects on the visible plan and their pixels,
+ * and a jittering marker pose through the anchor policy. Each invocation is one frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FrameUpdateBenchmark {
+    private static final String[] TYPES = {"keys", "oculos"};
+
+    @Param({"16", "256", "4096"})
+    int objects;
+
+    private final ObjectRegistry registry = new ObjectRegistry();
+    private final MapProjection projection = new MapProjection();
+    private final AnchorUpdatePolicy anchorPolicy = new AnchorUpdatePolicy();
+    private final List<TrackedObject> visible = new ArrayList<>();
+    private final float[] cameraRelative = new float[3];
+    private final float[] rotation = new float[4];
+    private int[] pixels;
+    private float jitter = 0.001f;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < objects; i++) {
+            registry.add(TYPES[i % TYPES.length],
+                    random.nextFloat() * 20f - 10f, 0f, random.nextFloat() * 20f - 10f);
+        }
+        projection.set(298, 250, 1024, 768);
+        pixels = new int[2 * objects];
+    }
+
+    @Benchmark
+    public void updateFrame(Blackhole blackhole) {
+        frame++;
+        float cameraX = (frame & 255) / 64f;
+        FrameMath.relativePosition(0f, 0f, 0f, cameraX, 1.5f, -cameraX, cameraRelative);
+
+        TrackedObject target = registry.nearest(cameraRelative[0], cameraRelative[2], "keys");
+        if (target != null) {
+            FrameMath.lookRotation(cameraRelative[0] - target.getX(), 1.5f - target.getY(),
+                    target.getZ() - cameraRelative[2], 0f, 1f, 0f, rotation);
+        }
+        blackhole.consume(rotation);
+
+        visible.clear();
+        int count = registry.withinBounds(projection.getMinX(), projection.getMinZ(),
+                projection.getMaxX(), projection.getMaxZ(), visible);
+        for (int i = 0; i < count; i++) {
+            TrackedObject object = visible.get(i);
+            pixels[2 * i] = projection.toPixelX(object.getZ());
+            pixels[2 * i + 1] = projection.toPixelY(object.getX());
+        }
+        blackhole.consume(pixels);
+
+        jitter = -jitter;
+        blackhole.consume(anchorPolicy.update("earth", jitter, 0f, -1f, 0f, 0f, 0f, 1f));
+    }
+}
@@ -0,0 +1,54 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The meter to pixel transform and its clamp. The share of positions outside the plan decides
+ * how often the clamp branches are taken.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MapProjectionBenchmark {
+    private static final int POSITIONS = 4096;
+
+    @Param({"0", "50"})
+    int outsidePercent;
+
+    private final float[] positions = new float[2 * POSITIONS];
+    private final int[] pixels = new int[2 * POSITIONS];
+    private final MapProjection projection = new MapProjection();
+
+    @Setup
+    public void setUp() {
+        projection.set(298, 250, 1024, 768);
+        Random random = new Random(42);
+        for (int i = 0; i < POSITIONS; i++) {
+            boolean outside = random.nextInt(100) < outsidePercent;
+            float spread = outside ? 40f : 1f;
+            positions[2 * i] = projection.getMinX()
+                    + (projection.getMaxX() - projection.getMinX()) * spread * random.nextFloat();
+            positions[2 * i + 1] = projection.getMinZ()
+                    + (projection.getMaxZ() - projection.getMinZ()) * spread * random.nextFloat();
+        }
+    }
+
+    @Benchmark
+    public int[] toPixels() {
+        for (int i = 0; i < POSITIONS; i++) {
+            pixels[2 * i] = projection.toPixelX(positions[2 * i + 1]);
+            pixels[2 * i + 1] = projection.toPixelY(positions[2 * i]);
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,96 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest object queries from 10 to 100k objects, against the linear scan over every object
+ * that the registry replaces. One object in a hundred is a rare type, and one in a thousand is
+ * far away from the others, so that the search has to step past empty cells.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ObjectRegistryBenchmark {
+    @Param({"10", "100", "1000", "10000", "100000"})
+    int objects;
+
+    private final ObjectRegistry registry = new ObjectRegistry();
+    private final List<TrackedObject> nearest = new ArrayList<>();
+    private float[] queryX;
+    private float[] queryZ;
+    private int query;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        float extent = (float) Math.sqrt(objects) * 2f;
+        for (int i = 0; i < objects; i++) {
+            float scale = i % 1000 == 999 ? 100f : 1f;
+            registry.add(i % 100 == 99 ? "oculos" : "keys",
+                    (random.nextFloat() - 0.5f) * extent * scale, 0f,
+                    (random.nextFloat() - 0.5f) * extent * scale);
+        }
+        queryX = new float[256];
+        queryZ = new float[256];
+        for (int i = 0; i < queryX.length; i++) {
+            queryX[i] = (random.nextFloat() - 0.5f) * extent;
+            queryZ[i] = (random.nextFloat() - 0.5f) * extent;
+        }
+    }
+
+    @Benchmark
+    public TrackedObject nearest() {
+        int i = query++ & 255;
+        return registry.nearest(queryX[i], queryZ[i], "keys");
+    }
+
+    @Benchmark
+    public TrackedObject nearestRareType() {
+        int i = query++ & 255;
+        return registry.nearest(queryX[i], queryZ[i], "oculos");
+    }
+
+    @Benchmark
+    public List<TrackedObject> nearestFive() {
+        int i = query++ & 255;
+        nearest.clear();
+        registry.nearest(queryX[i], queryZ[i], 5, "keys", nearest);
+        return nearest;
+    }
+
+    @Benchmark
+    public TrackedObject linearScan() {
+        int i = query++ & 255;
+        float x = queryX[i];
+        float z = queryZ[i];
+        List<TrackedObject> all = registry.getObjects();
+        TrackedObject best = null;
+        float bestDist = Float.MAX_VALUE;
+        for (int j = 0; j < all.size(); j++) {
+            TrackedObject object = all.get(j);
+            if (!"keys".equals(object.getType())) {
+                continue;
+            }
+            float dx = object.getX() - x;
+            float dz = object.getZ() - z;
+            float d = dx * dx + dz * dz;
+            if (d < bestDist) {
+                bestDist = d;
+                best = object;
+            }
+        }
+        return best;
+    }
+}
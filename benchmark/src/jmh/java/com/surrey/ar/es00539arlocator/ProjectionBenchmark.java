@@ -0,0 +1,108 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projects N world positions to the earth marker frame and then to floor plan pixels, the work
+ * the overmap does for every object on a frame. Each invocation is one frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProjectionBenchmark {
+    @Param({"16", "256", "4096"})
+    int objects;
+
+    private float[] world;
+    private final float[] relative = new float[3];
+    private int[] pixels;
+    private final MapProjection projection = new MapProjection();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        world = new float[3 * objects];
+        for (int i = 0; i < world.length; i++) {
+            world[i] = random.nextFloat() * 20f - 10f;
+        }
+        pixels = new int[2 * objects];
+        projection.set(298, 250, 1024, 768);
+    }
+
+    @Benchmark
+    public int[] projectObjects() {
+        for (int i = 0; i < objects; i++) {
+            FrameMath.relativePosition(1f, 0.5f, -2f,
+                    world[3 * i], world[3 * i + 1], world[3 * i + 2], relative);
+            pixels[2 * i] = projection.toPixelX(relative[2]);
+            pixels[2 * i + 1] = projection.toPixelY(relative[0]);
+        }
+        return pixels;
+    }
+
+    // The Vector3 code it replaced, with a subtraction, a result and three axes per object
+    @Benchmark
+    public int[] projectObjectsAllocating() {
+        Vector3 origin = new Vector3(1f, 0.5f, -2f);
+        for (int i = 0; i < objects; i++) {
+            Vector3 distance = Vector3.subtract(
+                    new Vector3(world[3 * i], world[3 * i + 1], world[3 * i + 2]), origin);
+            Vector3 position = new Vector3();
+            position.x = Vector3.dot(distance, Vector3.right());
+            position.y = Vector3.dot(distance, Vector3.up());
+            position.z = Vector3.dot(distance, Vector3.forward());
+            pixels[2 * i] = projection.toPixelX(position.z);
+            pixels[2 * i + 1] = projection.toPixelY(position.x);
+        }
+        return pixels;
+    }
+
+    /**
+     * The parts of Sceneform's Vector3 the old code used, which is an Android library and not
+     * on this classpath. Like Sceneform, every operation and every axis is a new vector.
+     */
+    static final class Vector3 {
+        float x;
+        float y;
+        float z;
+
+        Vector3() {
+        }
+
+        Vector3(float x, float y, float z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        static Vector3 subtract(Vector3 lhs, Vector3 rhs) {
+            return new Vector3(lhs.x - rhs.x, lhs.y - rhs.y, lhs.z - rhs.z);
+        }
+
+        static float dot(Vector3 lhs, Vector3 rhs) {
+            return lhs.x * rhs.x + lhs.y * rhs.y + lhs.z * rhs.z;
+        }
+
+        static Vector3 right() {
+            return new Vector3(1f, 0f, 0f);
+        }
+
+        static Vector3 up() {
+            return new Vector3(0f, 1f, 0f);
+        }
+
+        static Vector3 forward() {
+            return new Vector3(0f, 0f, -1f);
+        }
+    }
+}
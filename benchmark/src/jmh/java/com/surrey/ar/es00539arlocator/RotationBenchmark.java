@@ -0,0 +1,41 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** The guidance triangle rotation, computed once per frame. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RotationBenchmark {
+    private static final int DIRECTIONS = 1024;
+
+    private final float[] directions = new float[3 * DIRECTIONS];
+    private final float[] rotation = new float[4];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = random.nextFloat() * 2f - 1f;
+        }
+    }
+
+    @Benchmark
+    public float[] lookRotation() {
+        int i = 3 * next;
+        next = (next + 1) & (DIRECTIONS - 1);
+        FrameMath.lookRotation(directions[i], directions[i + 1], directions[i + 2],
+                0f, 1f, 0f, rotation);
+        return rotation;
+    }
+}
@@ -0,0 +1,137 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides when a continuously tracked marker needs a new anchor. Each reported pose goes
+ * through an exponential smoothing filter, and a new anchor is only asked for when the smoothed
+ * pose has drifted from the anchored one by more than the translation or rotation threshold.
+ *
+ * <p>Poses are a translation (x, y, z) and a unit quaternion (x, y, z, w).
+ */
+public class AnchorUpdatePolicy {
+    public static final float DEFAULT_TRANSLATION_THRESHOLD = 0.02f;
+    public static final float DEFAULT_ROTATION_THRESHOLD = (float) Math.toRadians(5);
+    public static final float DEFAULT_SMOOTHING = 0.3f;
+
+    private final float translationThreshold;
+    private final float rotationThreshold;
+    private final float smoothing;
+    private final Map<String, Track> tracks = new HashMap<>();
+    private long updates;
+    private long anchorsCreated;
+
+    private static final class Track {
+        final float[] filtered = new float[7];
+        final float[] anchored = new float[7];
+    }
+
+    public AnchorUpdatePolicy() {
+        this(DEFAULT_TRANSLATION_THRESHOLD, DEFAULT_ROTATION_THRESHOLD, DEFAULT_SMOOTHING);
+    }
+
+    /**
+     * @param translationThreshold meters the pose may drift before re-anchoring
+     * @param rotationThreshold radians the pose may turn before re-anchoring
+     * @param smoothing weight of each new sample, 1 disables smoothing
+     */
+    public AnchorUpdatePolicy(float translationThreshold, float rotationThreshold, float smoothing) {
+        if (!(smoothing > 0f && smoothing <= 1f)) {
+            throw new IllegalArgumentException("smoothing must be in (0, 1]: " + smoothing);
+        }
+        this.translationThreshold = translationThreshold;
+        this.rotationThreshold = rotationThreshold;
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * Feeds a new pose for the marker and returns true when it should be re-anchored at the
+     * pose returned by {@link #getAnchorPose}. The first pose of a marker always anchors.
+     */
+    public boolean update(String marker, float tx, float ty, float tz,
+                          float qx, float qy, float qz, float qw) {
+        updates++;
+        Track track = tracks.get(marker);
+        if (track == null) {
+            track = new Track();
+            tracks.put(marker, track);
+            set(track.filtered, tx, ty, tz, qx, qy, qz, qw);
+            return anchor(track);
+        }
+
+        float[] f = track.filtered;
+        f[0] += smoothing * (tx - f[0]);
+        f[1] += smoothing * (ty - f[1]);
+        f[2] += smoothing * (tz - f[2]);
+        // Normalized lerp, on the same hemisphere as the filtered rotation
+        float sign = f[3] * qx + f[4] * qy + f[5] * qz + f[6] * qw < 0f ? -1f : 1f;
+        f[3] += smoothing * (sign * qx - f[3]);
+        f[4] += smoothing * (sign * qy - f[4]);
+        f[5] += smoothing * (sign * qz - f[5]);
+        f[6] += smoothing * (sign * qw - f[6]);
+        float length = (float) Math.sqrt(f[3] * f[3] + f[4] * f[4] + f[5] * f[5] + f[6] * f[6]);
+        f[3] /= length;
+        f[4] /= length;
+        f[5] /= length;
+        f[6] /= length;
+
+        float[] a = track.anchored;
+        float dx = f[0] - a[0];
+        float dy = f[1] - a[1];
+        float dz = f[2] - a[2];
+        if (dx * dx + dy * dy + dz * dz > translationThreshold * translationThreshold) {
+            return anchor(track);
+        }
+        float dot = Math.abs(f[3] * a[3] + f[4] * a[4] + f[5] * a[5] + f[6] * a[6]);
+        if (2.0 * Math.acos(Math.min(1f, dot)) > rotationThreshold) {
+            return anchor(track);
+        }
+        return false;
+    }
+
+    /** Writes the smoothed pose to anchor the marker at, as tx, ty, tz, qx, qy, qz, qw. */
+    public void getAnchorPose(String marker, float[] out) {
+        System.arraycopy(tracks.get(marker).anchored, 0, out, 0, 7);
+    }
+
+    /** Forgets a marker, its next pose anchors again. */
+    public void reset(String marker) {
+        tracks.remove(marker);
+    }
+
+    /** Forgets every marker, such as when the markers are tracked again from scratch. */
+    public void reset() {
+        tracks.clear();
+    }
+
+    /** Forgets every marker but the given one, which keeps its anchor. */
+    public void resetOthers(String marker) {
+        tracks.keySet().removeIf(name -> !name.equals(marker));
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+
+    public long getAnchorsCreated() {
+        return anchorsCreated;
+    }
+
+    private boolean anchor(Track track) {
+        System.arraycopy(track.filtered, 0, track.anchored, 0, 7);
+        anchorsCreated++;
+        return true;
+    }
+
+    private static void set(float[] pose, float tx, float ty, float tz,
+                            float qx, float qy, float qz, float qw) {
+        pose[0] = tx;
+        pose[1] = ty;
+        pose[2] = tz;
+        pose[3] = qx;
+        pose[4] = qy;
+        pose[5] = qz;
+        pose[6] = qw;
+    }
+}
@@ -0,0 +1,272 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToLongFunction;
+
+/**
+ * Loads values on first use with a cap on concurrent loads, shares one future between every
+ * caller waiting on the same key, and keeps loaded values in least-recently-used order within a
+ * cost budget. A load counts against the budget from the moment it starts: values are evicted to
+ * make room for it, and while other loads are running it waits until it fits, so a burst of
+ * {@link #prefetch} requests cannot run far past the budget before anything is evicted.
+ *
+ * <p>Failed loads are remembered, up to {@link #MAX_FAILURES} keys, and handed out again rather
+ * than retried on every request.
+ *
+ * <p>Keys that are {@link #retain retained} are never evicted, since dropping a value that is
+ * still in use would only load it a second time. The budget can then be exceeded until they are
+ * released.
+ *
+ * <p>Requests made with {@link #get} start before queued {@link #prefetch} requests. The loader
+ * runs on the thread that made the request, or on the thread that completed the load that freed
+ * its slot, never while the cache lock is held.
+ */
+public class AsyncLruCache<K, V> {
+    /** Starts loading the value for a key. */
+    public interface Loader<K, V> {
+        CompletableFuture<V> load(K key);
+    }
+
+    /** Failed keys remembered, the least recently requested is retried once there are more. */
+    public static final int MAX_FAILURES = 64;
+
+    private static final int PRIORITY_NOW = 0;
+    private static final int PRIORITY_PREFETCH = 1;
+
+    private final Loader<K, V> loader;
+    private final ToLongFunction<K> cost;
+    private final int maxConcurrent;
+    private long maxCost;
+
+    private final LinkedHashMap<K, CompletableFuture<V>> loaded =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, Request<K, V>> inFlight = new HashMap<>();
+    private final PriorityQueue<Request<K, V>> queue = new PriorityQueue<>();
+    private final LinkedHashMap<K, CompletableFuture<V>> failures =
+            new LinkedHashMap<K, CompletableFuture<V>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, CompletableFuture<V>> eldest) {
+                    return size() > MAX_FAILURES;
+                }
+            };
+    private final Map<K, Integer> references = new HashMap<>();
+    private int running;
+    private long runningCost;
+    private long loadedCost;
+    private long sequence;
+
+    private long hits;
+    private long misses;
+    private long sharedLoads;
+    private long evictions;
+    private long failedHits;
+
+    /**
+     * @param cost estimated cost of the value for a key, in the same unit as {@code maxCost}
+     */
+    public AsyncLruCache(Loader<K, V> loader, ToLongFunction<K> cost, int maxConcurrent,
+                         long maxCost) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive: " + maxConcurrent);
+        }
+        this.loader = loader;
+        this.cost = cost;
+        this.maxConcurrent = maxConcurrent;
+        this.maxCost = maxCost;
+    }
+
+    /** Returns the value for the key, loading it first if needed. */
+    public CompletableFuture<V> get(K key) {
+        return request(key, PRIORITY_NOW);
+    }
+
+    /** Starts loading the value in the background, after any pending {@link #get}. */
+    public CompletableFuture<V> prefetch(K key) {
+        return request(key, PRIORITY_PREFETCH);
+    }
+
+    /** Keeps the value for the key from being evicted until a matching {@link #release}. */
+    public synchronized void retain(K key) {
+        references.merge(key, 1, Integer::sum);
+    }
+
+    /** Undoes one {@link #retain}, the value can be evicted once no retain is left. */
+    public synchronized void release(K key) {
+        Integer count = references.get(key);
+        if (count == null) {
+            throw new IllegalStateException("Released more often than retained: " + key);
+        }
+        if (count == 1) {
+            references.remove(key);
+            evict(null, 0);
+        } else {
+            references.put(key, count - 1);
+        }
+    }
+
+    public synchronized boolean isLoaded(K key) {
+        return loaded.containsKey(key);
+    }
+
+    public synchronized void setMaxCost(long maxCost) {
+        this.maxCost = maxCost;
+        evict(null, 0);
+    }
+
+    public synchronized long getLoadedCost() {
+        return loadedCost;
+    }
+
+    /** Estimated cost of the loads running now, counted against the budget. */
+    public synchronized long getRunningCost() {
+        return runningCost;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Requests that joined a load already queued or running for the same key. */
+    public synchronized long getSharedLoads() {
+        return sharedLoads;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** Requests answered with a load that failed before. */
+    public synchronized long getFailedHits() {
+        return failedHits;
+    }
+
+    private CompletableFuture<V> request(K key, int priority) {
+        Request<K, V> request;
+        synchronized (this) {
+            CompletableFuture<V> value = loaded.get(key);
+            if (value != null) {
+                hits++;
+                return value;
+            }
+            CompletableFuture<V> failure = failures.get(key);
+            if (failure != null) {
+                failedHits++;
+                return failure;
+            }
+            request = inFlight.get(key);
+            if (request != null) {
+                sharedLoads++;
+                if (priority < request.priority && queue.remove(request)) {
+                    request.priority = priority;
+                    queue.add(request);
+                }
+                return request.future;
+            }
+            misses++;
+            request = new Request<>(key, cost.applyAsLong(key), priority, sequence++);
+            inFlight.put(key, request);
+            queue.add(request);
+        }
+        startQueued();
+        return request.future;
+    }
+
+    // Starts as many queued loads as there are free slots and budget for, outside the lock. The
+    // first one in line waits while running loads leave no room for it, but with nothing running
+    // it starts anyway, or it never would
+    private void startQueued() {
+        List<Request<K, V>> starting = new ArrayList<>();
+        synchronized (this) {
+            while (running < maxConcurrent && !queue.isEmpty()) {
+                Request<K, V> next = queue.peek();
+                evict(null, next.cost);
+                if (running > 0 && loadedCost + runningCost + next.cost > maxCost) {
+                    break;
+                }
+                starting.add(queue.poll());
+                running++;
+                runningCost += next.cost;
+            }
+        }
+        for (Request<K, V> request : starting) {
+            CompletableFuture<V> load;
+            try {
+                load = loader.load(request.key);
+            } catch (RuntimeException e) {
+                load = new CompletableFuture<>();
+                load.completeExceptionally(e);
+            }
+            load.whenComplete((value, throwable) -> finish(request, value, throwable));
+        }
+    }
+
+    private void finish(Request<K, V> request, V value, Throwable throwable) {
+        synchronized (this) {
+            running--;
+            runningCost -= request.cost;
+            inFlight.remove(request.key);
+            if (throwable == null) {
+                loaded.put(request.key, request.future);
+                loadedCost += request.cost;
+                evict(request.key, 0);
+            } else {
+                failures.put(request.key, request.future);
+            }
+        }
+        if (throwable == null) {
+            request.future.complete(value);
+        } else {
+            request.future.completeExceptionally(throwable);
+        }
+        startQueued();
+    }
+
+    // Drops least recently used values until they fit in the budget with the running loads and
+    // the incoming cost, keeping the one just loaded and the retained ones
+    private void evict(K keep, long incoming) {
+        Iterator<K> iterator = loaded.keySet().iterator();
+        while (loadedCost + runningCost + incoming > maxCost && iterator.hasNext()) {
+            K eldest = iterator.next();
+            if (eldest.equals(keep) || references.containsKey(eldest)) {
+                continue;
+            }
+            iterator.remove();
+            loadedCost -= cost.applyAsLong(eldest);
+            evictions++;
+        }
+    }
+
+    private static final class Request<K, V> implements Comparable<Request<K, V>> {
+        final K key;
+        final long cost;
+        final long order;
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        int priority;
+
+        Request(K key, long cost, int priority, long order) {
+            this.key = key;
+            this.cost = cost;
+            this.priority = priority;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Request<K, V> other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+}
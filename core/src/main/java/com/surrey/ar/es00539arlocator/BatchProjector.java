@@ -0,0 +1,111 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.stream.IntStream;
+
+/**
+ * Projects whole batches of positions relative to the origin marker to floor plan pixels with
+ * one 2D affine transform:
+ *
+ * <pre>
+ * pixel x = a * x + b * z + tx
+ * pixel y = c * x + d * z + ty
+ * </pre>
+ *
+ * truncated to int and clamped to the plan like {@link MapProjection}, which it matches exactly
+ * for finite positions when set with {@link #set(int, int, int, int)}. Positions and pixels are
+ * separate x and z, and x and y, arrays, so that the loop has no strided access and no branches
+ * and the JIT can run it on vector registers: the clamp is {@link Math#min} and
+ * {@link Math#max}, which compile to conditional moves or vector min and max rather than jumps.
+ *
+ * <p>Not thread safe to set, {@link #projectParallel} only reads it.
+ */
+public class BatchProjector {
+    /** Below this many positions {@link #projectParallel} runs on the calling thread. */
+    public static final int PARALLEL_THRESHOLD = 1 << 15;
+    // Positions per parallel task, large enough to outweigh handing the task over
+    private static final int CHUNK = 1 << 13;
+
+    private float a;
+    private float b;
+    private float c;
+    private float d;
+    private float tx;
+    private float ty;
+    private int maxX = -1;
+    private int maxY = -1;
+
+    /** The transform of {@link MapProjection}, without rotation. */
+    public void set(int originX, int originY, int width, int height) {
+        set(originX, originY, width, height, MapProjection.PIXELS_PER_METER, 0f);
+    }
+
+    /**
+     * A plan at the given scale, turned counterclockwise by {@code rotation} radians around the
+     * origin marker pixel. At rotation 0 the plan x axis follows z and the plan y axis follows x.
+     */
+    public void set(int originX, int originY, int width, int height, float pixelsPerMeter,
+                    float rotation) {
+        // Exactly 0 and 1 at rotation 0, so that the result matches MapProjection
+        float cos = (float) Math.cos(rotation);
+        float sin = (float) Math.sin(rotation);
+        setAffine(-pixelsPerMeter * sin, pixelsPerMeter * cos, originX,
+                pixelsPerMeter * cos, pixelsPerMeter * sin, originY, width, height);
+    }
+
+    /** Any affine transform, onto a plan of the given size in pixels. */
+    public void setAffine(float a, float b, float tx, float c, float d, float ty,
+                          int width, int height) {
+        this.a = a;
+        this.b = b;
+        this.tx = tx;
+        this.c = c;
+        this.d = d;
+        this.ty = ty;
+        this.maxX = width - 1;
+        this.maxY = height - 1;
+    }
+
+    /**
+     * Projects positions {@code 0} to {@code count} of {@code xs} and {@code zs} into the same
+     * indices of {@code pixelsX} and {@code pixelsY}, on the calling thread.
+     */
+    public void project(float[] xs, float[] zs, int count, int[] pixelsX, int[] pixelsY) {
+        project(xs, zs, 0, count, pixelsX, pixelsY);
+    }
+
+    /**
+     * Like {@link #project(float[], float[], int, int[], int[])}, split into chunks on the
+     * common fork join pool once there are at least {@link #PARALLEL_THRESHOLD} positions.
+     */
+    public void projectParallel(float[] xs, float[] zs, int count, int[] pixelsX,
+                                int[] pixelsY) {
+        if (count < PARALLEL_THRESHOLD) {
+            project(xs, zs, 0, count, pixelsX, pixelsY);
+            return;
+        }
+        IntStream.range(0, (count + CHUNK - 1) / CHUNK).parallel().forEach(chunk -> {
+            int from = chunk * CHUNK;
+            project(xs, zs, from, Math.min(count, from + CHUNK), pixelsX, pixelsY);
+        });
+    }
+
+    private void project(float[] xs, float[] zs, int from, int to, int[] pixelsX,
+                         int[] pixelsY) {
+        // Locals, so that the loop does not reload fields it cannot prove unchanged
+        float a = this.a;
+        float b = this.b;
+        float c = this.c;
+        float d = this.d;
+        float tx = this.tx;
+        float ty = this.ty;
+        int maxX = this.maxX;
+        int maxY = this.maxY;
+        for (int i = from; i < to; i++) {
+            float x = xs[i];
+            float z = zs[i];
+            // Same order as MapProjection: truncate, then clamp low and high
+            pixelsX[i] = Math.min(Math.max((int) (a * x + b * z + tx), 0), maxX);
+            pixelsY[i] = Math.min(Math.max((int) (c * x + d * z + ty), 0), maxY);
+        }
+    }
+}
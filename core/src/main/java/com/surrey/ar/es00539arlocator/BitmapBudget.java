@@ -0,0 +1,78 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps count of the bytes held by decoded bitmaps against a budget, and picks decode sample
+ * sizes that fit both the size a bitmap is shown at and what is left of the budget. Safe to use
+ * from any thread; concurrent decodes may overshoot the budget by at most one bitmap each.
+ */
+public class BitmapBudget {
+    private final long maxBytes;
+    private final AtomicLong decodedBytes = new AtomicLong();
+    private final AtomicLong peakBytes = new AtomicLong();
+
+    public BitmapBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Largest power of two sample size that keeps the decoded image at least as large as the
+     * requested size in both directions, 1 when the image is already smaller.
+     */
+    public static int sampleSizeFor(int width, int height, int requestedWidth, int requestedHeight) {
+        int sampleSize = 1;
+        while (width / (2 * sampleSize) >= requestedWidth
+                && height / (2 * sampleSize) >= requestedHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /** Bytes a decode at the given sample size takes, rounding up like the decoder does. */
+    public static long bytesFor(int width, int height, int sampleSize, int bytesPerPixel) {
+        long sampledWidth = (width + sampleSize - 1) / sampleSize;
+        long sampledHeight = (height + sampleSize - 1) / sampleSize;
+        return sampledWidth * sampledHeight * bytesPerPixel;
+    }
+
+    /**
+     * Raises the sample size until the decode fits in what is left of the budget. Returns the
+     * sample size to use, which is the given one when it already fits and at most
+     * {@code maxSampleSize}.
+     */
+    public int fit(int width, int height, int bytesPerPixel, int sampleSize, int maxSampleSize) {
+        long available = maxBytes - decodedBytes.get();
+        while (sampleSize < maxSampleSize
+                && bytesFor(width, height, sampleSize, bytesPerPixel) > available) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /** Counts a decoded bitmap. */
+    public void add(long bytes) {
+        long total = decodedBytes.addAndGet(bytes);
+        long peak;
+        do {
+            peak = peakBytes.get();
+        } while (total > peak && !peakBytes.compareAndSet(peak, total));
+    }
+
+    /** Stops counting a bitmap that was recycled or dropped. */
+    public void remove(long bytes) {
+        decodedBytes.addAndGet(-bytes);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getDecodedBytes() {
+        return decodedBytes.get();
+    }
+
+    public long getPeakBytes() {
+        return peakBytes.get();
+    }
+}
@@ -0,0 +1,159 @@
+package com.surrey.ar.es00539arlocator;
+
+/**
+ * Where the camera has walked, relative to the origin marker, simplified as it is recorded so
+ * that a session of hours fits in a fixed number of points.
+ *
+ * <p>Samples closer than the minimum spacing to the last one are dropped. The others extend an
+ * open segment from the last kept point to the newest sample, the head, for as long as every
+ * sample passed on the way stays within the tolerance of that segment. When one would not, the
+ * head is kept and starts the next segment, so no dropped sample is further than the tolerance
+ * and the minimum spacing from the trail. Kept points go into a ring, the oldest are forgotten
+ * once it is full.
+ *
+ * <p>Only x and z are recorded, the plan axes. Not thread safe.
+ */
+public class BreadcrumbTrail {
+    public static final int DEFAULT_CAPACITY = 1024;
+    /** Meters a dropped sample may be off the trail. */
+    public static final float DEFAULT_TOLERANCE = 0.1f;
+    /** Meters between samples, closer ones are camera jitter. */
+    public static final float DEFAULT_MIN_SPACING = 0.05f;
+    // Samples an open segment can pass, a longer straight walk is split
+    private static final int MAX_PASSED = 256;
+
+    private final float tolerance;
+    private final float minSpacing;
+
+    // Kept points, oldest at start
+    private final float[] xs;
+    private final float[] zs;
+    private int start;
+    private int count;
+    private int version;
+
+    // Samples passed by the open segment, and its newest sample
+    private final float[] passedX = new float[MAX_PASSED];
+    private final float[] passedZ = new float[MAX_PASSED];
+    private int passedCount;
+    private float headX;
+    private float headZ;
+    private boolean hasHead;
+
+    public BreadcrumbTrail() {
+        this(DEFAULT_CAPACITY, DEFAULT_TOLERANCE, DEFAULT_MIN_SPACING);
+    }
+
+    public BreadcrumbTrail(int capacity, float tolerance, float minSpacing) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2: " + capacity);
+        }
+        this.xs = new float[capacity];
+        this.zs = new float[capacity];
+        this.tolerance = tolerance;
+        this.minSpacing = minSpacing;
+    }
+
+    /** Records a camera position and returns whether the kept points changed. */
+    public boolean add(float x, float z) {
+        if (count == 0) {
+            keep(x, z);
+            return true;
+        }
+        float fromX = hasHead ? headX : xs[last()];
+        float fromZ = hasHead ? headZ : zs[last()];
+        float dx = x - fromX;
+        float dz = z - fromZ;
+        if (dx * dx + dz * dz < minSpacing * minSpacing) {
+            return false;
+        }
+        if (!hasHead) {
+            setHead(x, z);
+            return false;
+        }
+        if (passedCount < MAX_PASSED && fits(x, z)) {
+            // The head becomes a passed sample of the longer segment
+            passedX[passedCount] = headX;
+            passedZ[passedCount] = headZ;
+            passedCount++;
+            setHead(x, z);
+            return false;
+        }
+        keep(headX, headZ);
+        setHead(x, z);
+        return true;
+    }
+
+    // Whether the head and every passed sample stay close to the segment from the last kept point
+    private boolean fits(float x, float z) {
+        int end = last();
+        float ax = xs[end];
+        float az = zs[end];
+        float limit = tolerance * tolerance;
+        if (FrameMath.segmentDistanceSquared(ax, az, x, z, headX, headZ) > limit) {
+            return false;
+        }
+        for (int i = passedCount - 1; i >= 0; i--) {
+            if (FrameMath.segmentDistanceSquared(ax, az, x, z, passedX[i], passedZ[i]) > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void setHead(float x, float z) {
+        headX = x;
+        headZ = z;
+        hasHead = true;
+    }
+
+    private void keep(float x, float z) {
+        if (count == xs.length) {
+            start = (start + 1) % xs.length;
+            count--;
+        }
+        int index = (start + count) % xs.length;
+        xs[index] = x;
+        zs[index] = z;
+        count++;
+        passedCount = 0;
+        hasHead = false;
+        version++;
+    }
+
+    private int last() {
+        return (start + count - 1) % xs.length;
+    }
+
+    /** Forgets the whole trail, for instance when the origin marker changes. */
+    public void clear() {
+        start = 0;
+        count = 0;
+        passedCount = 0;
+        hasHead = false;
+        version++;
+    }
+
+    /** Number of kept points. */
+    public int size() {
+        return count;
+    }
+
+    /** X of the kept point at the given index, 0 being the oldest. */
+    public float getX(int index) {
+        return xs[(start + index) % xs.length];
+    }
+
+    public float getZ(int index) {
+        return zs[(start + index) % xs.length];
+    }
+
+    /** Changes whenever the kept points change, the head moving does not count. */
+    public int getVersion() {
+        return version;
+    }
+
+    public int getCapacity() {
+        return xs.length;
+    }
+}
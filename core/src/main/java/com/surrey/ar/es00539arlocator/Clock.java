@@ -0,0 +1,9 @@
+package com.surrey.ar.es00539arlocator;
+
+/** Source of monotonic time, replaced by a fake one to test time dependent code. */
+public interface Clock {
+    Clock SYSTEM = System::nanoTime;
+
+    /** Nanoseconds from an arbitrary origin, never going backwards. */
+    long nanoTime();
+}
@@ -0,0 +1,212 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compiled floor plan, read in place from a memory mapped package written by
+ * {@link FloorPlanWriter}. Opening one only checks the header; markers, the occupancy grid and
+ * tiles are read from the mapping when asked for, so large plans open in microseconds.
+ *
+ * <p>The package is big endian, every offset is from its start:
+ * <pre>
+ * header      magic "ARFP", version, pixels per meter (float), width, height,
+ *             origin x, origin y, marker count, marker offset,
+ *             cell pixels, grid columns, grid rows, grid offset,
+ *             tile size, tile count, tile index offset
+ * markers     per marker: name length (short), UTF-8 name, x, y (floats)
+ * grid        one bit per cell, row by row, set for blocked cells
+ * tile index  per tile of {@link TilePyramid} order (level, row, column): offset, length
+ * tiles       encoded images, PNG from the compiler, length 0 for a missing tile
+ * </pre>
+ * Marker positions are plan pixels. Plans are at {@link MapProjection#PIXELS_PER_METER} and
+ * follow the axes of {@link MapProjection}, which are the AR world axes rather than the origin
+ * marker's, so opening a plan at another scale fails.
+ *
+ * <p>Read only, so safe to use from any thread.
+ */
+public class FloorPlan {
+    public static final int MAGIC = 0x41524650; // "ARFP"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 64;
+
+    private final ByteBuffer buffer;
+    private final float pixelsPerMeter;
+    private final int width;
+    private final int height;
+    private final int originX;
+    private final int originY;
+    private final int markerCount;
+    private final int markerOffset;
+    private final int cellPixels;
+    private final int gridColumns;
+    private final int gridRows;
+    private final int gridOffset;
+    private final int tileSize;
+    private final int tileCount;
+    private final int tileIndexOffset;
+    private final TilePyramid pyramid;
+    // First index entry of each pyramid level
+    private final int[] levelStarts;
+
+    private FloorPlan(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a floor plan");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported floor plan version " + version);
+        }
+        pixelsPerMeter = buffer.getFloat(8);
+        width = buffer.getInt(12);
+        height = buffer.getInt(16);
+        originX = buffer.getInt(20);
+        originY = buffer.getInt(24);
+        markerCount = buffer.getInt(28);
+        markerOffset = buffer.getInt(32);
+        cellPixels = buffer.getInt(36);
+        gridColumns = buffer.getInt(40);
+        gridRows = buffer.getInt(44);
+        gridOffset = buffer.getInt(48);
+        tileSize = buffer.getInt(52);
+        tileCount = buffer.getInt(56);
+        tileIndexOffset = buffer.getInt(60);
+        if (width <= 0 || height <= 0 || tileSize <= 0 || cellPixels <= 0) {
+            throw new IOException("Corrupt floor plan, bad size");
+        }
+        if (pixelsPerMeter != MapProjection.PIXELS_PER_METER) {
+            throw new IOException("Floor plan at " + pixelsPerMeter + " pixels per meter, expected "
+                    + MapProjection.PIXELS_PER_METER);
+        }
+
+        pyramid = new TilePyramid(width, height, tileSize);
+        levelStarts = new int[pyramid.getLevelCount() + 1];
+        for (int level = 0; level < pyramid.getLevelCount(); level++) {
+            levelStarts[level + 1] = levelStarts[level]
+                    + pyramid.getColumns(level) * pyramid.getRows(level);
+        }
+        if (tileCount != levelStarts[pyramid.getLevelCount()]) {
+            throw new IOException("Corrupt floor plan, " + tileCount + " tiles");
+        }
+        checkRange(gridOffset, ((long) gridColumns * gridRows + 7) / 8);
+        checkRange(tileIndexOffset, 8L * tileCount);
+    }
+
+    /** Maps a package file. The mapping stays valid after the file is closed. */
+    public static FloorPlan open(File file) throws IOException {
+        try (RandomAccessFile access = new RandomAccessFile(file, "r")) {
+            return map(access.getChannel(), 0, access.length());
+        }
+    }
+
+    /**
+     * Maps a package stored inside a larger file, such as an uncompressed resource inside an
+     * APK.
+     */
+    public static FloorPlan map(FileChannel channel, long offset, long length) throws IOException {
+        return new FloorPlan(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    /** Reads a package already in memory. */
+    public static FloorPlan wrap(ByteBuffer buffer) throws IOException {
+        return new FloorPlan(buffer.slice());
+    }
+
+    private void checkRange(long offset, long length) throws IOException {
+        if (offset < HEADER_SIZE || offset + length > buffer.capacity()) {
+            throw new IOException("Corrupt floor plan, section out of range");
+        }
+    }
+
+    public float getPixelsPerMeter() {
+        return pixelsPerMeter;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public int getMarkerCount() {
+        return markerCount;
+    }
+
+    /** Reads the markers, each with its name and plan position. */
+    public void forEachMarker(MarkerVisitor visitor) {
+        ByteBuffer markers = buffer.duplicate();
+        markers.position(markerOffset);
+        for (int i = 0; i < markerCount; i++) {
+            byte[] name = new byte[markers.getShort() & 0xffff];
+            markers.get(name);
+            visitor.visit(new String(name, StandardCharsets.UTF_8),
+                    markers.getFloat(), markers.getFloat());
+        }
+    }
+
+    public interface MarkerVisitor {
+        void visit(String name, float x, float y);
+    }
+
+    /** Expands the packed grid, cells are a hundredth of the plan pixels at the default size. */
+    public OccupancyGrid readGrid() {
+        OccupancyGrid grid = new OccupancyGrid(gridColumns, gridRows, cellPixels);
+        byte[] bits = new byte[(gridColumns * gridRows + 7) / 8];
+        ByteBuffer packed = buffer.duplicate();
+        packed.position(gridOffset);
+        packed.get(bits);
+        // Plans are mostly floor, only visit the set bits
+        for (int i = 0; i < bits.length; i++) {
+            int remaining = bits[i] & 0xff;
+            while (remaining != 0) {
+                int cell = 8 * i + Integer.numberOfTrailingZeros(remaining);
+                grid.setBlocked(cell % gridColumns, cell / gridColumns, true);
+                remaining &= remaining - 1;
+            }
+        }
+        return grid;
+    }
+
+    /** Pyramid the tiles are stored for. */
+    public TilePyramid getPyramid() {
+        return pyramid;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * The encoded tile, a read only view of the mapping that shares no state with other calls,
+     * or null when the package has no image for it.
+     */
+    public ByteBuffer getTile(int level, int column, int row) {
+        int entry = tileIndexOffset
+                + 8 * (levelStarts[level] + row * pyramid.getColumns(level) + column);
+        int offset = buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        if (length == 0) {
+            return null;
+        }
+        ByteBuffer tile = buffer.asReadOnlyBuffer();
+        tile.position(offset);
+        tile.limit(offset + length);
+        return tile.slice();
+    }
+}
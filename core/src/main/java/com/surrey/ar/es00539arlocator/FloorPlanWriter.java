@@ -0,0 +1,158 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a floor plan package read by {@link FloorPlan}. Tiles are requested one at a time and
+ * streamed to the file, so a plan never has to be encoded in memory as a whole. Not thread
+ * safe.
+ */
+public class FloorPlanWriter {
+    /** Encodes the plan area of one tile, sampled down to the tile size. */
+    public interface TileEncoder {
+        /** @param bounds left, top, right and bottom of the tile in plan pixels */
+        byte[] encode(int level, int column, int row, int[] bounds) throws IOException;
+    }
+
+    private final int width;
+    private final int height;
+    private final float pixelsPerMeter;
+    private int originX;
+    private int originY;
+    private final List<String> markerNames = new ArrayList<>();
+    private final List<float[]> markerPositions = new ArrayList<>();
+    private OccupancyGrid grid;
+
+    public FloorPlanWriter(int width, int height, float pixelsPerMeter) {
+        this.width = width;
+        this.height = height;
+        this.pixelsPerMeter = pixelsPerMeter;
+    }
+
+    public void setOrigin(int x, int y) {
+        originX = x;
+        originY = y;
+    }
+
+    /** Adds a marker at a plan pixel. */
+    public void addMarker(String name, float x, float y) {
+        markerNames.add(name);
+        markerPositions.add(new float[] {x, y});
+    }
+
+    public void setGrid(OccupancyGrid grid) {
+        this.grid = grid;
+    }
+
+    public void write(File file, int tileSize, TileEncoder encoder) throws IOException {
+        if (grid == null) {
+            throw new IllegalStateException("No occupancy grid");
+        }
+        TilePyramid pyramid = new TilePyramid(width, height, tileSize);
+        int tileCount = 0;
+        for (int level = 0; level < pyramid.getLevelCount(); level++) {
+            tileCount += pyramid.getColumns(level) * pyramid.getRows(level);
+        }
+
+        // Everything ahead of the tile data is small, lay it out in memory first
+        ByteBuffer markers = encodeMarkers();
+        ByteBuffer bits = encodeGrid();
+        int markerOffset = FloorPlan.HEADER_SIZE;
+        int gridOffset = markerOffset + markers.remaining();
+        int tileIndexOffset = gridOffset + bits.remaining();
+        ByteBuffer header = ByteBuffer.allocate(FloorPlan.HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(FloorPlan.MAGIC).putInt(FloorPlan.VERSION).putFloat(pixelsPerMeter)
+                .putInt(width).putInt(height).putInt(originX).putInt(originY)
+                .putInt(markerNames.size()).putInt(markerOffset)
+                .putInt(grid.getCellPixels()).putInt(grid.getColumns()).putInt(grid.getRows())
+                .putInt(gridOffset)
+                .putInt(tileSize).putInt(tileCount).putInt(tileIndexOffset);
+        header.flip();
+
+        // Write to a temporary file first so a failed build never leaves a broken package
+        File temporary = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile access = new RandomAccessFile(temporary, "rw")) {
+            FileChannel channel = access.getChannel();
+            channel.truncate(0);
+            writeFully(channel, header, 0);
+            writeFully(channel, markers, markerOffset);
+            writeFully(channel, bits, gridOffset);
+
+            ByteBuffer index = ByteBuffer.allocate(8 * tileCount).order(ByteOrder.BIG_ENDIAN);
+            long position = (long) tileIndexOffset + index.capacity();
+            int[] bounds = new int[4];
+            for (int level = 0; level < pyramid.getLevelCount(); level++) {
+                for (int row = 0; row < pyramid.getRows(level); row++) {
+                    for (int column = 0; column < pyramid.getColumns(level); column++) {
+                        pyramid.getTileBounds(level, column, row, bounds);
+                        byte[] tile = encoder.encode(level, column, row, bounds);
+                        int length = tile == null ? 0 : tile.length;
+                        if (position + length > Integer.MAX_VALUE) {
+                            throw new IOException("Floor plan larger than 2 GB");
+                        }
+                        index.putInt(length == 0 ? 0 : (int) position).putInt(length);
+                        if (length > 0) {
+                            writeFully(channel, ByteBuffer.wrap(tile), position);
+                            position += length;
+                        }
+                    }
+                }
+            }
+            index.flip();
+            writeFully(channel, index, tileIndexOffset);
+            channel.force(true);
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace " + file);
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot move " + temporary + " into place");
+        }
+    }
+
+    private ByteBuffer encodeMarkers() {
+        List<byte[]> names = new ArrayList<>(markerNames.size());
+        int size = 0;
+        for (String name : markerNames) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xffff) {
+                throw new IllegalArgumentException("Marker name too long: " + name);
+            }
+            names.add(bytes);
+            size += 2 + bytes.length + 8;
+        }
+        ByteBuffer markers = ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
+        for (int i = 0; i < names.size(); i++) {
+            float[] position = markerPositions.get(i);
+            markers.putShort((short) names.get(i).length).put(names.get(i))
+                    .putFloat(position[0]).putFloat(position[1]);
+        }
+        markers.flip();
+        return markers;
+    }
+
+    private ByteBuffer encodeGrid() {
+        byte[] bits = new byte[(grid.getCellCount() + 7) / 8];
+        for (int cell = 0; cell < grid.getCellCount(); cell++) {
+            if (grid.isBlocked(cell)) {
+                bits[cell >>> 3] |= 1 << (cell & 7);
+            }
+        }
+        return ByteBuffer.wrap(bits);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
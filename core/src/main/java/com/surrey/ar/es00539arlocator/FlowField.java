@@ -0,0 +1,149 @@
+package com.surrey.ar.es00539arlocator;
+
+/**
+ * Shortest walking directions towards one target cell of an {@link OccupancyGrid}. Solving is a
+ * breadth first search from the target over walkable cells. Each cell taken off the queue
+ * stores the neighbor, diagonals included, that is closest to the target, so looking up the way
+ * to go from a cell is then a single array read.
+ *
+ * <p>Diagonal steps are only taken when both cells beside them are walkable, so directions never
+ * cut the corner of a wall. Internally the grid is surrounded by a border of blocked cells,
+ * which saves the bounds checks. The arrays are reused when the field is solved again.
+ */
+public class FlowField {
+    /** Direction of cells that are the target, blocked or cannot reach it. */
+    public static final int NONE = -1;
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int BLOCKED = -1;
+
+    // The 8 neighbor directions as column and row steps, diagonal ones first
+    private static final int[] STEP_COLUMN = {1, -1, -1, 1, 1, 0, -1, 0};
+    private static final int[] STEP_ROW = {1, 1, -1, -1, 0, 1, 0, -1};
+    private static final float DIAGONAL = (float) Math.sqrt(0.5);
+    private static final float[] UNIT_COLUMN =
+            {DIAGONAL, -DIAGONAL, -DIAGONAL, DIAGONAL, 1f, 0f, -1f, 0f};
+    private static final float[] UNIT_ROW =
+            {DIAGONAL, DIAGONAL, -DIAGONAL, -DIAGONAL, 0f, 1f, 0f, -1f};
+
+    private OccupancyGrid grid;
+    private int target = -1;
+    private int stride;
+    private final int[] offset = new int[8];
+    private int[] distance = new int[0];
+    private byte[] direction = new byte[0];
+    private int[] queue = new int[0];
+
+    /** Solves the field for the target cell of the grid. The target may itself be blocked. */
+    public void solve(OccupancyGrid grid, int target) {
+        int columns = grid.getColumns();
+        int rows = grid.getRows();
+        int size = (columns + 2) * (rows + 2);
+        if (distance.length < size) {
+            distance = new int[size];
+            direction = new byte[size];
+        }
+        // Sized apart: a grid can have fewer padded cells than the last one but more cells
+        if (queue.length < grid.getCellCount()) {
+            queue = new int[grid.getCellCount()];
+        }
+        this.grid = grid;
+        this.target = target;
+        this.stride = columns + 2;
+        for (int d = 0; d < 8; d++) {
+            offset[d] = STEP_ROW[d] * stride + STEP_COLUMN[d];
+        }
+
+        for (int i = 0; i < stride; i++) {
+            distance[i] = BLOCKED;
+            distance[size - 1 - i] = BLOCKED;
+        }
+        for (int row = 0; row < rows; row++) {
+            int padded = (row + 1) * stride;
+            distance[padded] = BLOCKED;
+            distance[padded + stride - 1] = BLOCKED;
+            int cell = row * columns;
+            for (int column = 0; column < columns; column++) {
+                distance[padded + column + 1] = grid.isBlocked(cell + column) ? BLOCKED : UNREACHABLE;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            direction[i] = NONE;
+        }
+
+        int start = pad(target);
+        int head = 0;
+        int tail = 0;
+        distance[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            int current = distance[cell];
+            if (cell != start) {
+                direction[cell] = (byte) closest(cell, current);
+            }
+            for (int d = 4; d < 8; d++) {
+                int neighbor = cell + offset[d];
+                if (distance[neighbor] == UNREACHABLE) {
+                    distance[neighbor] = current + 1;
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+    }
+
+    // Every cell nearer the target than this one is final once this one is taken off the queue.
+    // A diagonal neighbor two steps closer is preferred, so open floor is crossed in straight
+    // diagonal lines instead of staircases.
+    private int closest(int cell, int current) {
+        // Blocked cells are -1, which a cell one step from the target would take for closer
+        for (int d = 0; current >= 2 && d < 4; d++) {
+            if (distance[cell + offset[d]] == current - 2
+                    && distance[cell + STEP_COLUMN[d]] >= 0
+                    && distance[cell + STEP_ROW[d] * stride] >= 0) {
+                return d;
+            }
+        }
+        for (int d = 4; d < 8; d++) {
+            int reach = distance[cell + offset[d]];
+            if (reach >= 0 && reach == current - 1) {
+                return d;
+            }
+        }
+        return NONE;
+    }
+
+    public OccupancyGrid getGrid() {
+        return grid;
+    }
+
+    /** The cell the field leads to, -1 before the first solve. */
+    public int getTarget() {
+        return target;
+    }
+
+    /** Steps from the cell to the target, {@link #UNREACHABLE} if there is no way. */
+    public int getDistance(int cell) {
+        int reach = distance[pad(cell)];
+        return reach < 0 ? UNREACHABLE : reach;
+    }
+
+    /** Direction index of the next step from the cell, or {@link #NONE}. */
+    public int getDirection(int cell) {
+        return direction[pad(cell)];
+    }
+
+    /** Unit step of a direction index along the grid columns, that is the plan x axis. */
+    public static float getColumnStep(int direction) {
+        return UNIT_COLUMN[direction];
+    }
+
+    /** Unit step of a direction index along the grid rows, that is the plan y axis. */
+    public static float getRowStep(int direction) {
+        return UNIT_ROW[direction];
+    }
+
+    private int pad(int cell) {
+        int columns = grid.getColumns();
+        return (cell / columns + 1) * stride + cell % columns + 1;
+    }
+}
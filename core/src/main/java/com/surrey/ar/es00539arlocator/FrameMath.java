@@ -0,0 +1,110 @@
+package com.surrey.ar.es00539arlocator;
+
+/**
+ * Primitive float versions of the per-frame vector math. Every method writes into a caller-owned
+ * buffer and allocates nothing, so it can run on every frame without feeding the GC.
+ *
+ * <p>Vectors are {@code float[3]} as (x, y, z) and quaternions are {@code float[4]} as
+ * (x, y, z, w), matching the field order of Sceneform's Vector3 and Quaternion.
+ */
+public final class FrameMath {
+    private static final float EPSILON = 1e-6f;
+
+    private FrameMath() {
+    }
+
+    /**
+     * The offset of the position from the origin, projected on the world right (+x), up (+y) and
+     * forward (-z) axes.
+     */
+    public static void relativePosition(float ox, float oy, float oz,
+                                        float px, float py, float pz, float[] out) {
+        // right = (1, 0, 0), up = (0, 1, 0), forward = (0, 0, -1)
+        out[0] = px - ox;
+        out[1] = py - oy;
+        out[2] = -(pz - oz);
+    }
+
+    /** Squared distance from (px, pz) to the segment from (ax, az) to (bx, bz). */
+    public static float segmentDistanceSquared(float ax, float az, float bx, float bz,
+                                               float px, float pz) {
+        float dx = bx - ax;
+        float dz = bz - az;
+        float length = dx * dx + dz * dz;
+        float t = length > EPSILON ? ((px - ax) * dx + (pz - az) * dz) / length : 0f;
+        t = Math.max(0f, Math.min(1f, t));
+        float ox = px - (ax + t * dx);
+        float oz = pz - (az + t * dz);
+        return ox * ox + oz * oz;
+    }
+
+    /**
+     * Rotation that turns the local +z axis towards {@code (fx, fy, fz)} while keeping the local
+     * +y axis as close as possible to {@code (ux, uy, uz)}, like Quaternion.lookRotation.
+     * Leaves {@code out} untouched and returns false when the direction is degenerate.
+     */
+    public static boolean lookRotation(float fx, float fy, float fz,
+                                       float ux, float uy, float uz, float[] out) {
+        float length = (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        if (length < EPSILON) {
+            return false;
+        }
+        // z axis
+        float zx = fx / length;
+        float zy = fy / length;
+        float zz = fz / length;
+
+        // x axis = up cross z
+        float xx = uy * zz - uz * zy;
+        float xy = uz * zx - ux * zz;
+        float xz = ux * zy - uy * zx;
+        length = (float) Math.sqrt(xx * xx + xy * xy + xz * xz);
+        if (length < EPSILON) {
+            return false;
+        }
+        xx /= length;
+        xy /= length;
+        xz /= length;
+
+        // y axis = z cross x
+        float yx = zy * xz - zz * xy;
+        float yy = zz * xx - zx * xz;
+        float yz = zx * xy - zy * xx;
+
+        fromAxes(xx, xy, xz, yx, yy, yz, zx, zy, zz, out);
+        return true;
+    }
+
+    // Quaternion of the rotation matrix whose columns are the given x, y and z axes
+    private static void fromAxes(float m00, float m10, float m20,
+                                 float m01, float m11, float m21,
+                                 float m02, float m12, float m22, float[] out) {
+        float trace = m00 + m11 + m22;
+        float s;
+        if (trace > 0f) {
+            s = (float) Math.sqrt(trace + 1f) * 2f;
+            out[0] = (m21 - m12) / s;
+            out[1] = (m02 - m20) / s;
+            out[2] = (m10 - m01) / s;
+            out[3] = 0.25f * s;
+        } else if (m00 > m11 && m00 > m22) {
+            s = (float) Math.sqrt(1f + m00 - m11 - m22) * 2f;
+            out[0] = 0.25f * s;
+            out[1] = (m01 + m10) / s;
+            out[2] = (m02 + m20) / s;
+            out[3] = (m21 - m12) / s;
+        } else if (m11 > m22) {
+            s = (float) Math.sqrt(1f + m11 - m00 - m22) * 2f;
+            out[0] = (m01 + m10) / s;
+            out[1] = 0.25f * s;
+            out[2] = (m12 + m21) / s;
+            out[3] = (m02 - m20) / s;
+        } else {
+            s = (float) Math.sqrt(1f + m22 - m00 - m11) * 2f;
+            out[0] = (m02 + m20) / s;
+            out[1] = (m12 + m21) / s;
+            out[2] = 0.25f * s;
+            out[3] = (m10 - m01) / s;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Per-stage frame timings, one {@link LatencyHistogram} per stage. Timing a stage is a pair of
+ * {@link System#nanoTime} reads and a histogram update, with no allocation.
+ *
+ * <pre>
+ * long start = profiler.start();
+ * ...
+ * profiler.stop(FrameProfiler.STAGE_GUIDANCE, start);
+ * </pre>
+ */
+public class FrameProfiler {
+    public static final int STAGE_FRAME = 0;
+    public static final int STAGE_FRAME_INTERVAL = 1;
+    public static final int STAGE_GUIDANCE = 2;
+    public static final int STAGE_MAP = 3;
+    public static final int STAGE_IMAGES = 4;
+    private static final String[] STAGE_NAMES = {
+            "frame", "frame interval", "guidance", "map projection", "augmented images"
+    };
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_NAMES.length];
+    private volatile boolean enabled = true;
+
+    public FrameProfiler() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Returns the start time to pass to {@link #stop}. */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void stop(int stage, long start) {
+        if (enabled) {
+            stages[stage].record(System.nanoTime() - start);
+        }
+    }
+
+    /** Records a duration measured elsewhere, such as the time between two frames. */
+    public void record(int stage, long nanos) {
+        if (enabled) {
+            stages[stage].record(nanos);
+        }
+    }
+
+    public LatencyHistogram getStage(int stage) {
+        return stages[stage];
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    public static int getStageCount() {
+        return STAGE_NAMES.length;
+    }
+
+    public void reset() {
+        for (LatencyHistogram stage : stages) {
+            stage.reset();
+        }
+    }
+
+    /** Writes one line per stage with its count, p50, p95, p99 and max in milliseconds. */
+    public void dump(Appendable out) throws IOException {
+        out.append(String.format(Locale.US, "%-18s %8s %8s %8s %8s %8s%n",
+                "stage", "count", "p50", "p95", "p99", "max"));
+        for (int i = 0; i < stages.length; i++) {
+            LatencyHistogram stage = stages[i];
+            out.append(String.format(Locale.US, "%-18s %8d %8.3f %8.3f %8.3f %8.3f%n",
+                    STAGE_NAMES[i], stage.getCount(),
+                    millis(stage.getPercentile(50)), millis(stage.getPercentile(95)),
+                    millis(stage.getPercentile(99)), millis(stage.getMax())));
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,168 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs the per-frame work within a time budget. Tasks run in priority order, each no more often
+ * than its maximum rate. Once the frame has used up its budget, tasks below
+ * {@link #PRIORITY_CRITICAL} are deferred to the next frame, where they run whatever their
+ * maximum rate. A task is deferred at most {@link #DEFAULT_MAX_DEFERRED_FRAMES} frames in a row,
+ * so busy frames cannot starve it.
+ *
+ * <p>Running a frame does not allocate. Not thread safe.
+ */
+public class FrameScheduler {
+    /** Runs every frame whatever the budget. */
+    public static final int PRIORITY_CRITICAL = 0;
+    public static final int PRIORITY_HIGH = 1;
+    public static final int PRIORITY_NORMAL = 2;
+
+    public static final long DEFAULT_BUDGET_NANOS = 5_000_000L;
+    public static final int DEFAULT_MAX_DEFERRED_FRAMES = 3;
+
+    /** Work scheduled on every frame. */
+    public static final class Task {
+        private final String name;
+        private final int priority;
+        private final Runnable action;
+        private long minIntervalNanos;
+        private long lastRunNanos;
+        private boolean ran;
+        private int deferredFrames;
+        private boolean wasDeferred;
+        private long runs;
+        private long skips;
+        private long deferrals;
+
+        Task(String name, int priority, Runnable action) {
+            this.name = name;
+            this.priority = priority;
+            this.action = action;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        /** @param maxRate maximum runs per second, zero or less to run on every frame */
+        public void setMaxRate(float maxRate) {
+            minIntervalNanos = maxRate > 0f ? (long) Math.ceil(1e9 / maxRate) : 0L;
+        }
+
+        /** True while the task runs because it was deferred by an earlier frame. */
+        public boolean wasDeferred() {
+            return wasDeferred;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        /** Frames where the task was not due because of its maximum rate. */
+        public long getSkips() {
+            return skips;
+        }
+
+        /** Frames where the task was due but the budget was used up. */
+        public long getDeferrals() {
+            return deferrals;
+        }
+    }
+
+    private final Clock clock;
+    private long budgetNanos;
+    private int maxDeferredFrames = DEFAULT_MAX_DEFERRED_FRAMES;
+    private final List<Task> tasks = new ArrayList<>();
+    private long frames;
+    private long overBudgetFrames;
+
+    public FrameScheduler(Clock clock, long budgetNanos) {
+        this.clock = clock;
+        this.budgetNanos = budgetNanos;
+    }
+
+    public void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    public void setMaxDeferredFrames(int maxDeferredFrames) {
+        this.maxDeferredFrames = maxDeferredFrames;
+    }
+
+    /**
+     * Adds a task that runs on every frame, see {@link Task#setMaxRate} to run it less often.
+     * Tasks of the same priority run in the order they were added.
+     */
+    public Task add(String name, int priority, Runnable action) {
+        Task task = new Task(name, priority, action);
+        int index = tasks.size();
+        while (index > 0 && tasks.get(index - 1).priority > priority) {
+            index--;
+        }
+        tasks.add(index, task);
+        return task;
+    }
+
+    /** Runs the tasks that are due for this frame. */
+    public void runFrame() {
+        long start = clock.nanoTime();
+        boolean overBudget = false;
+        frames++;
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            boolean deferred = task.deferredFrames > 0;
+            long now = clock.nanoTime();
+            // Deferred tasks are due whatever their rate
+            if (!deferred && task.ran && now - task.lastRunNanos < task.minIntervalNanos) {
+                task.skips++;
+                continue;
+            }
+            if (task.priority != PRIORITY_CRITICAL && now - start >= budgetNanos
+                    && task.deferredFrames < maxDeferredFrames) {
+                task.deferredFrames++;
+                task.deferrals++;
+                overBudget = true;
+                continue;
+            }
+            task.wasDeferred = deferred;
+            task.action.run();
+            task.wasDeferred = false;
+            task.deferredFrames = 0;
+            task.lastRunNanos = now;
+            task.ran = true;
+            task.runs++;
+        }
+        if (overBudget) {
+            overBudgetFrames++;
+        }
+    }
+
+    public List<Task> getTasks() {
+        return tasks;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /** Frames that deferred at least one task. */
+    public long getOverBudgetFrames() {
+        return overBudgetFrames;
+    }
+
+    /** Writes one line per task with its runs, skips and deferrals. */
+    public void dump(Appendable out) throws IOException {
+        out.append(String.format(Locale.US, "%d frames, %d over budget%n", frames, overBudgetFrames));
+        for (Task task : tasks) {
+            out.append(String.format(Locale.US, "%-18s %8d runs %8d skipped %8d deferred%n",
+                    task.name, task.runs, task.skips, task.deferrals));
+        }
+    }
+}
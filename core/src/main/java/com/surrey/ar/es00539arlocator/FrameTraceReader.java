@@ -0,0 +1,115 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads a trace written by {@link FrameTraceWriter}. A trace cut short, for instance because
+ * the app was killed while recording, ends at its last complete frame. Not thread safe.
+ */
+public class FrameTraceReader implements Closeable {
+    private final DataInputStream in;
+    private final LocationRegistry locations = new LocationRegistry();
+    private String[] names = new String[16];
+    private final float[] pose = new float[TraceFrame.POSE_SIZE];
+
+    public FrameTraceReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        if (this.in.readInt() != FrameTraceWriter.MAGIC) {
+            throw new IOException("Not a frame trace");
+        }
+        int version = this.in.readInt();
+        if (version != FrameTraceWriter.VERSION) {
+            throw new IOException("Unsupported frame trace version " + version);
+        }
+        int locationCount = this.in.readInt();
+        for (int i = 0; i < locationCount; i++) {
+            String name = this.in.readUTF();
+            locations.addLocation(new Location(name, this.in.readUTF(),
+                    this.in.readInt(), this.in.readInt()));
+            int markerCount = this.in.readInt();
+            for (int j = 0; j < markerCount; j++) {
+                String marker = this.in.readUTF();
+                String objectType = this.in.readUTF();
+                if (objectType.isEmpty()) {
+                    locations.addOriginMarker(marker, name);
+                } else {
+                    locations.addObjectMarker(marker, name, objectType);
+                }
+            }
+        }
+    }
+
+    /** The locations the trace was recorded with. */
+    public LocationRegistry getLocations() {
+        return locations;
+    }
+
+    /** Reads the next frame into the given one, returns false at the end of the trace. */
+    public boolean read(TraceFrame frame) throws IOException {
+        frame.clear();
+        try {
+            while (true) {
+                int tag = in.read();
+                if (tag == -1) {
+                    return false;
+                }
+                if (tag == FrameTraceWriter.TAG_NAME) {
+                    int id = in.readUnsignedShort();
+                    if (id >= names.length) {
+                        names = Arrays.copyOf(names, Math.max(2 * names.length, id + 1));
+                    }
+                    names[id] = in.readUTF();
+                } else if (tag == FrameTraceWriter.TAG_FRAME) {
+                    readFrame(frame);
+                    return true;
+                } else {
+                    throw new IOException("Corrupt frame trace, unknown record " + tag);
+                }
+            }
+        } catch (EOFException e) {
+            // Torn last frame
+            frame.clear();
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readFrame(TraceFrame frame) throws IOException {
+        long timestamp = in.readLong();
+        readPose();
+        frame.setCamera(timestamp, pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6]);
+        int images = in.readUnsignedShort();
+        int taps = in.readUnsignedShort();
+        for (int i = 0; i < images; i++) {
+            int id = in.readUnsignedShort();
+            if (id >= names.length || names[id] == null) {
+                throw new IOException("Corrupt frame trace, undefined image " + id);
+            }
+            int state = in.readByte();
+            int method = in.readByte();
+            readPose();
+            frame.addImage(names[id], state, method,
+                    pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6]);
+        }
+        for (int i = 0; i < taps; i++) {
+            readPose();
+            frame.addTap(pose[0], pose[1], pose[2], pose[3], pose[4], pose[5], pose[6]);
+        }
+    }
+
+    private void readPose() throws IOException {
+        for (int i = 0; i < TraceFrame.POSE_SIZE; i++) {
+            pose[i] = in.readFloat();
+        }
+    }
+}
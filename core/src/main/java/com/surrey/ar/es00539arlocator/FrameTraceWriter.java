@@ -0,0 +1,101 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records {@link TraceFrame}s to a compact binary trace, read back by {@link FrameTraceReader}.
+ *
+ * <p>The trace starts with a header holding the locations and their markers, so that it can be
+ * replayed without the app resources. Then come records, each starting with a tag byte:
+ * <ul>
+ * <li>{@link #TAG_NAME}: a short id and the image name it stands for, written once per name
+ * before the first frame that uses it.
+ * <li>{@link #TAG_FRAME}: the timestamp, the camera pose, image and tap counts, then per image
+ * its name id, tracking state, tracking method and center pose, then per tap its hit pose.
+ * </ul>
+ * A frame is 41 bytes plus 32 per image and 28 per tap. Writes are blocking I/O, see
+ * {@link TraceRecorder} to write from a background thread. Not thread safe.
+ */
+public class FrameTraceWriter implements Closeable {
+    public static final int MAGIC = 0x41524654; // "ARFT"
+    public static final int VERSION = 1;
+    static final int TAG_NAME = 1;
+    static final int TAG_FRAME = 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private int frames;
+
+    public FrameTraceWriter(OutputStream out, LocationRegistry locations) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeInt(locations.getLocations().size());
+        for (Location location : locations.getLocations()) {
+            this.out.writeUTF(location.getName());
+            this.out.writeUTF(location.getMap());
+            this.out.writeInt(location.getOriginX());
+            this.out.writeInt(location.getOriginY());
+            this.out.writeInt(locations.getMarkers(location).size());
+            for (LocationRegistry.Marker marker : locations.getMarkers(location)) {
+                this.out.writeUTF(marker.getName());
+                // Origin markers have no object type
+                this.out.writeUTF(marker.isOrigin() ? "" : marker.getObjectType());
+            }
+        }
+    }
+
+    public void write(TraceFrame frame) throws IOException {
+        int images = frame.getImageCount();
+        for (int i = 0; i < images; i++) {
+            String name = frame.getImageName(i);
+            if (!nameIds.containsKey(name)) {
+                int id = nameIds.size();
+                nameIds.put(name, id);
+                out.writeByte(TAG_NAME);
+                out.writeShort(id);
+                out.writeUTF(name);
+            }
+        }
+
+        out.writeByte(TAG_FRAME);
+        out.writeLong(frame.getTimestampNanos());
+        writePose(frame.getCamera(), 0);
+        out.writeShort(images);
+        out.writeShort(frame.getTapCount());
+        float[] imagePoses = frame.getImagePoses();
+        for (int i = 0; i < images; i++) {
+            out.writeShort(nameIds.get(frame.getImageName(i)));
+            out.writeByte(frame.getImageTrackingState(i));
+            out.writeByte(frame.getImageTrackingMethod(i));
+            writePose(imagePoses, i * TraceFrame.POSE_SIZE);
+        }
+        float[] tapPoses = frame.getTapPoses();
+        for (int i = 0; i < frame.getTapCount(); i++) {
+            writePose(tapPoses, i * TraceFrame.POSE_SIZE);
+        }
+        frames++;
+    }
+
+    public int getFrameCount() {
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writePose(float[] poses, int offset) throws IOException {
+        for (int i = 0; i < TraceFrame.POSE_SIZE; i++) {
+            out.writeFloat(poses[offset + i]);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.surrey.ar.es00539arlocator;
+
+/** A room or building with its own floor plan and origin marker. */
+public class Location {
+    private final String name;
+    private final String map;
+    private final int originX;
+    private final int originY;
+    private final FloorPlan plan;
+
+    /**
+     * @param map name of the floor plan drawable
+     * @param originX map pixel of the origin marker
+     * @param originY map pixel of the origin marker
+     */
+    public Location(String name, String map, int originX, int originY) {
+        this.name = name;
+        this.map = map;
+        this.originX = originX;
+        this.originY = originY;
+        this.plan = null;
+    }
+
+    /**
+     * A location drawn from a compiled floor plan, which places the origin marker.
+     *
+     * @param map name of the floor plan package
+     */
+    public Location(String name, String map, FloorPlan plan) {
+        this.name = name;
+        this.map = map;
+        this.originX = plan.getOriginX();
+        this.originY = plan.getOriginY();
+        this.plan = plan;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMap() {
+        return map;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    /** The compiled floor plan, null when the map is a plain drawable. */
+    public FloorPlan getPlan() {
+        return plan;
+    }
+}
@@ -0,0 +1,155 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps augmented image marker names to the location they belong to. A marker either marks the
+ * origin of its location's map, or stands for an object of a given type. Lookups are a single
+ * hash map access, whatever the number of markers.
+ *
+ * <p>Locations that can be walked between are neighbors. Only the markers of the current
+ * location and its neighbors need to be detected, see {@link #getDetectableMarkers}.
+ */
+public class LocationRegistry {
+    /** What a detected marker means. */
+    public static class Marker {
+        private final String name;
+        private final Location location;
+        private final String objectType;
+
+        Marker(String name, Location location, String objectType) {
+            this.name = name;
+            this.location = location;
+            this.objectType = objectType;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Location getLocation() {
+            return location;
+        }
+
+        /** True for the marker the location's map origin is measured from. */
+        public boolean isOrigin() {
+            return objectType == null;
+        }
+
+        /** Type of object the marker stands for, null for origin markers. */
+        public String getObjectType() {
+            return objectType;
+        }
+    }
+
+    private final Map<String, Location> locations = new LinkedHashMap<>();
+    private final Map<String, Marker> markers = new HashMap<>();
+    private final Map<Location, List<Marker>> markersByLocation = new HashMap<>();
+    private final Map<Location, List<Location>> neighbors = new HashMap<>();
+    private final List<Marker> originMarkers = new ArrayList<>();
+
+    public void addLocation(Location location) {
+        if (locations.put(location.getName(), location) != null) {
+            throw new IllegalArgumentException("Duplicate location " + location.getName());
+        }
+        markersByLocation.put(location, new ArrayList<>());
+        neighbors.put(location, new ArrayList<>());
+    }
+
+    /** Marks two locations as reachable from each other. */
+    public void addNeighbors(String first, String second) {
+        Location a = requireLocation(first);
+        Location b = requireLocation(second);
+        if (a == b) {
+            throw new IllegalArgumentException("Location " + first + " cannot neighbor itself");
+        }
+        if (!neighbors.get(a).contains(b)) {
+            neighbors.get(a).add(b);
+            neighbors.get(b).add(a);
+        }
+    }
+
+    public void addOriginMarker(String marker, String location) {
+        addMarker(marker, location, null);
+    }
+
+    public void addObjectMarker(String marker, String location, String objectType) {
+        if (objectType == null) {
+            throw new IllegalArgumentException("Object marker " + marker + " needs a type");
+        }
+        addMarker(marker, location, objectType);
+    }
+
+    private void addMarker(String name, String locationName, String objectType) {
+        Location location = requireLocation(locationName);
+        Marker marker = new Marker(name, location, objectType);
+        if (markers.put(name, marker) != null) {
+            throw new IllegalArgumentException("Duplicate marker " + name);
+        }
+        markersByLocation.get(location).add(marker);
+        if (marker.isOrigin()) {
+            originMarkers.add(marker);
+        }
+    }
+
+    private Location requireLocation(String name) {
+        Location location = locations.get(name);
+        if (location == null) {
+            throw new IllegalArgumentException("Unknown location " + name);
+        }
+        return location;
+    }
+
+    /** Returns what the marker means, or null if it is not registered. */
+    public Marker lookup(String marker) {
+        return markers.get(marker);
+    }
+
+    public Location getLocation(String name) {
+        return locations.get(name);
+    }
+
+    public Collection<Location> getLocations() {
+        return Collections.unmodifiableCollection(locations.values());
+    }
+
+    public List<Marker> getMarkers(Location location) {
+        List<Marker> list = markersByLocation.get(location);
+        return list == null ? Collections.<Marker>emptyList() : Collections.unmodifiableList(list);
+    }
+
+    public List<Location> getNeighbors(Location location) {
+        List<Location> list = neighbors.get(location);
+        return list == null ? Collections.<Location>emptyList() : Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Markers worth detecting at a location: its own and those of its neighbors. While the
+     * location is unknown (null), the origin markers of every location, so any of them can be
+     * found.
+     */
+    public List<Marker> getDetectableMarkers(Location location) {
+        if (location == null) {
+            return Collections.unmodifiableList(originMarkers);
+        }
+        List<Marker> detectable = new ArrayList<>(getMarkers(location));
+        for (Location neighbor : getNeighbors(location)) {
+            detectable.addAll(getMarkers(neighbor));
+        }
+        return detectable;
+    }
+
+    public Collection<Marker> getMarkers() {
+        return Collections.unmodifiableCollection(markers.values());
+    }
+
+    public int getMarkerCount() {
+        return markers.size();
+    }
+}
@@ -0,0 +1,319 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The frame update logic of the locator without ARCore or Sceneform: where the camera is
+ * relative to the earth marker, which object the guidance points at, which marker sightings
+ * need a new anchor, and what they do to the object registry and the current location.
+ *
+ * <p>The activity calls the individual steps and creates the anchors and nodes in between.
+ * {@link #update(TraceFrame)} runs the same steps for a recorded frame, so a trace can be
+ * replayed on a plain JVM. Not thread safe.
+ */
+public class LocatorEngine {
+    private final LocationRegistry locations;
+    private final ObjectRegistry objects;
+    private final AnchorUpdatePolicy anchorPolicy;
+    private final Map<String, TrackedObject> markerObjects = new HashMap<>();
+    private Location location;
+    private String currentType;
+
+    // Earth marker world position, the origin of every relative position
+    private final float[] earthOrigin = new float[3];
+    private final float[] cameraRelative = new float[3];
+    private final float[] placeRelative = new float[3];
+    private final float[] walk = new float[2];
+    private NavigationGuide navigation;
+    private final BreadcrumbTrail trail = new BreadcrumbTrail();
+
+    // Output of update(TraceFrame)
+    private final float[] anchorPose = new float[TraceFrame.POSE_SIZE];
+    private final float[] guidance = new float[4];
+    private boolean hasGuidance;
+    // The bounds for the query, and the same transform for whole batches
+    private MapProjection map;
+    private final BatchProjector projector = new BatchProjector();
+    private int mapWidth;
+    private int mapHeight;
+    private final List<TrackedObject> visibleObjects = new ArrayList<>();
+    private float[] mapXs = new float[0];
+    private float[] mapZs = new float[0];
+    private int[] mapPixelsX = new int[0];
+    private int[] mapPixelsY = new int[0];
+    private int mapPixelCount;
+
+    public LocatorEngine(LocationRegistry locations, ObjectRegistry objects,
+                         AnchorUpdatePolicy anchorPolicy) {
+        this.locations = locations;
+        this.objects = objects;
+        this.anchorPolicy = anchorPolicy;
+    }
+
+    public LocationRegistry getLocations() {
+        return locations;
+    }
+
+    public ObjectRegistry getObjects() {
+        return objects;
+    }
+
+    public AnchorUpdatePolicy getAnchorPolicy() {
+        return anchorPolicy;
+    }
+
+    /** Location of the last origin marker seen, null until one has been seen. */
+    public Location getLocation() {
+        return location;
+    }
+
+    /** Type of object the guidance points at. */
+    public void setCurrentType(String type) {
+        this.currentType = type;
+    }
+
+    public String getCurrentType() {
+        return currentType;
+    }
+
+    /** Earth marker world position, read only. */
+    public float[] getEarthOrigin() {
+        return earthOrigin;
+    }
+
+    /** Camera position relative to the earth marker, read only. */
+    public float[] getCameraRelative() {
+        return cameraRelative;
+    }
+
+    public void updateCamera(float tx, float ty, float tz) {
+        FrameMath.relativePosition(earthOrigin[0], earthOrigin[1], earthOrigin[2],
+                tx, ty, tz, cameraRelative);
+        if (location != null) {
+            trail.add(cameraRelative[0], cameraRelative[2]);
+        }
+    }
+
+    /** Where the camera walked in the current location, recorded by {@link #updateCamera}. */
+    public BreadcrumbTrail getTrail() {
+        return trail;
+    }
+
+    /**
+     * Walking directions around the walls of the current location's plan, or null to always
+     * point straight at the target.
+     */
+    public void setNavigation(NavigationGuide navigation) {
+        this.navigation = navigation;
+    }
+
+    public NavigationGuide getNavigation() {
+        return navigation;
+    }
+
+    /** Nearest object of the current type to the camera, or null. */
+    public TrackedObject getGuidanceTarget() {
+        return objects.nearest(cameraRelative[0], cameraRelative[2], currentType);
+    }
+
+    /**
+     * Writes the world rotation of a guidance arrow at the given world position towards the
+     * target, along the walking directions when there are some. Returns false, leaving out
+     * untouched, when the arrow is on the target.
+     */
+    public boolean aim(TrackedObject target, float px, float py, float pz, float[] out) {
+        if (navigation != null && navigation.direction(target,
+                px - earthOrigin[0], -(pz - earthOrigin[2]), walk)) {
+            // Level with the floor, walk is in relative axes where z points forward
+            return FrameMath.lookRotation(-walk[0], 0f, walk[1], 0f, 1f, 0f, out);
+        }
+        float targetX = earthOrigin[0] + target.getX();
+        float targetY = earthOrigin[1] + target.getY();
+        float targetZ = earthOrigin[2] - target.getZ();
+        return FrameMath.lookRotation(px - targetX, py - targetY, pz - targetZ, 0f, 1f, 0f, out);
+    }
+
+    /**
+     * Feeds an augmented image update. Returns the marker when it needs a new anchor, with the
+     * smoothed pose to anchor it at written to anchorPose, or null when the image is not a
+     * known marker, is not fully tracked or has not moved enough. The origin marker of another
+     * location than the current one is always returned, so that the location switches.
+     */
+    public LocationRegistry.Marker updateImage(String name, int trackingState, int trackingMethod,
+                                               float tx, float ty, float tz,
+                                               float qx, float qy, float qz, float qw,
+                                               float[] anchorPose) {
+        if (trackingState != TraceFrame.TRACKING || trackingMethod != TraceFrame.FULL_TRACKING) {
+            return null;
+        }
+        LocationRegistry.Marker marker = locations.lookup(name);
+        if (marker == null) {
+            return null;
+        }
+        if (marker.isOrigin() && marker.getLocation() != location) {
+            // Its first pose anchors, however little it moved since it was last seen
+            anchorPolicy.reset(name);
+        }
+        if (!anchorPolicy.update(name, tx, ty, tz, qx, qy, qz, qw)) {
+            // Jitter, keep the current anchor
+            return null;
+        }
+        anchorPolicy.getAnchorPose(name, anchorPose);
+        return marker;
+    }
+
+    /** Object standing for an object marker, null until the marker has been placed. */
+    public TrackedObject getMarkerObject(String marker) {
+        return markerObjects.get(marker);
+    }
+
+    public void putMarkerObject(String marker, TrackedObject object) {
+        markerObjects.put(marker, object);
+    }
+
+    /** Forgets the objects of every object marker, once they left the registry. */
+    public void clearMarkerObjects() {
+        markerObjects.clear();
+    }
+
+    /**
+     * Places a new object, or moves an existing one when existing is still registered, at a
+     * world position, and returns it.
+     */
+    public TrackedObject place(String type, float wx, float wy, float wz, TrackedObject existing) {
+        FrameMath.relativePosition(earthOrigin[0], earthOrigin[1], earthOrigin[2],
+                wx, wy, wz, placeRelative);
+        if (existing != null
+                && objects.move(existing, placeRelative[0], placeRelative[1], placeRelative[2])) {
+            return existing;
+        }
+        return objects.add(type, placeRelative[0], placeRelative[1], placeRelative[2]);
+    }
+
+    /**
+     * Moves the earth origin to an anchored origin marker. Returns true when the marker belongs
+     * to another location than the current one, which it then becomes.
+     */
+    public boolean moveOrigin(LocationRegistry.Marker marker, float wx, float wy, float wz) {
+        earthOrigin[0] = wx;
+        earthOrigin[1] = wy;
+        earthOrigin[2] = wz;
+        // The registry works in relative axes, where z points forward
+        objects.setOrigin(wx, wy, -wz);
+        if (marker.getLocation() == location) {
+            return false;
+        }
+        location = marker.getLocation();
+        trail.clear();
+        // The markers of the previous location are gone, the others of this location anchor
+        // afresh once they are seen
+        anchorPolicy.resetOthers(marker.getName());
+        if (map != null) {
+            map.set(location.getOriginX(), location.getOriginY(), mapWidth, mapHeight);
+            projector.set(location.getOriginX(), location.getOriginY(), mapWidth, mapHeight);
+        }
+        return true;
+    }
+
+    /** Also projects the objects on a plan of the given size in {@link #update}. */
+    public void setMapSize(int width, int height) {
+        this.map = new MapProjection();
+        this.mapWidth = width;
+        this.mapHeight = height;
+        if (location != null) {
+            map.set(location.getOriginX(), location.getOriginY(), width, height);
+            projector.set(location.getOriginX(), location.getOriginY(), width, height);
+        }
+    }
+
+    /**
+     * Runs a recorded frame the way the activity runs a live one: taps made since the previous
+     * frame, then the camera and guidance, the map once a location is known, and the images.
+     * The guidance arrow is taken to be at the camera.
+     */
+    public void update(TraceFrame frame) {
+        float[] taps = frame.getTapPoses();
+        for (int i = 0; i < frame.getTapCount(); i++) {
+            int offset = i * TraceFrame.POSE_SIZE;
+            place(currentType, taps[offset], taps[offset + 1], taps[offset + 2], null);
+        }
+
+        float[] camera = frame.getCamera();
+        updateCamera(camera[0], camera[1], camera[2]);
+        TrackedObject target = getGuidanceTarget();
+        hasGuidance = target != null && aim(target, camera[0], camera[1], camera[2], guidance);
+
+        mapPixelCount = 0;
+        if (map != null && location != null) {
+            projectMap();
+        }
+
+        float[] poses = frame.getImagePoses();
+        for (int i = 0; i < frame.getImageCount(); i++) {
+            int offset = i * TraceFrame.POSE_SIZE;
+            String name = frame.getImageName(i);
+            LocationRegistry.Marker marker = updateImage(name,
+                    frame.getImageTrackingState(i), frame.getImageTrackingMethod(i),
+                    poses[offset], poses[offset + 1], poses[offset + 2], poses[offset + 3],
+                    poses[offset + 4], poses[offset + 5], poses[offset + 6], anchorPose);
+            if (marker == null) {
+                continue;
+            }
+            if (marker.isOrigin()) {
+                moveOrigin(marker, anchorPose[0], anchorPose[1], anchorPose[2]);
+            } else {
+                TrackedObject object = getMarkerObject(name);
+                object = place(marker.getObjectType(),
+                        anchorPose[0], anchorPose[1], anchorPose[2], object);
+                putMarkerObject(name, object);
+            }
+        }
+    }
+
+    /** Whether the last {@link #update} found something to point at. */
+    public boolean hasGuidance() {
+        return hasGuidance;
+    }
+
+    /** Guidance rotation of the last {@link #update}, read only. */
+    public float[] getGuidance() {
+        return guidance;
+    }
+
+    /** Number of objects projected on the map by the last {@link #update}. */
+    public int getMapPixelCount() {
+        return mapPixelCount;
+    }
+
+    /** Map pixel x of the objects projected by the last {@link #update}, read only. */
+    public int[] getMapPixelsX() {
+        return mapPixelsX;
+    }
+
+    /** Map pixel y of the objects projected by the last {@link #update}, read only. */
+    public int[] getMapPixelsY() {
+        return mapPixelsY;
+    }
+
+    private void projectMap() {
+        visibleObjects.clear();
+        int count = objects.withinBounds(map.getMinX(), map.getMinZ(),
+                map.getMaxX(), map.getMaxZ(), visibleObjects);
+        if (mapXs.length < count) {
+            mapXs = new float[2 * count];
+            mapZs = new float[2 * count];
+            mapPixelsX = new int[2 * count];
+            mapPixelsY = new int[2 * count];
+        }
+        for (int i = 0; i < count; i++) {
+            TrackedObject object = visibleObjects.get(i);
+            mapXs[i] = object.getX();
+            mapZs[i] = object.getZ();
+        }
+        projector.project(mapXs, mapZs, count, mapPixelsX, mapPixelsY);
+        mapPixelCount = count;
+    }
+}
@@ -0,0 +1,111 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.Arrays;
+
+/**
+ * Everything drawn on the overmap for one update, in plan pixels: the single markers, the
+ * projected registry objects and the walked trail. Object kinds are indexes chosen by the
+ * renderer, such as an icon index. Passed between threads through a {@link TripleBuffer}, so it
+ * is reused, not replaced.
+ */
+public class MapFrame {
+    public static final int CAMERA = 0;
+    public static final int KEYS = 1;
+    public static final int OCULOS = 2;
+    public static final int ORIGIN = 3;
+    private static final int MARKERS = 4;
+    /** X of a marker that is not shown. */
+    public static final int HIDDEN = -1;
+
+    private final int[] markers = new int[2 * MARKERS];
+    private int objectCount;
+    private int[] objectPixelsX = new int[0];
+    private int[] objectPixelsY = new int[0];
+    private int[] objectKinds = new int[0];
+    private int trailVersion;
+    private int trailCount;
+    private float[] trailPixels = new float[0];
+
+    public MapFrame() {
+        Arrays.fill(markers, HIDDEN);
+    }
+
+    public void setMarker(int marker, int x, int y) {
+        markers[2 * marker] = x;
+        markers[2 * marker + 1] = y;
+    }
+
+    public int getMarkerX(int marker) {
+        return markers[2 * marker];
+    }
+
+    public int getMarkerY(int marker) {
+        return markers[2 * marker + 1];
+    }
+
+    /** Copies count objects, as x and y pixels and one kind each. */
+    public void setObjects(int count, int[] pixelsX, int[] pixelsY, int[] kinds) {
+        if (objectKinds.length < count) {
+            objectPixelsX = new int[2 * count];
+            objectPixelsY = new int[2 * count];
+            objectKinds = new int[2 * count];
+        }
+        System.arraycopy(pixelsX, 0, objectPixelsX, 0, count);
+        System.arraycopy(pixelsY, 0, objectPixelsY, 0, count);
+        System.arraycopy(kinds, 0, objectKinds, 0, count);
+        objectCount = count;
+    }
+
+    /** Copies the markers of another frame, keeping this frame's objects. */
+    public void setMarkers(MapFrame other) {
+        System.arraycopy(other.markers, 0, markers, 0, markers.length);
+    }
+
+    /**
+     * Copies count trail points, as (x, y) pixel pairs, unless this frame already holds the
+     * given version of the trail. The trail rarely changes, most frames skip the copy.
+     */
+    public void setTrail(int version, int count, float[] pixels) {
+        if (version == trailVersion) {
+            return;
+        }
+        if (trailPixels.length < 2 * count) {
+            trailPixels = new float[4 * count];
+        }
+        System.arraycopy(pixels, 0, trailPixels, 0, 2 * count);
+        trailCount = count;
+        trailVersion = version;
+    }
+
+    public int getTrailVersion() {
+        return trailVersion;
+    }
+
+    public int getTrailCount() {
+        return trailCount;
+    }
+
+    /** Trail pixels as (x, y) pairs, oldest first, read only. */
+    public float[] getTrailPixels() {
+        return trailPixels;
+    }
+
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    /** Object pixel x coordinates, read only. */
+    public int[] getObjectPixelsX() {
+        return objectPixelsX;
+    }
+
+    /** Object pixel y coordinates, read only. */
+    public int[] getObjectPixelsY() {
+        return objectPixelsY;
+    }
+
+    /** Object kinds, read only. */
+    public int[] getObjectKinds() {
+        return objectKinds;
+    }
+}
@@ -0,0 +1,55 @@
+package com.surrey.ar.es00539arlocator;
+
+/**
+ * Meters relative to the origin marker to floor plan pixels. The plan x axis follows the
+ * relative z axis and the plan y axis follows the relative x axis, and positions outside the
+ * plan are clamped to its edge.
+ */
+public class MapProjection {
+    public static final float PIXELS_PER_METER = 100f;
+
+    private int originX;
+    private int originY;
+    private int width;
+    private int height;
+
+    /** Sets the origin marker pixel and the plan size in pixels. */
+    public void set(int originX, int originY, int width, int height) {
+        this.originX = originX;
+        this.originY = originY;
+        this.width = width;
+        this.height = height;
+    }
+
+    public int toPixelX(float z) {
+        int x = (int) (originX + (PIXELS_PER_METER * z));
+        if (x < 0) { x = 0; }
+        if (x >= width) { x = width - 1; }
+        return x;
+    }
+
+    public int toPixelY(float x) {
+        int y = (int) (originY + (PIXELS_PER_METER * x));
+        if (y < 0) { y = 0; }
+        if (y >= height) { y = height - 1; }
+        return y;
+    }
+
+    /** Relative x of the top edge of the plan, in meters. */
+    public float getMinX() {
+        return -originY / PIXELS_PER_METER;
+    }
+
+    /** Relative z of the left edge of the plan, in meters. */
+    public float getMinZ() {
+        return -originX / PIXELS_PER_METER;
+    }
+
+    public float getMaxX() {
+        return (height - originY) / PIXELS_PER_METER;
+    }
+
+    public float getMaxZ() {
+        return (width - originX) / PIXELS_PER_METER;
+    }
+}
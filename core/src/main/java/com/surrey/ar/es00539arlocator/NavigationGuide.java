@@ -0,0 +1,100 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Walking directions around the walls of a floor plan. Each guidance target gets its own
+ * {@link FlowField}, solved when the target is first asked for and again only when it moves to
+ * another grid cell, so a frame's direction is a constant time lookup. Fields of the least
+ * recently guided targets are recycled past {@link #DEFAULT_MAX_FIELDS}. Not thread safe.
+ */
+public class NavigationGuide {
+    public static final int DEFAULT_MAX_FIELDS = 16;
+
+    private final OccupancyGrid grid;
+    private final int originX;
+    private final int originY;
+    private final int maxFields;
+    // Access ordered, so the eldest entry is the least recently guided target
+    private final LinkedHashMap<TrackedObject, FlowField> fields;
+    private FlowField recycled;
+    private long solves;
+
+    /**
+     * @param grid the plan's occupancy grid
+     * @param originX plan pixel of the origin marker
+     * @param originY plan pixel of the origin marker
+     */
+    public NavigationGuide(OccupancyGrid grid, int originX, int originY, int maxFields) {
+        this.grid = grid;
+        this.originX = originX;
+        this.originY = originY;
+        this.maxFields = maxFields;
+        this.fields = new LinkedHashMap<TrackedObject, FlowField>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TrackedObject, FlowField> eldest) {
+                if (size() > NavigationGuide.this.maxFields) {
+                    recycled = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public OccupancyGrid getGrid() {
+        return grid;
+    }
+
+    /** Number of fields solved so far. */
+    public long getSolves() {
+        return solves;
+    }
+
+    /** Drops the field of an object that is no longer a target, such as a removed one. */
+    public void forget(TrackedObject target) {
+        fields.remove(target);
+    }
+
+    /**
+     * Writes the unit direction to walk from the relative position (x, z) towards the target,
+     * as relative (x, z). Returns false, leaving out untouched, when the plan gives no
+     * direction: off the plan, walled off from the target, or already next to it.
+     */
+    public boolean direction(TrackedObject target, float x, float z, float[] out) {
+        int from = grid.cellAt(originX + MapProjection.PIXELS_PER_METER * z,
+                originY + MapProjection.PIXELS_PER_METER * x);
+        int to = grid.cellAt(originX + MapProjection.PIXELS_PER_METER * target.getZ(),
+                originY + MapProjection.PIXELS_PER_METER * target.getX());
+        if (from < 0 || to < 0) {
+            return false;
+        }
+        FlowField field = fields.get(target);
+        if (field == null) {
+            field = recycled != null ? recycled : new FlowField();
+            recycled = null;
+            solve(field, to);
+            fields.put(target, field);
+        } else if (field.getTarget() != to) {
+            // The target moved to another cell
+            solve(field, to);
+        }
+        if (field.getDistance(from) <= 1) {
+            return false;
+        }
+        int direction = field.getDirection(from);
+        if (direction == FlowField.NONE) {
+            return false;
+        }
+        // Plan columns follow the relative z axis and plan rows the relative x axis
+        out[0] = FlowField.getRowStep(direction);
+        out[1] = FlowField.getColumnStep(direction);
+        return true;
+    }
+
+    private void solve(FlowField field, int target) {
+        field.solve(grid, target);
+        solves++;
+    }
+}
@@ -0,0 +1,619 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of placed objects backed by a uniform grid over the floor plane (x, z).
+ *
+ * <p>Nearest, k-nearest, radius and bounds queries only visit the grid cells around the query
+ * point, so their cost depends on the local object density rather than on the total number of
+ * objects. Every type also has a grid of its own, so a query for a rare type does not walk the
+ * cells of the others. Empty cells are freed, and a nearest search whose rings would cover more
+ * cells than are occupied scans the occupied cells instead, so a far outlier costs at most one
+ * pass over the cells of its grid. Heights (y) are stored but do not take part in distance
+ * computations, matching the top-down overmap.
+ *
+ * <p>Objects are indexed in a fixed frame. {@link #setOrigin} moves the earth marker within that
+ * frame without touching the index, so re-detecting the marker is O(1).
+ */
+public class ObjectRegistry {
+    public static final float DEFAULT_CELL_SIZE = 1f;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final float cellSize;
+    private final float inverseCellSize;
+
+    // Every object, and the objects of each type
+    private final Grid all = new Grid();
+    private final Map<String, Grid> byType = new HashMap<>();
+
+    private final List<TrackedObject> objects = new ArrayList<>();
+    private int nextId;
+    private int version;
+
+    float originX;
+    float originY;
+    float originZ;
+
+    // Scratch space for k-nearest queries
+    private TrackedObject[] heap = new TrackedObject[8];
+    private float[] heapDist = new float[8];
+    private int heapSize;
+
+    public ObjectRegistry() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public ObjectRegistry(float cellSize) {
+        if (!(cellSize > 0f)) {
+            throw new IllegalArgumentException("cellSize must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1f / cellSize;
+    }
+
+    /**
+     * Moves the origin (the earth marker) to the given position in the index frame. Positions
+     * passed to and returned from the registry are relative to this origin.
+     */
+    public void setOrigin(float x, float y, float z) {
+        if (x == originX && y == originY && z == originZ) {
+            return;
+        }
+        version++;
+        originX = x;
+        originY = y;
+        originZ = z;
+    }
+
+    /** Incremented by every change that can move an object, including origin changes. */
+    public int getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return objects.size();
+    }
+
+    /** Returns every registered object, in no particular order. Do not modify the list. */
+    public List<TrackedObject> getObjects() {
+        return objects;
+    }
+
+    /** Number of occupied grid cells, over all types. */
+    int getCellCount() {
+        return all.cellCount;
+    }
+
+    public TrackedObject add(String type, float x, float y, float z) {
+        TrackedObject object = new TrackedObject(this, nextId++, type);
+        object.indexX = x + originX;
+        object.indexY = y + originY;
+        object.indexZ = z + originZ;
+        object.cellX = cellOf(object.indexX);
+        object.cellZ = cellOf(object.indexZ);
+        all.add(object);
+        typeGrid(type, true).add(object);
+        object.slot = objects.size();
+        objects.add(object);
+        version++;
+        return object;
+    }
+
+    /** Moves an object, returns false and leaves it alone if it is no longer registered. */
+    public boolean move(TrackedObject object, float x, float y, float z) {
+        if (!contains(object)) {
+            return false;
+        }
+        version++;
+        object.indexX = x + originX;
+        object.indexY = y + originY;
+        object.indexZ = z + originZ;
+        int cellX = cellOf(object.indexX);
+        int cellZ = cellOf(object.indexZ);
+        if (cellX != object.cellX || cellZ != object.cellZ) {
+            Grid typed = typeGrid(object.getType(), false);
+            all.remove(object);
+            typed.remove(object);
+            object.cellX = cellX;
+            object.cellZ = cellZ;
+            all.add(object);
+            typed.add(object);
+        }
+        return true;
+    }
+
+    public boolean remove(TrackedObject object) {
+        if (!contains(object)) {
+            return false;
+        }
+        int slot = object.slot;
+        TrackedObject last = objects.remove(objects.size() - 1);
+        if (last != object) {
+            objects.set(slot, last);
+            last.slot = slot;
+        }
+        object.slot = -1;
+        version++;
+        all.remove(object);
+        typeGrid(object.getType(), false).remove(object);
+        return true;
+    }
+
+    private boolean contains(TrackedObject object) {
+        int slot = object.slot;
+        return slot >= 0 && slot < objects.size() && objects.get(slot) == object;
+    }
+
+    /**
+     * Returns the object closest to (x, z), or null if there is none. When {@code type} is not
+     * null only objects of that type are considered.
+     */
+    public TrackedObject nearest(float x, float z, String type) {
+        Grid grid = type == null ? all : typeGrid(type, false);
+        if (grid == null || grid.objectCount == 0) {
+            return null;
+        }
+        float qx = x + originX;
+        float qz = z + originZ;
+        int cx = cellOf(qx);
+        int cz = cellOf(qz);
+        int maxRing = grid.maxRing(cx, cz);
+
+        TrackedObject best = null;
+        float bestDist = Float.MAX_VALUE;
+        long visited = 0;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (best != null && ringLowerBound(ring) > bestDist) {
+                break;
+            }
+            // Further rings would visit more cells than the grid has, scan those instead
+            visited += ring == 0 ? 1 : 8L * ring;
+            if (visited > grid.cellCount) {
+                return grid.nearestByScan(qx, qz);
+            }
+            int x0 = cx - ring;
+            int x1 = cx + ring;
+            int z0 = cz - ring;
+            int z1 = cz + ring;
+            for (int gx = x0; gx <= x1; gx++) {
+                int step = (gx == x0 || gx == x1) ? 1 : z1 - z0;
+                for (int gz = z0; gz <= z1; gz += step) {
+                    Cell cell = grid.cellFor(gx, gz);
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < cell.size; i++) {
+                        TrackedObject object = cell.items[i];
+                        float d = distanceSquared(object, qx, qz);
+                        if (d < bestDist) {
+                            bestDist = d;
+                            best = object;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Collects up to {@code k} objects closest to (x, z) into {@code out}, nearest first.
+     * Returns the number of objects added.
+     */
+    public int nearest(float x, float z, int k, String type, List<TrackedObject> out) {
+        Grid grid = type == null ? all : typeGrid(type, false);
+        if (k <= 0 || grid == null || grid.objectCount == 0) {
+            return 0;
+        }
+        if (heap.length < k) {
+            heap = new TrackedObject[k];
+            heapDist = new float[k];
+        }
+        float qx = x + originX;
+        float qz = z + originZ;
+        int cx = cellOf(qx);
+        int cz = cellOf(qz);
+        int maxRing = grid.maxRing(cx, cz);
+
+        heapSize = 0;
+        long visited = 0;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (heapSize == k && ringLowerBound(ring) > heapDist[0]) {
+                break;
+            }
+            visited += ring == 0 ? 1 : 8L * ring;
+            if (visited > grid.cellCount) {
+                heapSize = 0;
+                grid.offerAll(qx, qz, k);
+                break;
+            }
+            int x0 = cx - ring;
+            int x1 = cx + ring;
+            int z0 = cz - ring;
+            int z1 = cz + ring;
+            for (int gx = x0; gx <= x1; gx++) {
+                int step = (gx == x0 || gx == x1) ? 1 : z1 - z0;
+                for (int gz = z0; gz <= z1; gz += step) {
+                    offer(grid.cellFor(gx, gz), qx, qz, k);
+                }
+            }
+        }
+
+        // Drain the max-heap from the back so the output is sorted nearest first
+        int count = heapSize;
+        int start = out.size();
+        for (int i = 0; i < count; i++) {
+            out.add(null);
+        }
+        for (int n = count; n > 0; n--) {
+            out.set(start + n - 1, heap[0]);
+            heap[0] = heap[n - 1];
+            heapDist[0] = heapDist[n - 1];
+            heap[n - 1] = null;
+            siftDown(0, n - 1);
+        }
+        return count;
+    }
+
+    // Adds the objects of a cell to the k-nearest heap
+    private void offer(Cell cell, float qx, float qz, int k) {
+        if (cell == null) {
+            return;
+        }
+        for (int i = 0; i < cell.size; i++) {
+            TrackedObject object = cell.items[i];
+            float d = distanceSquared(object, qx, qz);
+            if (heapSize < k) {
+                heapPush(heapSize++, object, d);
+            } else if (d < heapDist[0]) {
+                heapReplaceTop(k, object, d);
+            }
+        }
+    }
+
+    /** Collects every object within {@code radius} of (x, z) into {@code out}. */
+    public int withinRadius(float x, float z, float radius, String type, List<TrackedObject> out) {
+        Grid grid = type == null ? all : typeGrid(type, false);
+        if (grid == null || grid.objectCount == 0) {
+            return 0;
+        }
+        grid.updateBounds();
+        float qx = x + originX;
+        float qz = z + originZ;
+        float radiusSquared = radius * radius;
+        int x0 = Math.max(cellOf(qx - radius), grid.minCellX);
+        int x1 = Math.min(cellOf(qx + radius), grid.maxCellX);
+        int z0 = Math.max(cellOf(qz - radius), grid.minCellZ);
+        int z1 = Math.min(cellOf(qz + radius), grid.maxCellZ);
+
+        int count = 0;
+        for (int gx = x0; gx <= x1; gx++) {
+            for (int gz = z0; gz <= z1; gz++) {
+                Cell cell = grid.cellFor(gx, gz);
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size; i++) {
+                    TrackedObject object = cell.items[i];
+                    if (distanceSquared(object, qx, qz) <= radiusSquared) {
+                        out.add(object);
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Collects every object inside the given x/z rectangle into {@code out}. */
+    public int withinBounds(float minX, float minZ, float maxX, float maxZ,
+                            List<TrackedObject> out) {
+        if (all.objectCount == 0) {
+            return 0;
+        }
+        all.updateBounds();
+        float qx0 = minX + originX;
+        float qx1 = maxX + originX;
+        float qz0 = minZ + originZ;
+        float qz1 = maxZ + originZ;
+        int x0 = Math.max(cellOf(qx0), all.minCellX);
+        int x1 = Math.min(cellOf(qx1), all.maxCellX);
+        int z0 = Math.max(cellOf(qz0), all.minCellZ);
+        int z1 = Math.min(cellOf(qz1), all.maxCellZ);
+
+        int count = 0;
+        for (int gx = x0; gx <= x1; gx++) {
+            for (int gz = z0; gz <= z1; gz++) {
+                Cell cell = all.cellFor(gx, gz);
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size; i++) {
+                    TrackedObject object = cell.items[i];
+                    if (object.indexX >= qx0 && object.indexX <= qx1
+                            && object.indexZ >= qz0 && object.indexZ <= qz1) {
+                        out.add(object);
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private Grid typeGrid(String type, boolean create) {
+        Grid grid = byType.get(type);
+        if (grid == null && create) {
+            grid = new Grid();
+            byType.put(type, grid);
+        }
+        return grid;
+    }
+
+    private int cellOf(float v) {
+        return (int) Math.floor(v * inverseCellSize);
+    }
+
+    private static float distanceSquared(TrackedObject object, float x, float z) {
+        float dx = object.indexX - x;
+        float dz = object.indexZ - z;
+        return dx * dx + dz * dz;
+    }
+
+    // Squared distance below which nothing in the given ring can lie
+    private float ringLowerBound(int ring) {
+        if (ring <= 1) {
+            return 0f;
+        }
+        float d = (ring - 1) * cellSize;
+        return d * d;
+    }
+
+    private void heapPush(int index, TrackedObject object, float d) {
+        heap[index] = object;
+        heapDist[index] = d;
+        while (index > 0) {
+            int parent = (index - 1) >> 1;
+            if (heapDist[parent] >= heapDist[index]) {
+                break;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void heapReplaceTop(int size, TrackedObject object, float d) {
+        heap[0] = object;
+        heapDist[0] = d;
+        siftDown(0, size);
+    }
+
+    private void siftDown(int index, int size) {
+        while (true) {
+            int left = 2 * index + 1;
+            int largest = index;
+            if (left < size && heapDist[left] > heapDist[largest]) {
+                largest = left;
+            }
+            if (left + 1 < size && heapDist[left + 1] > heapDist[largest]) {
+                largest = left + 1;
+            }
+            if (largest == index) {
+                return;
+            }
+            swap(index, largest);
+            index = largest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        TrackedObject object = heap[a];
+        heap[a] = heap[b];
+        heap[b] = object;
+        float d = heapDist[a];
+        heapDist[a] = heapDist[b];
+        heapDist[b] = d;
+    }
+
+    private static long key(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xffffffffL);
+    }
+
+    private static int hash(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Open-addressed table from packed cell coordinates to the non-empty cells, with the bounds
+     * of those cells to stop ring searches.
+     */
+    private final class Grid {
+        long[] cellKeys = new long[INITIAL_CAPACITY];
+        Cell[] cells = new Cell[INITIAL_CAPACITY];
+        int cellCount;
+        int objectCount;
+
+        int minCellX;
+        int maxCellX;
+        int minCellZ;
+        int maxCellZ;
+        // Set when a cell on the bounds was freed, the bounds are recomputed on the next query
+        boolean boundsStale;
+
+        void add(TrackedObject object) {
+            int slot = slotOf(object.cellX, object.cellZ);
+            if (cells[slot] == null) {
+                cellKeys[slot] = key(object.cellX, object.cellZ);
+                cells[slot] = new Cell();
+                if (cellCount++ == 0) {
+                    minCellX = maxCellX = object.cellX;
+                    minCellZ = maxCellZ = object.cellZ;
+                    boundsStale = false;
+                } else {
+                    minCellX = Math.min(minCellX, object.cellX);
+                    maxCellX = Math.max(maxCellX, object.cellX);
+                    minCellZ = Math.min(minCellZ, object.cellZ);
+                    maxCellZ = Math.max(maxCellZ, object.cellZ);
+                }
+                cells[slot].add(object);
+                if (cellCount * 2 > cells.length) {
+                    resize(cells.length * 2);
+                }
+            } else {
+                cells[slot].add(object);
+            }
+            objectCount++;
+        }
+
+        void remove(TrackedObject object) {
+            int slot = slotOf(object.cellX, object.cellZ);
+            Cell cell = cells[slot];
+            cell.remove(object);
+            objectCount--;
+            if (cell.size > 0) {
+                return;
+            }
+            deleteSlot(slot);
+            cellCount--;
+            if (object.cellX == minCellX || object.cellX == maxCellX
+                    || object.cellZ == minCellZ || object.cellZ == maxCellZ) {
+                boundsStale = true;
+            }
+            if (cellCount * 8 < cells.length && cells.length > INITIAL_CAPACITY) {
+                resize(cells.length / 2);
+            }
+        }
+
+        Cell cellFor(int cellX, int cellZ) {
+            return cells[slotOf(cellX, cellZ)];
+        }
+
+        // The slot holding the cell, or the empty slot where it would go
+        private int slotOf(int cellX, int cellZ) {
+            long key = key(cellX, cellZ);
+            int mask = cells.length - 1;
+            int slot = hash(key, mask);
+            while (cells[slot] != null && cellKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        // Backward shift deletion, so that lookups need no tombstones
+        private void deleteSlot(int slot) {
+            int mask = cells.length - 1;
+            cells[slot] = null;
+            int hole = slot;
+            for (int next = (slot + 1) & mask; cells[next] != null; next = (next + 1) & mask) {
+                int home = hash(cellKeys[next], mask);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    cellKeys[hole] = cellKeys[next];
+                    cells[hole] = cells[next];
+                    cells[next] = null;
+                    hole = next;
+                }
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = cellKeys;
+            Cell[] oldCells = cells;
+            cellKeys = new long[capacity];
+            cells = new Cell[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldCells.length; i++) {
+                if (oldCells[i] == null) {
+                    continue;
+                }
+                int slot = hash(oldKeys[i], mask);
+                while (cells[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                cellKeys[slot] = oldKeys[i];
+                cells[slot] = oldCells[i];
+            }
+        }
+
+        void updateBounds() {
+            if (!boundsStale) {
+                return;
+            }
+            boundsStale = false;
+            minCellX = Integer.MAX_VALUE;
+            maxCellX = Integer.MIN_VALUE;
+            minCellZ = Integer.MAX_VALUE;
+            maxCellZ = Integer.MIN_VALUE;
+            for (int i = 0; i < cells.length; i++) {
+                if (cells[i] != null) {
+                    int cellX = (int) (cellKeys[i] >> 32);
+                    int cellZ = (int) cellKeys[i];
+                    minCellX = Math.min(minCellX, cellX);
+                    maxCellX = Math.max(maxCellX, cellX);
+                    minCellZ = Math.min(minCellZ, cellZ);
+                    maxCellZ = Math.max(maxCellZ, cellZ);
+                }
+            }
+        }
+
+        int maxRing(int cx, int cz) {
+            updateBounds();
+            long rx = Math.max(Math.abs((long) cx - minCellX), Math.abs((long) cx - maxCellX));
+            long rz = Math.max(Math.abs((long) cz - minCellZ), Math.abs((long) cz - maxCellZ));
+            return (int) Math.min(Integer.MAX_VALUE - 1, Math.max(rx, rz));
+        }
+
+        TrackedObject nearestByScan(float qx, float qz) {
+            TrackedObject best = null;
+            float bestDist = Float.MAX_VALUE;
+            for (Cell cell : cells) {
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size; i++) {
+                    float d = distanceSquared(cell.items[i], qx, qz);
+                    if (d < bestDist) {
+                        bestDist = d;
+                        best = cell.items[i];
+                    }
+                }
+            }
+            return best;
+        }
+
+        void offerAll(float qx, float qz, int k) {
+            for (Cell cell : cells) {
+                offer(cell, qx, qz, k);
+            }
+        }
+    }
+
+    private static final class Cell {
+        TrackedObject[] items = new TrackedObject[4];
+        int size;
+
+        void add(TrackedObject object) {
+            if (size == items.length) {
+                TrackedObject[] grown = new TrackedObject[size * 2];
+                System.arraycopy(items, 0, grown, 0, size);
+                items = grown;
+            }
+            items[size++] = object;
+        }
+
+        void remove(TrackedObject object) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == object) {
+                    items[i] = items[--size];
+                    items[size] = null;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.surrey.ar.es00539arlocator;
+
+/**
+ * Walkable and blocked cells of a floor plan. Each cell covers a square of plan pixels, and at
+ * the plan scale of {@link MapProjection#PIXELS_PER_METER} the default of 10 pixels makes cells
+ * of 10 cm. A cell is blocked when any of its pixels is dark, which is how walls are drawn.
+ */
+public class OccupancyGrid {
+    public static final int DEFAULT_CELL_PIXELS = 10;
+    // Pixels darker than this, on a 0 to 255 luminance scale, are walls
+    public static final int DEFAULT_WALL_LUMINANCE = 128;
+
+    private final int columns;
+    private final int rows;
+    private final int cellPixels;
+    private final boolean[] blocked;
+
+    public OccupancyGrid(int columns, int rows, int cellPixels) {
+        if (columns <= 0 || rows <= 0 || cellPixels <= 0) {
+            throw new IllegalArgumentException(
+                    "Bad grid size " + columns + "x" + rows + " of " + cellPixels + " px");
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.cellPixels = cellPixels;
+        this.blocked = new boolean[columns * rows];
+    }
+
+    /**
+     * Builds the grid of a plan from its ARGB pixels. The pixels may be a downsampled decode of
+     * the plan, each of them standing for sampleSize plan pixels in both directions.
+     */
+    public static OccupancyGrid fromPixels(int[] argb, int width, int height, int sampleSize,
+                                           int cellPixels, int wallLuminance) {
+        // Cells are at least one decoded pixel wide
+        int cellSamples = Math.max(1, cellPixels / sampleSize);
+        int columns = (width + cellSamples - 1) / cellSamples;
+        int rows = (height + cellSamples - 1) / cellSamples;
+        OccupancyGrid grid = new OccupancyGrid(columns, rows, cellSamples * sampleSize);
+        for (int y = 0; y < height; y++) {
+            int rowOffset = (y / cellSamples) * columns;
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[y * width + x];
+                // Transparent pixels are not walls
+                if ((pixel >>> 24) < 128) {
+                    continue;
+                }
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                if ((r * 299 + g * 587 + b * 114) / 1000 < wallLuminance) {
+                    grid.blocked[rowOffset + x / cellSamples] = true;
+                }
+            }
+        }
+        return grid;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /** Plan pixels along each side of a cell. */
+    public int getCellPixels() {
+        return cellPixels;
+    }
+
+    public int getCellCount() {
+        return blocked.length;
+    }
+
+    /** Cell index of a plan pixel, or -1 outside the plan. */
+    public int cellAt(float planX, float planY) {
+        if (planX < 0f || planY < 0f) {
+            return -1;
+        }
+        int column = (int) (planX / cellPixels);
+        int row = (int) (planY / cellPixels);
+        if (column >= columns || row >= rows) {
+            return -1;
+        }
+        return row * columns + column;
+    }
+
+    public boolean isBlocked(int cell) {
+        return blocked[cell];
+    }
+
+    public boolean isBlocked(int column, int row) {
+        return blocked[row * columns + column];
+    }
+
+    public void setBlocked(int column, int row, boolean isBlocked) {
+        blocked[row * columns + column] = isBlocked;
+    }
+}
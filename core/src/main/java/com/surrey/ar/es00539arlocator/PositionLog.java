@@ -0,0 +1,262 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of object positions relative to the earth marker, accessed through a memory
+ * mapped file.
+ *
+ * <p>The file is a 16 byte header followed by fixed-size records. Each record starts with a
+ * CRC32 of the rest of the record, so a record torn by a crash is detected on open, and the log
+ * is cut back to the last complete record. {@link #compact} rewrites the live positions to a new
+ * file and renames it over the old one, so the log never loses committed data either. If the
+ * rename fails the old file is opened again and the log stays usable.
+ *
+ * <p>Not thread safe.
+ */
+public class PositionLog implements Closeable {
+    public static final int MAGIC = 0x4152504C; // "ARPL"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 48;
+    public static final int MAX_TYPE_BYTES = 20;
+
+    private static final byte OP_END = 0;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int INITIAL_SIZE = HEADER_SIZE + 256 * RECORD_SIZE;
+    // Compact once the log holds this many more records than live positions
+    private static final int COMPACT_SLACK = 1024;
+
+    /** A live position. */
+    public static class Entry {
+        public final long key;
+        public final String type;
+        public final float x;
+        public final float y;
+        public final float z;
+
+        public Entry(long key, String type, float x, float y, float z) {
+            this.key = key;
+            this.type = type;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+
+    private final File file;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private int records;
+    private int recoveredRecords;
+    private final Map<Long, Entry> live = new LinkedHashMap<>();
+    private final byte[] record = new byte[RECORD_SIZE];
+    private final CRC32 crc = new CRC32();
+
+    public PositionLog(File file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    /** Live positions in the order they were first written. */
+    public Collection<Entry> getEntries() {
+        return live.values();
+    }
+
+    public int size() {
+        return live.size();
+    }
+
+    /** Number of records in the log, including ones superseded by later records. */
+    public int getRecordCount() {
+        return records;
+    }
+
+    /** Number of valid records dropped after a torn or corrupt record when the log was opened. */
+    public int getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    public void put(long key, String type, float x, float y, float z) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        if (typeBytes.length > MAX_TYPE_BYTES) {
+            throw new IllegalArgumentException("Type name too long: " + type);
+        }
+        append(OP_PUT, key, typeBytes, x, y, z);
+        live.put(key, new Entry(key, type, x, y, z));
+    }
+
+    public void remove(long key) throws IOException {
+        if (live.remove(key) != null) {
+            append(OP_REMOVE, key, new byte[0], 0f, 0f, 0f);
+        }
+    }
+
+    /** Flushes written records to storage. */
+    public void force() throws IOException {
+        checkOpen();
+        buffer.force();
+    }
+
+    public boolean needsCompaction() {
+        return records > live.size() + COMPACT_SLACK;
+    }
+
+    /** Rewrites the log with one record per live position. */
+    public void compact() throws IOException {
+        List<Entry> entries = new ArrayList<>(live.values());
+        File compacted = new File(file.getPath() + ".compact");
+        compacted.delete();
+        PositionLog target = new PositionLog(compacted);
+        try {
+            for (Entry entry : entries) {
+                target.put(entry.key, entry.type, entry.x, entry.y, entry.z);
+            }
+            target.force();
+        } finally {
+            target.close();
+        }
+        close();
+        boolean renamed = compacted.renameTo(file);
+        // Either the compacted log or, when the rename failed, the untouched old one
+        open();
+        if (!renamed) {
+            compacted.delete();
+            throw new IOException("Could not replace " + file + " with compacted log");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.close();
+            randomAccessFile.close();
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    private void open() throws IOException {
+        live.clear();
+        records = 0;
+        recoveredRecords = 0;
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        map(Math.max(channel.size(), INITIAL_SIZE));
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            // New or unreadable file, start an empty log
+            for (int i = 0; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            position = HEADER_SIZE;
+            buffer.force();
+            return;
+        }
+
+        position = HEADER_SIZE;
+        while (position + RECORD_SIZE <= buffer.capacity() && readRecord(position)) {
+            position += RECORD_SIZE;
+            records++;
+        }
+        // Anything after the first bad record was never committed, clear it so it is not
+        // mistaken for data once new records are appended
+        for (int offset = position; offset + RECORD_SIZE <= buffer.capacity(); offset += RECORD_SIZE) {
+            if (buffer.get(offset + 4) != OP_END) {
+                recoveredRecords++;
+            }
+        }
+        for (int i = position; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    private void map(long size) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Applies the record at offset, false at the end of the log or at a corrupt record
+    private boolean readRecord(int offset) {
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            record[i] = buffer.get(offset + i);
+        }
+        byte op = record[4];
+        if (op == OP_END) {
+            return false;
+        }
+        crc.reset();
+        crc.update(record, 4, RECORD_SIZE - 4);
+        if (buffer.getInt(offset) != (int) crc.getValue()) {
+            return false;
+        }
+        long key = buffer.getLong(offset + 8);
+        if (op == OP_PUT) {
+            int typeLength = record[5];
+            if (typeLength < 0 || typeLength > MAX_TYPE_BYTES) {
+                return false;
+            }
+            String type = new String(record, 28, typeLength, StandardCharsets.UTF_8);
+            live.put(key, new Entry(key, type, buffer.getFloat(offset + 16),
+                    buffer.getFloat(offset + 20), buffer.getFloat(offset + 24)));
+        } else if (op == OP_REMOVE) {
+            live.remove(key);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void checkOpen() throws IOException {
+        if (channel == null) {
+            throw new IOException("Position log " + file + " is closed");
+        }
+    }
+
+    private void append(byte op, long key, byte[] type, float x, float y, float z)
+            throws IOException {
+        checkOpen();
+        if (position + RECORD_SIZE > buffer.capacity()) {
+            map(2L * buffer.capacity());
+        }
+        int offset = position;
+        buffer.put(offset + 4, op);
+        buffer.put(offset + 5, (byte) type.length);
+        buffer.putShort(offset + 6, (short) 0);
+        buffer.putLong(offset + 8, key);
+        buffer.putFloat(offset + 16, x);
+        buffer.putFloat(offset + 20, y);
+        buffer.putFloat(offset + 24, z);
+        for (int i = 0; i < MAX_TYPE_BYTES; i++) {
+            buffer.put(offset + 28 + i, i < type.length ? type[i] : 0);
+        }
+        for (int i = 4; i < RECORD_SIZE; i++) {
+            record[i] = buffer.get(offset + i);
+        }
+        crc.reset();
+        crc.update(record, 4, RECORD_SIZE - 4);
+        // The checksum goes last, a record is only valid once it is complete
+        buffer.putInt(offset, (int) crc.getValue());
+        position += RECORD_SIZE;
+        records++;
+    }
+}
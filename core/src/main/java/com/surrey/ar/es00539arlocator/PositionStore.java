@@ -0,0 +1,141 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes object positions to a {@link PositionLog} on a background thread. Calls never block:
+ * updates are buffered, later updates of the same key replace earlier ones, and the buffer is
+ * written, flushed and compacted if needed every {@link #FLUSH_INTERVAL_MILLIS}.
+ *
+ * <p>Only one store may have a file open at a time. A store replacing another one for the same
+ * file must be given the future returned by the other one's {@link #close}.
+ */
+public class PositionStore {
+    public static final long FLUSH_INTERVAL_MILLIS = 500;
+    private static final Logger LOGGER = Logger.getLogger(PositionStore.class.getName());
+
+    private final File file;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    // Pending updates by key, a null value is a removal
+    private final Map<Long, PositionLog.Entry> pending = new HashMap<>();
+    private final CompletableFuture<PositionLog> log = new CompletableFuture<>();
+    private long recoveryMillis;
+
+    public PositionStore(File file) {
+        this(file, CompletableFuture.completedFuture(null));
+    }
+
+    /** Opens the file once {@code previous}, such as the close of another store, completes. */
+    public PositionStore(File file, CompletableFuture<?> previous) {
+        this.file = file;
+        executor.execute(() -> {
+            // Waits on this store's own thread, failures were logged by the previous store
+            previous.handle((result, throwable) -> null).join();
+            open();
+        });
+        executor.scheduleWithFixedDelay(this::flush,
+                FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Returns a new key, unique across restarts. */
+    public long newKey() {
+        return ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+    }
+
+    /** Positions restored from the log, once it has been opened and replayed. */
+    public CompletableFuture<List<PositionLog.Entry>> load() {
+        return log.thenApplyAsync(opened -> new ArrayList<>(opened.getEntries()), executor);
+    }
+
+    /** How long opening and replaying the log took, valid once {@link #load} completes. */
+    public long getRecoveryMillis() {
+        return recoveryMillis;
+    }
+
+    public void put(long key, String type, float x, float y, float z) {
+        synchronized (pending) {
+            pending.put(key, new PositionLog.Entry(key, type, x, y, z));
+        }
+    }
+
+    public void remove(long key) {
+        synchronized (pending) {
+            pending.put(key, null);
+        }
+    }
+
+    /** Writes what is pending and closes the log. The future completes once it is closed. */
+    public CompletableFuture<Void> close() {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        executor.execute(() -> {
+            flush();
+            if (log.isDone() && !log.isCompletedExceptionally()) {
+                try {
+                    log.join().close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not close position log", e);
+                }
+            }
+            closed.complete(null);
+        });
+        executor.shutdown();
+        return closed;
+    }
+
+    private void open() {
+        long start = System.nanoTime();
+        try {
+            PositionLog opened = new PositionLog(file);
+            recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOGGER.info("Restored " + opened.size() + " positions from " + opened.getRecordCount()
+                    + " records in " + recoveryMillis + " ms");
+            log.complete(opened);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not open position log " + file, e);
+            log.completeExceptionally(e);
+        }
+    }
+
+    private void flush() {
+        if (!log.isDone() || log.isCompletedExceptionally()) {
+            return;
+        }
+        Map<Long, PositionLog.Entry> updates;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            updates = new HashMap<>(pending);
+            pending.clear();
+        }
+        PositionLog opened = log.join();
+        try {
+            for (Map.Entry<Long, PositionLog.Entry> update : updates.entrySet()) {
+                PositionLog.Entry entry = update.getValue();
+                if (entry == null) {
+                    opened.remove(update.getKey());
+                } else {
+                    opened.put(entry.key, entry.type, entry.x, entry.y, entry.z);
+                }
+            }
+            opened.force();
+            if (opened.needsCompaction()) {
+                opened.compact();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write position log", e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.surrey.ar.es00539arlocator;
+
+/**
+ * Caps how often a view redraws, independently of how often it is updated. Times are in
+ * milliseconds from any monotonic clock.
+ */
+public class RedrawThrottle {
+    private long minIntervalMillis;
+    private long lastRedrawMillis = Long.MIN_VALUE / 2;
+    private long redraws;
+    private long skippedUpdates;
+
+    /** @param maxRate maximum redraws per second, zero or less for no limit */
+    public RedrawThrottle(float maxRate) {
+        setMaxRate(maxRate);
+    }
+
+    public void setMaxRate(float maxRate) {
+        minIntervalMillis = maxRate > 0f ? (long) Math.ceil(1000f / maxRate) : 0L;
+    }
+
+    /** Returns how long to wait before the next redraw is allowed, zero if it is allowed now. */
+    public long delayUntilNext(long nowMillis) {
+        return Math.max(0L, lastRedrawMillis + minIntervalMillis - nowMillis);
+    }
+
+    public void onRedraw(long nowMillis) {
+        lastRedrawMillis = nowMillis;
+        redraws++;
+    }
+
+    /** Records an update that changed no pixels and so needed no redraw. */
+    public void onSkippedUpdate() {
+        skippedUpdates++;
+    }
+
+    public long getRedraws() {
+        return redraws;
+    }
+
+    public long getSkippedUpdates() {
+        return skippedUpdates;
+    }
+}
@@ -0,0 +1,69 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.Arrays;
+
+/**
+ * Packs rectangles into rows ("shelves") of a fixed width texture, for icon atlases. Each
+ * rectangle goes on the shelf that wastes the least height, or on a new shelf below the others.
+ * Adding rectangles from tallest to shortest packs best.
+ */
+public class ShelfPacker {
+    private final int width;
+    private final int padding;
+    // Per shelf: top, height and the x where the next rectangle goes
+    private int[] shelfTops = new int[4];
+    private int[] shelfHeights = new int[4];
+    private int[] shelfEnds = new int[4];
+    private int shelfCount;
+    private int height;
+
+    /** @param padding empty pixels kept around each rectangle, so filtering does not bleed */
+    public ShelfPacker(int width, int padding) {
+        this.width = width;
+        this.padding = padding;
+    }
+
+    /**
+     * Places a rectangle and writes its left and top into {@code out}. Returns false when it is
+     * wider than the packer.
+     */
+    public boolean add(int rectWidth, int rectHeight, int[] out) {
+        int paddedWidth = rectWidth + 2 * padding;
+        int paddedHeight = rectHeight + 2 * padding;
+        if (paddedWidth > width) {
+            return false;
+        }
+        int best = -1;
+        for (int i = 0; i < shelfCount; i++) {
+            if (shelfHeights[i] >= paddedHeight && shelfEnds[i] + paddedWidth <= width
+                    && (best < 0 || shelfHeights[i] < shelfHeights[best])) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            if (shelfCount == shelfTops.length) {
+                shelfTops = Arrays.copyOf(shelfTops, 2 * shelfCount);
+                shelfHeights = Arrays.copyOf(shelfHeights, 2 * shelfCount);
+                shelfEnds = Arrays.copyOf(shelfEnds, 2 * shelfCount);
+            }
+            best = shelfCount++;
+            shelfTops[best] = height;
+            shelfHeights[best] = paddedHeight;
+            shelfEnds[best] = 0;
+            height += paddedHeight;
+        }
+        out[0] = shelfEnds[best] + padding;
+        out[1] = shelfTops[best] + padding;
+        shelfEnds[best] += paddedWidth;
+        return true;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /** Height needed for everything added so far. */
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,111 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Startup work split into named stages. A stage runs on the executor it needs as soon as the
+ * stages it depends on are done, so stages that do not depend on each other overlap. The
+ * pipeline records when each stage started and ended, relative to the start of the pipeline,
+ * and instant marks such as the first frame, so that startups can be compared. Thread safe.
+ */
+public class StartupPipeline {
+    /** Work of one stage, which may throw. */
+    public interface Stage<T> {
+        T run() throws Exception;
+    }
+
+    private static class Timing {
+        final String name;
+        final String thread;
+        final long start;
+        final long end;
+
+        Timing(String name, String thread, long start, long end) {
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final Clock clock;
+    private final long startNanos;
+    private final List<Timing> timings = new ArrayList<>();
+
+    /** Starts the pipeline at the given time of the clock, which may be in the past. */
+    public StartupPipeline(Clock clock, long startNanos) {
+        this.clock = clock;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Runs a stage on the executor once every stage in {@code after} completed. Fails without
+     * running if one of them failed.
+     */
+    public <T> CompletableFuture<T> stage(String name, Executor executor, Stage<T> work,
+                                          CompletableFuture<?>... after) {
+        return CompletableFuture.allOf(after).thenApplyAsync(ignored -> run(name, work), executor);
+    }
+
+    /** Runs a stage right away on the calling thread. */
+    public <T> T run(String name, Stage<T> work) {
+        long start = clock.nanoTime();
+        try {
+            return work.run();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            record(name, start, clock.nanoTime());
+        }
+    }
+
+    /** Records an instant, such as the first frame. */
+    public void mark(String name) {
+        long now = clock.nanoTime();
+        record(name, now, now);
+    }
+
+    private void record(String name, long start, long end) {
+        Timing timing = new Timing(name, Thread.currentThread().getName(),
+                start - startNanos, end - startNanos);
+        synchronized (timings) {
+            timings.add(timing);
+        }
+    }
+
+    /** When the named stage or mark ended, from the start of the pipeline, or -1 if not yet. */
+    public long getEndNanos(String name) {
+        synchronized (timings) {
+            for (Timing timing : timings) {
+                if (timing.name.equals(name)) {
+                    return timing.end;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Writes each stage and mark in start order, in milliseconds from the pipeline start. */
+    public void dump(Appendable out) throws IOException {
+        List<Timing> sorted;
+        synchronized (timings) {
+            sorted = new ArrayList<>(timings);
+        }
+        sorted.sort((a, b) -> Long.compare(a.start, b.start));
+        out.append(String.format(Locale.US, "%-18s %10s %10s %10s  %s%n",
+                "startup stage", "start", "end", "took", "thread"));
+        for (Timing timing : sorted) {
+            out.append(String.format(Locale.US, "%-18s %10.1f %10.1f %10.1f  %s%n",
+                    timing.name, timing.start / 1e6, timing.end / 1e6,
+                    (timing.end - timing.start) / 1e6, timing.thread));
+        }
+    }
+}
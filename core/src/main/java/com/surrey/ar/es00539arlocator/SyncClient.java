@@ -0,0 +1,255 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shares the positions of the objects of one location with other devices through a SyncRelay,
+ * see the tools module, on its own thread with a non-blocking socket.
+ *
+ * <p>{@link #put} and {@link #remove} never block: changes are buffered, later changes of the
+ * same key replace earlier ones, and the buffer is sent as one batch every
+ * {@link SyncProtocol#TICK_MILLIS}. Changes from other devices are handed to the listener on the
+ * sync thread, one call per received batch. The client reconnects after a failure and then
+ * sends all its positions again, as the relay may have lost them.
+ */
+public class SyncClient implements Closeable {
+    public static final long RECONNECT_MILLIS = 2000;
+    private static final Logger LOGGER = Logger.getLogger(SyncClient.class.getName());
+
+    private final InetSocketAddress address;
+    private final String location;
+    private final SyncProtocol.Listener listener;
+    private final Selector selector;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // Pending changes by key, written by any thread
+    private final Map<Long, SyncProtocol.Change> pending = new LinkedHashMap<>();
+
+    // Sync thread state: every position this client shares, and the connection if any
+    private final Map<Long, SyncProtocol.Change> published = new HashMap<>();
+    private final List<SyncProtocol.Change> batch = new ArrayList<>();
+    private SyncConnection connection;
+    private boolean connected;
+    private SyncProtocol.Encoder encoder;
+    private SyncProtocol.Decoder decoder;
+    private final SyncConnection.FrameHandler onFrame = this::onFrame;
+
+    // Counters, written by the sync thread
+    private volatile long bytesSent;
+    private volatile long bytesReceived;
+    private volatile long changesSent;
+    private volatile long changesReceived;
+    private volatile int connects;
+    // Bytes of earlier connections
+    private long sentBefore;
+    private long receivedBefore;
+
+    public SyncClient(String host, int port, String location, SyncProtocol.Listener listener)
+            throws IOException {
+        this.address = InetSocketAddress.createUnresolved(host, port);
+        this.location = location;
+        this.listener = listener;
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, "sync");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /** Shares the position of an object, relative to the origin marker. */
+    public void put(long key, String type, float x, float y, float z) {
+        synchronized (pending) {
+            pending.put(key, new SyncProtocol.Change(key, type, x, y, z));
+        }
+    }
+
+    public void remove(long key) {
+        synchronized (pending) {
+            pending.put(key, SyncProtocol.Change.removal(key));
+        }
+    }
+
+    /** Stops the sync thread, pending changes are dropped. */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getChangesSent() {
+        return changesSent;
+    }
+
+    public long getChangesReceived() {
+        return changesReceived;
+    }
+
+    public int getConnects() {
+        return connects;
+    }
+
+    public void dump(Appendable out) throws IOException {
+        out.append(String.format(Locale.US,
+                "sync %s, %d connects, %d changes sent in %d bytes, %d received in %d bytes%n",
+                connected ? "connected" : "disconnected", connects, changesSent, bytesSent,
+                changesReceived, bytesReceived));
+    }
+
+    private void run() {
+        long nextTick = System.currentTimeMillis();
+        long nextConnect = nextTick;
+        try {
+            while (!closed) {
+                long now = System.currentTimeMillis();
+                try {
+                    if (connection == null && now >= nextConnect) {
+                        connect();
+                    }
+                    if (now >= nextTick) {
+                        tick();
+                        nextTick = now + SyncProtocol.TICK_MILLIS;
+                    }
+                    long wake = connection == null ? Math.min(nextTick, nextConnect) : nextTick;
+                    selector.select(Math.max(1, wake - now));
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        handle(key);
+                    }
+                    selector.selectedKeys().clear();
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Sync with " + address + " failed", e);
+                    disconnect();
+                    nextConnect = now + RECONNECT_MILLIS;
+                }
+            }
+        } finally {
+            disconnect();
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not close sync selector", e);
+            }
+        }
+    }
+
+    private void connect() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        connection = new SyncConnection(channel, selector, SelectionKey.OP_CONNECT);
+        // Resolved here, off the calling thread
+        channel.connect(new InetSocketAddress(address.getHostString(), address.getPort()));
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isConnectable()) {
+            connection.finishConnect();
+            onConnected();
+        }
+        if (key.isValid() && key.isReadable() && !connection.read(onFrame)) {
+            throw new IOException("Sync relay closed the connection");
+        }
+        if (key.isValid() && key.isWritable()) {
+            connection.flush();
+        }
+        updateCounters();
+    }
+
+    // A new connection starts with empty tables on both sides, so everything is sent again
+    private void onConnected() throws IOException {
+        connected = true;
+        connects++;
+        encoder = new SyncProtocol.Encoder();
+        decoder = new SyncProtocol.Decoder();
+        connection.send(SyncProtocol.hello(location));
+        send(new ArrayList<>(published.values()));
+    }
+
+    private void onFrame(ByteBuffer frame) {
+        if (SyncProtocol.frameKind(frame) != SyncProtocol.BATCH) {
+            return;
+        }
+        List<SyncProtocol.Change> changes = new ArrayList<>();
+        decoder.readBatch(frame, changes);
+        changesReceived += changes.size();
+        listener.onChanges(changes);
+    }
+
+    // Applies what was buffered since the last tick, and sends it if connected
+    private void tick() throws IOException {
+        batch.clear();
+        synchronized (pending) {
+            batch.addAll(pending.values());
+            pending.clear();
+        }
+        for (SyncProtocol.Change change : batch) {
+            if (change.isRemoval()) {
+                published.remove(change.key);
+            } else {
+                published.put(change.key, change);
+            }
+        }
+        if (connected && !batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private void send(List<SyncProtocol.Change> changes) throws IOException {
+        for (int i = 0; i < changes.size(); ) {
+            i = encoder.encode(changes, i);
+            if (encoder.getFrameChanges() > 0) {
+                connection.send(encoder.getFrame());
+                changesSent += encoder.getFrameChanges();
+            }
+        }
+        updateCounters();
+    }
+
+    private void updateCounters() {
+        if (connection != null) {
+            bytesSent = sentBefore + connection.getBytesWritten();
+            bytesReceived = receivedBefore + connection.getBytesRead();
+        }
+    }
+
+    private void disconnect() {
+        if (connection == null) {
+            return;
+        }
+        updateCounters();
+        sentBefore = bytesSent;
+        receivedBefore = bytesReceived;
+        connection.close();
+        connection = null;
+        connected = false;
+    }
+}
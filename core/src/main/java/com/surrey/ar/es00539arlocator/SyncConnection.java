@@ -0,0 +1,120 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * One non-blocking sync socket: collects incoming bytes into whole {@link SyncProtocol} frames
+ * and queues outgoing frames until the socket takes them. Only used from the thread that runs
+ * its selector.
+ */
+class SyncConnection {
+    // A peer that lets this much pile up is not reading, and is dropped
+    static final int MAX_QUEUED_BYTES = 4 * SyncProtocol.MAX_FRAME_BYTES;
+
+    interface FrameHandler {
+        /** Handles one whole frame, starting at position 0 of the given buffer. */
+        void onFrame(ByteBuffer frame) throws IOException;
+    }
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private ByteBuffer in = ByteBuffer.allocate(8192);
+    // Queued bytes, from 0 to the position
+    private ByteBuffer out = ByteBuffer.allocate(8192);
+    private long bytesRead;
+    private long bytesWritten;
+
+    /** Registers an accepted or connecting channel, with the given interest and no attachment. */
+    SyncConnection(SocketChannel channel, Selector selector, int interest) throws IOException {
+        this.channel = channel;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        this.key = channel.register(selector, interest);
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /** Completes a connect once the selector reports it, then waits for frames. */
+    void finishConnect() throws IOException {
+        channel.finishConnect();
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /** Queues a frame and writes as much as the socket takes right away. */
+    void send(ByteBuffer frame) throws IOException {
+        if (out.remaining() < frame.remaining()) {
+            int queued = out.position() + frame.remaining();
+            if (queued > MAX_QUEUED_BYTES) {
+                throw new IOException("Sync peer is not reading, " + queued + " bytes queued");
+            }
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * out.capacity(), queued));
+            out.flip();
+            larger.put(out);
+            out = larger;
+        }
+        out.put(frame.duplicate());
+        flush();
+    }
+
+    /** Writes what the socket takes, and asks to be told when it takes more. */
+    void flush() throws IOException {
+        out.flip();
+        bytesWritten += channel.write(out);
+        out.compact();
+        if (key.isValid()) {
+            key.interestOps(out.position() > 0
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Reads what arrived and hands every whole frame to the handler. Returns false once the
+     * peer closed the connection.
+     */
+    boolean read(FrameHandler handler) throws IOException {
+        if (!in.hasRemaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(2 * in.capacity());
+            in.flip();
+            larger.put(in);
+            in = larger;
+        }
+        int read = channel.read(in);
+        if (read < 0) {
+            return false;
+        }
+        bytesRead += read;
+        in.flip();
+        int length;
+        while ((length = SyncProtocol.frameLength(in)) > 0) {
+            ByteBuffer frame = in.slice();
+            frame.limit(length);
+            handler.onFrame(frame);
+            in.position(in.position() + length);
+        }
+        in.compact();
+        return true;
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    void close() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+    }
+}
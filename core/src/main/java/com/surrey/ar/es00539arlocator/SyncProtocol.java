@@ -0,0 +1,339 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wire format shared by {@link SyncClient} and the SyncRelay of the tools module to share object
+ * positions relative to the origin marker between devices.
+ *
+ * <p>A stream is a sequence of frames, each a 4 byte length followed by a one byte kind.
+ * {@link #HELLO} names the location a client is in, {@link #BATCH} carries every change of one
+ * tick. Within a batch each change starts with an op and a stream index, a small number the
+ * encoder assigns to an object key the first time it sends it:
+ * <ul>
+ * <li>{@link #OP_NEW}: index, 8 byte key, type, then x, y and z in millimeters</li>
+ * <li>{@link #OP_MOVE}: index, then x, y and z as millimeter deltas from the last sent value</li>
+ * <li>{@link #OP_REMOVE}: index</li>
+ * </ul>
+ * Numbers are zigzag varints, so a small move costs a byte per axis. Each direction of a
+ * connection has its own {@link Encoder} and {@link Decoder}, whose tables must start empty
+ * together, on a new connection.
+ */
+public final class SyncProtocol {
+    public static final int DEFAULT_PORT = 7420;
+    /** Changes are batched for this long before they are sent. */
+    public static final long TICK_MILLIS = 100;
+    public static final byte HELLO = 1;
+    public static final byte BATCH = 2;
+    public static final int MAX_FRAME_BYTES = 1024 * 1024;
+    static final int FRAME_HEADER = 5;
+    static final byte OP_NEW = 1;
+    static final byte OP_MOVE = 2;
+    static final byte OP_REMOVE = 3;
+    private static final float MILLIS_PER_METER = 1000f;
+    private static final int MAX_TYPE_BYTES = 255;
+    // Largest encoded change: op, index, key, type and three positions
+    private static final int MAX_CHANGE_BYTES = 1 + 5 + 8 + 1 + MAX_TYPE_BYTES + 3 * 5;
+
+    private SyncProtocol() {
+    }
+
+    /** A position or removal of one object, relative to the origin marker. */
+    public static class Change {
+        public final long key;
+        /** Null for a removal. */
+        public final String type;
+        public final float x;
+        public final float y;
+        public final float z;
+
+        public Change(long key, String type, float x, float y, float z) {
+            this.key = key;
+            this.type = type;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        public static Change removal(long key) {
+            return new Change(key, null, 0f, 0f, 0f);
+        }
+
+        public boolean isRemoval() {
+            return type == null;
+        }
+    }
+
+    /** Receives the changes of one decoded batch. */
+    public interface Listener {
+        void onChanges(List<Change> changes);
+    }
+
+    /** A hello frame for the given location. */
+    public static ByteBuffer hello(String location) {
+        ByteBuffer out = ByteBuffer.allocate(FRAME_HEADER + 1 + MAX_TYPE_BYTES);
+        int start = beginFrame(out, HELLO);
+        writeString(out, location);
+        endFrame(out, start);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Returns the length of the frame at the buffer position, header included, or 0 if it has
+     * not fully arrived yet.
+     */
+    public static int frameLength(ByteBuffer in) {
+        if (in.remaining() < FRAME_HEADER) {
+            return 0;
+        }
+        int length = in.getInt(in.position());
+        if (length < FRAME_HEADER || length > MAX_FRAME_BYTES) {
+            throw new IllegalStateException("Bad sync frame length " + length);
+        }
+        return in.remaining() >= length ? length : 0;
+    }
+
+    public static byte frameKind(ByteBuffer frame) {
+        return frame.get(frame.position() + 4);
+    }
+
+    /** Reads the location of a hello frame. */
+    public static String readHello(ByteBuffer frame) {
+        frame.position(frame.position() + FRAME_HEADER);
+        return readString(frame);
+    }
+
+    /**
+     * Sender side of one stream: remembers what was last sent for each key, so moves are sent
+     * as deltas. Not thread safe.
+     */
+    public static class Encoder {
+        // Last sent millimeters and stream index of each key
+        private final Map<Long, int[]> sent = new HashMap<>();
+        private int nextIndex;
+        private ByteBuffer frame = ByteBuffer.allocate(4096);
+        private int frameChanges;
+
+        /**
+         * Encodes the changes from index {@code from} on into one batch frame, as many as fit in
+         * a frame, skipping those that would send nothing new. Returns the index of the first
+         * change left out, the size of the list once all are in. The frame is then in
+         * {@link #getFrame}, empty if nothing was new.
+         */
+        public int encode(List<Change> changes, int from) {
+            frame.clear();
+            int start = beginFrame(frame, BATCH);
+            frame.putInt(0);
+            int count = 0;
+            int i = from;
+            for (; i < changes.size(); i++) {
+                if (frame.remaining() < MAX_CHANGE_BYTES) {
+                    if (frame.capacity() >= MAX_FRAME_BYTES) {
+                        break;
+                    }
+                    frame = grow(frame);
+                }
+                if (write(changes.get(i))) {
+                    count++;
+                }
+            }
+            frameChanges = count;
+            if (count == 0) {
+                frame.clear().limit(0);
+                return i;
+            }
+            frame.putInt(start + FRAME_HEADER, count);
+            endFrame(frame, start);
+            frame.flip();
+            return i;
+        }
+
+        /** The frame encoded last, reused by the next {@link #encode}. */
+        public ByteBuffer getFrame() {
+            return frame;
+        }
+
+        /** Number of changes in the frame encoded last. */
+        public int getFrameChanges() {
+            return frameChanges;
+        }
+
+        private boolean write(Change change) {
+            int[] last = sent.get(change.key);
+            if (change.isRemoval()) {
+                if (last == null) {
+                    return false;
+                }
+                // Indexes are not reused, the decoder keeps a slot for every index it saw
+                frame.put(OP_REMOVE);
+                writeVarint(frame, last[3]);
+                sent.remove(change.key);
+                return true;
+            }
+            int x = toMillis(change.x);
+            int y = toMillis(change.y);
+            int z = toMillis(change.z);
+            if (last == null) {
+                last = new int[] {x, y, z, nextIndex++};
+                sent.put(change.key, last);
+                frame.put(OP_NEW);
+                writeVarint(frame, last[3]);
+                frame.putLong(change.key);
+                writeString(frame, change.type);
+                writeVarint(frame, zigzag(x));
+                writeVarint(frame, zigzag(y));
+                writeVarint(frame, zigzag(z));
+                return true;
+            }
+            if (x == last[0] && y == last[1] && z == last[2]) {
+                return false;
+            }
+            frame.put(OP_MOVE);
+            writeVarint(frame, last[3]);
+            writeVarint(frame, zigzag(x - last[0]));
+            writeVarint(frame, zigzag(y - last[1]));
+            writeVarint(frame, zigzag(z - last[2]));
+            last[0] = x;
+            last[1] = y;
+            last[2] = z;
+            return true;
+        }
+
+        private static ByteBuffer grow(ByteBuffer buffer) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(2 * buffer.capacity(), MAX_FRAME_BYTES));
+            buffer.flip();
+            larger.put(buffer);
+            return larger;
+        }
+    }
+
+    /** Receiver side of one stream, the mirror of an {@link Encoder}. Not thread safe. */
+    public static class Decoder {
+        private final List<Long> keys = new ArrayList<>();
+        private final List<String> types = new ArrayList<>();
+        private final List<int[]> positions = new ArrayList<>();
+
+        /** Reads a batch frame and appends its changes to out. */
+        public void readBatch(ByteBuffer frame, List<Change> out) {
+            frame.position(frame.position() + FRAME_HEADER);
+            int count = frame.getInt();
+            for (int i = 0; i < count; i++) {
+                byte op = frame.get();
+                int index = readVarint(frame);
+                switch (op) {
+                    case OP_NEW: {
+                        long key = frame.getLong();
+                        String type = readString(frame);
+                        int[] position = {unzigzag(readVarint(frame)), unzigzag(readVarint(frame)),
+                                unzigzag(readVarint(frame))};
+                        if (index != keys.size()) {
+                            throw new IllegalStateException("Out of order sync index " + index);
+                        }
+                        keys.add(key);
+                        types.add(type);
+                        positions.add(position);
+                        out.add(change(index));
+                        break;
+                    }
+                    case OP_MOVE: {
+                        int[] position = slot(index);
+                        position[0] += unzigzag(readVarint(frame));
+                        position[1] += unzigzag(readVarint(frame));
+                        position[2] += unzigzag(readVarint(frame));
+                        out.add(change(index));
+                        break;
+                    }
+                    case OP_REMOVE:
+                        slot(index);
+                        out.add(Change.removal(keys.get(index)));
+                        positions.set(index, null);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown sync op " + op);
+                }
+            }
+        }
+
+        private int[] slot(int index) {
+            int[] position = index < positions.size() ? positions.get(index) : null;
+            if (position == null) {
+                throw new IllegalStateException("Unknown sync index " + index);
+            }
+            return position;
+        }
+
+        private Change change(int index) {
+            int[] position = positions.get(index);
+            return new Change(keys.get(index), types.get(index), toMeters(position[0]),
+                    toMeters(position[1]), toMeters(position[2]));
+        }
+    }
+
+    private static int beginFrame(ByteBuffer out, byte kind) {
+        int start = out.position();
+        out.putInt(0);
+        out.put(kind);
+        return start;
+    }
+
+    private static void endFrame(ByteBuffer out, int start) {
+        out.putInt(start, out.position() - start);
+    }
+
+    static int toMillis(float meters) {
+        return Math.round(meters * MILLIS_PER_METER);
+    }
+
+    static float toMeters(int millis) {
+        return millis / MILLIS_PER_METER;
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed sync varint");
+    }
+
+    private static void writeString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_TYPE_BYTES) {
+            throw new IllegalArgumentException("Sync string too long: " + value);
+        }
+        out.put((byte) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.get() & 0xff];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
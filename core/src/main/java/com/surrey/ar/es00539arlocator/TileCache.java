@@ -0,0 +1,125 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of decoded tiles with a byte budget. Not thread safe: use it from
+ * the thread that draws.
+ */
+public class TileCache<V> {
+    /** Reports how many bytes a cached value holds. */
+    public interface Sizer<V> {
+        int sizeOf(V value);
+    }
+
+    /** Told of every value that leaves the cache, so that its memory can be given back. */
+    public interface RemovalListener<V> {
+        void onRemoved(V value);
+    }
+
+    private final LinkedHashMap<Long, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Sizer<V> sizer;
+    private final RemovalListener<V> listener;
+    private long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public TileCache(long maxBytes, Sizer<V> sizer) {
+        this(maxBytes, sizer, value -> { });
+    }
+
+    public TileCache(long maxBytes, Sizer<V> sizer, RemovalListener<V> listener) {
+        this.maxBytes = maxBytes;
+        this.sizer = sizer;
+        this.listener = listener;
+    }
+
+    public V get(long key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    public boolean contains(long key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Adds a value, then evicts least recently used entries until the cache is within budget.
+     * A value larger than the whole budget is not cached, and goes to the listener straight away
+     * like a replaced one.
+     */
+    public void put(long key, V value) {
+        int size = sizer.sizeOf(value);
+        V previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= sizer.sizeOf(previous);
+            if (previous != value) {
+                listener.onRemoved(previous);
+            }
+        }
+        if (size > maxBytes) {
+            listener.onRemoved(value);
+            return;
+        }
+        entries.put(key, value);
+        bytes += size;
+        trimTo(maxBytes);
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimTo(maxBytes);
+    }
+
+    public void trimTo(long targetBytes) {
+        Iterator<Map.Entry<Long, V>> iterator = entries.entrySet().iterator();
+        while (bytes > targetBytes && iterator.hasNext()) {
+            Map.Entry<Long, V> eldest = iterator.next();
+            bytes -= sizer.sizeOf(eldest.getValue());
+            iterator.remove();
+            evictions++;
+            listener.onRemoved(eldest.getValue());
+        }
+    }
+
+    public void clear() {
+        for (V value : entries.values()) {
+            listener.onRemoved(value);
+        }
+        entries.clear();
+        bytes = 0;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+}
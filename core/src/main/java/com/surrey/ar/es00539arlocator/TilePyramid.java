@@ -0,0 +1,128 @@
+package com.surrey.ar.es00539arlocator;
+
+/**
+ * Cuts a floor plan of a given size into fixed-size square tiles at several zoom levels.
+ *
+ * <p>Level 0 is full resolution. Each following level halves the resolution, so a tile at level
+ * {@code n} covers {@code tileSize << n} plan pixels on each side and is decoded with a sample
+ * size of {@code 1 << n}. The last level fits the whole plan in a single tile.
+ */
+public class TilePyramid {
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int levelCount;
+
+    /** Called once per tile by {@link #forEachTile}. */
+    public interface TileVisitor {
+        void visit(int level, int column, int row);
+    }
+
+    public TilePyramid(int width, int height, int tileSize) {
+        if (width <= 0 || height <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid pyramid " + width + "x" + height + " tile " + tileSize);
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        int levels = 1;
+        while ((long) tileSize << (levels - 1) < Math.max(width, height)) {
+            levels++;
+        }
+        this.levelCount = levels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /** Plan pixels per tile pixel at the given level, the decoder sample size. */
+    public static int getSampleSize(int level) {
+        return 1 << level;
+    }
+
+    public int getColumns(int level) {
+        int span = tileSize << level;
+        return (width + span - 1) / span;
+    }
+
+    public int getRows(int level) {
+        int span = tileSize << level;
+        return (height + span - 1) / span;
+    }
+
+    /**
+     * Picks the coarsest level that still has at least one tile pixel per screen pixel, for a
+     * view drawn at {@code scale} screen pixels per plan pixel.
+     */
+    public int levelFor(float scale) {
+        if (!(scale > 0f) || scale >= 1f) {
+            return 0;
+        }
+        int level = 0;
+        while (level + 1 < levelCount && (1 << (level + 1)) * scale <= 1f) {
+            level++;
+        }
+        return level;
+    }
+
+    /** Writes the plan pixel bounds of a tile as left, top, right, bottom (exclusive). */
+    public void getTileBounds(int level, int column, int row, int[] out) {
+        int span = tileSize << level;
+        out[0] = column * span;
+        out[1] = row * span;
+        out[2] = Math.min(out[0] + span, width);
+        out[3] = Math.min(out[1] + span, height);
+    }
+
+    /**
+     * Visits every tile of the level that intersects the given plan rectangle, right and bottom
+     * exclusive, and returns how many were visited.
+     */
+    public int forEachTile(int level, float left, float top, float right, float bottom,
+                           TileVisitor visitor) {
+        int span = tileSize << level;
+        int column0 = Math.max(0, (int) Math.floor(left / span));
+        int row0 = Math.max(0, (int) Math.floor(top / span));
+        // An edge on a tile boundary does not reach into the next tile
+        int column1 = Math.min(getColumns(level) - 1, (int) Math.ceil(right / span) - 1);
+        int row1 = Math.min(getRows(level) - 1, (int) Math.ceil(bottom / span) - 1);
+        int count = 0;
+        for (int row = row0; row <= row1; row++) {
+            for (int column = column0; column <= column1; column++) {
+                visitor.visit(level, column, row);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static long key(int level, int column, int row) {
+        return ((long) level << 56) | ((long) column << 28) | row;
+    }
+
+    public static int levelOf(long key) {
+        return (int) (key >>> 56);
+    }
+
+    public static int columnOf(long key) {
+        return (int) ((key >>> 28) & 0xfffffff);
+    }
+
+    public static int rowOf(long key) {
+        return (int) (key & 0xfffffff);
+    }
+}
@@ -0,0 +1,144 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.Arrays;
+
+/**
+ * What one AR frame delivered: the camera pose, the augmented images updated in the frame and
+ * the plane taps made since the previous frame. Poses are a translation (x, y, z) and a unit
+ * quaternion (x, y, z, w). Instances are reused from frame to frame, so filling one does not
+ * allocate once its arrays have grown to the largest frame.
+ *
+ * <p>Tracking states and methods mirror the ARCore enums of the same names.
+ */
+public class TraceFrame {
+    public static final int TRACKING = 0;
+    public static final int PAUSED = 1;
+    public static final int STOPPED = 2;
+
+    public static final int NOT_TRACKING = 0;
+    public static final int FULL_TRACKING = 1;
+    public static final int LAST_KNOWN_POSE = 2;
+
+    public static final int POSE_SIZE = 7;
+
+    private long timestampNanos;
+    private final float[] camera = new float[POSE_SIZE];
+
+    private int imageCount;
+    private String[] imageNames = new String[4];
+    private int[] imageStates = new int[4];
+    private int[] imageMethods = new int[4];
+    private float[] imagePoses = new float[4 * POSE_SIZE];
+
+    private int tapCount;
+    private float[] tapPoses = new float[2 * POSE_SIZE];
+
+    /** Forgets the images and taps, ready for the next frame. */
+    public void clear() {
+        for (int i = 0; i < imageCount; i++) {
+            imageNames[i] = null;
+        }
+        imageCount = 0;
+        tapCount = 0;
+    }
+
+    /** Makes this frame a copy of another, reusing its own arrays. */
+    public void copyFrom(TraceFrame other) {
+        clear();
+        timestampNanos = other.timestampNanos;
+        System.arraycopy(other.camera, 0, camera, 0, POSE_SIZE);
+        for (int i = 0; i < other.imageCount; i++) {
+            int offset = i * POSE_SIZE;
+            float[] p = other.imagePoses;
+            addImage(other.imageNames[i], other.imageStates[i], other.imageMethods[i],
+                    p[offset], p[offset + 1], p[offset + 2],
+                    p[offset + 3], p[offset + 4], p[offset + 5], p[offset + 6]);
+        }
+        for (int i = 0; i < other.tapCount; i++) {
+            int offset = i * POSE_SIZE;
+            float[] p = other.tapPoses;
+            addTap(p[offset], p[offset + 1], p[offset + 2],
+                    p[offset + 3], p[offset + 4], p[offset + 5], p[offset + 6]);
+        }
+    }
+
+    public void setCamera(long timestampNanos, float tx, float ty, float tz,
+                          float qx, float qy, float qz, float qw) {
+        this.timestampNanos = timestampNanos;
+        setPose(camera, 0, tx, ty, tz, qx, qy, qz, qw);
+    }
+
+    public void addImage(String name, int trackingState, int trackingMethod,
+                         float tx, float ty, float tz, float qx, float qy, float qz, float qw) {
+        if (imageCount == imageNames.length) {
+            int capacity = 2 * imageCount;
+            imageNames = Arrays.copyOf(imageNames, capacity);
+            imageStates = Arrays.copyOf(imageStates, capacity);
+            imageMethods = Arrays.copyOf(imageMethods, capacity);
+            imagePoses = Arrays.copyOf(imagePoses, capacity * POSE_SIZE);
+        }
+        imageNames[imageCount] = name;
+        imageStates[imageCount] = trackingState;
+        imageMethods[imageCount] = trackingMethod;
+        setPose(imagePoses, imageCount * POSE_SIZE, tx, ty, tz, qx, qy, qz, qw);
+        imageCount++;
+    }
+
+    public void addTap(float tx, float ty, float tz, float qx, float qy, float qz, float qw) {
+        if ((tapCount + 1) * POSE_SIZE > tapPoses.length) {
+            tapPoses = Arrays.copyOf(tapPoses, 2 * tapPoses.length);
+        }
+        setPose(tapPoses, tapCount * POSE_SIZE, tx, ty, tz, qx, qy, qz, qw);
+        tapCount++;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /** Camera pose, read only. */
+    public float[] getCamera() {
+        return camera;
+    }
+
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    public String getImageName(int image) {
+        return imageNames[image];
+    }
+
+    public int getImageTrackingState(int image) {
+        return imageStates[image];
+    }
+
+    public int getImageTrackingMethod(int image) {
+        return imageMethods[image];
+    }
+
+    /** Center poses of the images, {@link #POSE_SIZE} floats each, read only. */
+    public float[] getImagePoses() {
+        return imagePoses;
+    }
+
+    public int getTapCount() {
+        return tapCount;
+    }
+
+    /** Hit poses of the taps, {@link #POSE_SIZE} floats each, read only. */
+    public float[] getTapPoses() {
+        return tapPoses;
+    }
+
+    private static void setPose(float[] poses, int offset, float tx, float ty, float tz,
+                                float qx, float qy, float qz, float qw) {
+        poses[offset] = tx;
+        poses[offset + 1] = ty;
+        poses[offset + 2] = tz;
+        poses[offset + 3] = qx;
+        poses[offset + 4] = qy;
+        poses[offset + 5] = qz;
+        poses[offset + 6] = qw;
+    }
+}
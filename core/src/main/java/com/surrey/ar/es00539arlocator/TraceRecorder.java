@@ -0,0 +1,122 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes frames to a {@link FrameTraceWriter} on its own thread, so that recording does no I/O
+ * on the thread that delivers the frames.
+ *
+ * <p>{@link #record} never blocks and does not allocate: each frame is copied into one of a
+ * fixed number of reused frames and queued. When the writer falls behind by all of them, frames
+ * are dropped and counted rather than waited for. Call {@link #record} and {@link #close} from
+ * one thread.
+ */
+public class TraceRecorder {
+    public static final int DEFAULT_QUEUED_FRAMES = 64;
+
+    private final FrameTraceWriter writer;
+    private final BlockingQueue<TraceFrame> free;
+    private final BlockingQueue<TraceFrame> queued;
+    // Queued after the last frame, stops the writer thread
+    private final TraceFrame end = new TraceFrame();
+    private final Thread thread;
+    private final CompletableFuture<Void> closed = new CompletableFuture<>();
+    private volatile IOException failure;
+    private boolean closing;
+
+    // Recording thread counters
+    private int frames;
+    private int dropped;
+
+    public TraceRecorder(FrameTraceWriter writer, int queuedFrames) {
+        this.writer = writer;
+        this.free = new ArrayBlockingQueue<>(queuedFrames);
+        this.queued = new ArrayBlockingQueue<>(queuedFrames + 1);
+        for (int i = 0; i < queuedFrames; i++) {
+            free.add(new TraceFrame());
+        }
+        this.thread = new Thread(this::run, "trace");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a copy of the frame, the frame itself can be cleared once this returns. Returns
+     * false once writing failed, see {@link #getFailure}.
+     */
+    public boolean record(TraceFrame frame) {
+        if (failure != null || closing) {
+            return false;
+        }
+        TraceFrame copy = free.poll();
+        if (copy == null) {
+            dropped++;
+            return true;
+        }
+        copy.copyFrom(frame);
+        queued.add(copy);
+        frames++;
+        return true;
+    }
+
+    /** Frames queued for writing so far, not counting dropped ones. */
+    public int getFrameCount() {
+        return frames;
+    }
+
+    /** Frames dropped because the writer was behind. */
+    public int getDroppedFrames() {
+        return dropped;
+    }
+
+    /** Why writing stopped, or null. */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Writes what is queued and closes the trace. The future completes once it is closed, or
+     * completes exceptionally when writing failed.
+     */
+    public CompletableFuture<Void> close() {
+        if (!closing) {
+            closing = true;
+            queued.add(end);
+        }
+        return closed;
+    }
+
+    private void run() {
+        try {
+            TraceFrame frame;
+            while ((frame = queued.take()) != end) {
+                if (failure == null) {
+                    try {
+                        writer.write(frame);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                frame.clear();
+                free.add(frame);
+            }
+        } catch (InterruptedException e) {
+            failure = new IOException("Trace writer interrupted", e);
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure == null) {
+            closed.complete(null);
+        } else {
+            closed.completeExceptionally(failure);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.surrey.ar.es00539arlocator;
+
+/**
+ * An object placed in the scene. Positions are in meters, relative to the earth marker, using
+ * the same axes as {@link FrameMath#relativePosition}.
+ */
+public class TrackedObject {
+    private final int id;
+    private final String type;
+    private final ObjectRegistry registry;
+
+    // Position in the registry's index frame, see ObjectRegistry#setOrigin
+    float indexX;
+    float indexY;
+    float indexZ;
+
+    // Grid cell currently holding the object
+    int cellX;
+    int cellZ;
+
+    // Index in ObjectRegistry#objects, -1 once removed
+    int slot;
+
+    TrackedObject(ObjectRegistry registry, int id, String type) {
+        this.registry = registry;
+        this.id = id;
+        this.type = type;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public float getX() {
+        return indexX - registry.originX;
+    }
+
+    public float getY() {
+        return indexY - registry.originY;
+    }
+
+    public float getZ() {
+        return indexZ - registry.originZ;
+    }
+}
@@ -0,0 +1,54 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free handoff of the latest value from one producer thread to one consumer thread. The
+ * producer fills {@link #getBack} and publishes it, the consumer acquires the most recently
+ * published buffer as {@link #getFront}. Neither side ever waits for the other, and values
+ * published faster than they are consumed are overwritten rather than queued.
+ *
+ * <p>The three buffers are allocated by the caller and swapped, never copied.
+ */
+public class TripleBuffer<T> {
+    // Set on the shared index while it holds a buffer the consumer has not seen
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    // Only touched by the producer
+    private int back = 0;
+    // Only touched by the consumer
+    private int front = 2;
+
+    public TripleBuffer(T first, T second, T third) {
+        this.buffers = new Object[] {first, second, third};
+    }
+
+    /** The buffer the producer fills next. */
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T) buffers[back];
+    }
+
+    /** Hands the back buffer to the consumer, the producer then gets another one to fill. */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /** Makes the last published buffer the front one, returns false if nothing new was published. */
+    public boolean acquire() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & INDEX;
+        return true;
+    }
+
+    /** The buffer the consumer reads, the last one acquired. */
+    @SuppressWarnings("unchecked")
+    public T getFront() {
+        return (T) buffers[front];
+    }
+}
@@ -0,0 +1,106 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Idle objects kept per type for reuse, up to a cap per type. Objects offered beyond the cap are
+ * dropped, and the releaser is told their type. Idle objects are reused last in, first out, so
+ * the ones most recently in use come back first.
+ *
+ * <p>Once every type has been seen, polling and offering do not allocate. Not thread safe.
+ */
+public class TypedPool<T> {
+    // Told the type of every object that is dropped
+    private final Consumer<String> releaser;
+    private final Map<String, ArrayDeque<T>> idle = new HashMap<>();
+    private int maxIdlePerType;
+    private long hits;
+    private long misses;
+    private long drops;
+
+    public TypedPool(Consumer<String> releaser, int maxIdlePerType) {
+        this.releaser = releaser;
+        this.maxIdlePerType = maxIdlePerType;
+    }
+
+    /** Idle objects kept per type, dropping any beyond it now. */
+    public void setMaxIdlePerType(int maxIdlePerType) {
+        this.maxIdlePerType = maxIdlePerType;
+        for (Map.Entry<String, ArrayDeque<T>> entry : idle.entrySet()) {
+            ArrayDeque<T> objects = entry.getValue();
+            while (objects.size() > maxIdlePerType) {
+                objects.pop();
+                drops++;
+                releaser.accept(entry.getKey());
+            }
+        }
+    }
+
+    /** An idle object of the type, or null if there is none and the caller must create one. */
+    public T poll(String type) {
+        ArrayDeque<T> objects = idle.get(type);
+        T object = objects == null ? null : objects.poll();
+        if (object != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return object;
+    }
+
+    /**
+     * Keeps an object no longer in use for its type. Returns false if the pool for the type was
+     * full and the object was dropped.
+     */
+    public boolean offer(String type, T object) {
+        ArrayDeque<T> objects = idle.get(type);
+        if (objects == null) {
+            objects = new ArrayDeque<>();
+            idle.put(type, objects);
+        }
+        if (objects.size() >= maxIdlePerType) {
+            drops++;
+            releaser.accept(type);
+            return false;
+        }
+        objects.push(object);
+        return true;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /** Offers that found the pool for their type full. */
+    public long getDrops() {
+        return drops;
+    }
+
+    public int getIdleCount() {
+        int count = 0;
+        for (ArrayDeque<T> objects : idle.values()) {
+            count += objects.size();
+        }
+        return count;
+    }
+
+    public int getIdleCount(String type) {
+        ArrayDeque<T> objects = idle.get(type);
+        return objects == null ? 0 : objects.size();
+    }
+
+    /** Writes the pool counters on one line, after the given name. */
+    public void dump(String name, Appendable out) throws IOException {
+        out.append(String.format(Locale.US, "%s %d hits, %d misses, %d drops, %d idle%n",
+                name, hits, misses, drops, getIdleCount()));
+    }
+}
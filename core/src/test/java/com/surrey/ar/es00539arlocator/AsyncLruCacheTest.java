@@ -0,0 +1,164 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncLruCacheTest {
+    private final Map<String, Integer> loads = new HashMap<>();
+
+    private CompletableFuture<String> load(String key) {
+        loads.merge(key, 1, Integer::sum);
+        return CompletableFuture.completedFuture(key + loads.get(key));
+    }
+
+    // Budget for two values of cost 1
+    private AsyncLruCache<String, String> newCache() {
+        return new AsyncLruCache<>(this::load, key -> 1L, 2, 2L);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        AsyncLruCache<String, String> cache = newCache();
+        cache.get("a");
+        cache.get("b");
+        cache.get("a");
+        cache.get("c");
+        assertTrue(cache.isLoaded("a"));
+        assertFalse(cache.isLoaded("b"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void retainedValuesAreNotEvicted() {
+        AsyncLruCache<String, String> cache = newCache();
+        cache.retain("a");
+        String first = cache.get("a").join();
+        cache.get("b");
+        cache.get("c");
+        cache.get("d");
+        assertTrue(cache.isLoaded("a"));
+        // Still in use, so asking again must not load a second copy
+        assertSame(first, cache.get("a").join());
+        assertEquals(Integer.valueOf(1), loads.get("a"));
+    }
+
+    @Test
+    public void releaseLetsValuesBeEvicted() {
+        AsyncLruCache<String, String> cache = newCache();
+        cache.retain("a");
+        cache.retain("a");
+        cache.retain("b");
+        cache.get("a");
+        cache.get("b");
+        cache.get("c");
+        // Over budget while both are retained
+        assertEquals(3L, cache.getLoadedCost());
+        cache.release("a");
+        assertTrue(cache.isLoaded("a"));
+        cache.release("a");
+        assertFalse(cache.isLoaded("a"));
+        assertTrue(cache.isLoaded("b"));
+        assertEquals(2L, cache.getLoadedCost());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releaseWithoutRetainFails() {
+        newCache().release("a");
+    }
+
+    @Test
+    public void concurrentRequestsShareOneLoad() {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        AsyncLruCache<String, String> cache =
+                new AsyncLruCache<>(key -> pending, key -> 1L, 1, 2L);
+        CompletableFuture<String> first = cache.get("a");
+        CompletableFuture<String> second = cache.prefetch("a");
+        assertSame(first, second);
+        assertEquals(1, cache.getSharedLoads());
+        pending.complete("value");
+        assertEquals("value", first.join());
+        assertTrue(cache.isLoaded("a"));
+    }
+
+    @Test
+    public void prefetchBurstWaitsForBudget() {
+        Map<String, CompletableFuture<String>> pending = new HashMap<>();
+        AsyncLruCache<String, String> cache = new AsyncLruCache<>(key -> {
+            CompletableFuture<String> load = new CompletableFuture<>();
+            pending.put(key, load);
+            return load;
+        }, key -> 1L, 4, 2L);
+        String[] keys = {"a", "b", "c", "d", "e"};
+        for (String key : keys) {
+            cache.prefetch(key);
+        }
+        // Slots for four, budget for two
+        assertEquals(2, pending.size());
+        assertEquals(2L, cache.getRunningCost());
+
+        for (String key : keys) {
+            pending.get(key).complete(key);
+            assertTrue(cache.getLoadedCost() + cache.getRunningCost() <= 2L);
+        }
+        assertEquals(0L, cache.getRunningCost());
+        assertTrue(cache.isLoaded("d"));
+        assertTrue(cache.isLoaded("e"));
+        assertEquals(3, cache.getEvictions());
+    }
+
+    @Test
+    public void loadOverTheWholeBudgetStillStarts() {
+        AsyncLruCache<String, String> cache = new AsyncLruCache<>(this::load, key -> 5L, 2, 2L);
+        assertEquals("a1", cache.get("a").join());
+        assertEquals("b1", cache.get("b").join());
+        assertFalse(cache.isLoaded("a"));
+    }
+
+    @Test
+    public void failedLoadIsNotRetried() {
+        AsyncLruCache<String, String> cache = new AsyncLruCache<>(key -> {
+            loads.merge(key, 1, Integer::sum);
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Broken " + key));
+            return failed;
+        }, key -> 1L, 2, 2L);
+        CompletableFuture<String> first = cache.get("a");
+        assertTrue(first.isCompletedExceptionally());
+        assertSame(first, cache.get("a"));
+        assertSame(first, cache.prefetch("a"));
+        assertEquals(Integer.valueOf(1), loads.get("a"));
+        assertEquals(2, cache.getFailedHits());
+        assertFalse(cache.isLoaded("a"));
+        assertEquals(0L, cache.getLoadedCost());
+        assertEquals(0L, cache.getRunningCost());
+
+        // The least recently requested failure is forgotten once there are too many
+        for (int i = 0; i < AsyncLruCache.MAX_FAILURES; i++) {
+            cache.get("broken" + i);
+        }
+        cache.get("a");
+        assertEquals(Integer.valueOf(2), loads.get("a"));
+    }
+
+    @Test
+    public void loaderThatThrowsIsRememberedAsFailed() {
+        AsyncLruCache<String, String> cache = new AsyncLruCache<>(key -> {
+            loads.merge(key, 1, Integer::sum);
+            throw new IllegalArgumentException("Unknown " + key);
+        }, key -> 1L, 1, 2L);
+        assertTrue(cache.get("a").isCompletedExceptionally());
+        assertTrue(cache.get("a").isCompletedExceptionally());
+        assertEquals(Integer.valueOf(1), loads.get("a"));
+        // The slot was given back
+        assertTrue(cache.get("b").isCompletedExceptionally());
+        assertEquals(Integer.valueOf(1), loads.get("b"));
+    }
+}
@@ -0,0 +1,81 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BitmapBudgetTest {
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void sampleSizeKeepsTheRequestedSize() {
+        assertEquals(1, BitmapBudget.sampleSizeFor(1000, 800, 1000, 800));
+        assertEquals(1, BitmapBudget.sampleSizeFor(1000, 800, 600, 500));
+        assertEquals(2, BitmapBudget.sampleSizeFor(1000, 800, 500, 400));
+        assertEquals(4, BitmapBudget.sampleSizeFor(4000, 3000, 1000, 700));
+        // Both directions must stay large enough
+        assertEquals(1, BitmapBudget.sampleSizeFor(4000, 300, 1000, 200));
+        assertEquals(1, BitmapBudget.sampleSizeFor(100, 100, 2000, 2000));
+    }
+
+    @Test
+    public void bytesRoundUpLikeTheDecoder() {
+        assertEquals(1000L * 800 * 4, BitmapBudget.bytesFor(1000, 800, 1, 4));
+        assertEquals(500L * 400 * 2, BitmapBudget.bytesFor(1000, 800, 2, 2));
+        assertEquals(334L * 267 * 4, BitmapBudget.bytesFor(1001, 801, 3, 4));
+    }
+
+    @Test
+    public void fitSamplesFurtherAsTheBudgetRunsOut() {
+        BitmapBudget budget = new BitmapBudget(8 * MB);
+        // 1024 x 1024 ARGB is 4 MB
+        assertEquals(1, budget.fit(1024, 1024, 4, 1, 4));
+        budget.add(5 * MB);
+        assertEquals(2, budget.fit(1024, 1024, 4, 1, 4));
+        budget.add(2 * MB + MB / 2);
+        assertEquals(4, budget.fit(1024, 1024, 4, 1, 4));
+        // Never past the given maximum, even over budget
+        budget.add(2 * MB);
+        assertEquals(4, budget.fit(1024, 1024, 4, 1, 4));
+        assertEquals(2, budget.fit(1024, 1024, 4, 2, 2));
+    }
+
+    @Test
+    public void countsDecodedAndPeakBytes() {
+        BitmapBudget budget = new BitmapBudget(10 * MB);
+        budget.add(3 * MB);
+        budget.add(4 * MB);
+        budget.remove(3 * MB);
+        budget.add(1 * MB);
+        assertEquals(5 * MB, budget.getDecodedBytes());
+        assertEquals(7 * MB, budget.getPeakBytes());
+        budget.remove(5 * MB);
+        assertEquals(0, budget.getDecodedBytes());
+        assertEquals(7 * MB, budget.getPeakBytes());
+        assertEquals(10 * MB, budget.getMaxBytes());
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentAccountingAddsUp() throws InterruptedException {
+        BitmapBudget budget = new BitmapBudget(MB);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    budget.add(100);
+                    budget.remove(100);
+                }
+                budget.add(10);
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(40, budget.getDecodedBytes());
+        assertTrue(budget.getPeakBytes() >= 100 && budget.getPeakBytes() <= 400 + 40);
+    }
+}
@@ -0,0 +1,128 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BreadcrumbTrailTest {
+    private static final float DELTA = 1e-6f;
+
+    @Test
+    public void droppedSamplesStayWithinToleranceOfTheTrail() {
+        Random random = new Random(11);
+        BreadcrumbTrail trail = new BreadcrumbTrail(100_000, BreadcrumbTrail.DEFAULT_TOLERANCE,
+                BreadcrumbTrail.DEFAULT_MIN_SPACING);
+        int samples = 20_000;
+        float[] xs = new float[samples];
+        float[] zs = new float[samples];
+        // A meandering walk at about 3 cm per frame, with camera jitter
+        float x = 0f;
+        float z = 0f;
+        float heading = 0f;
+        int covered = 0;
+        for (int i = 0; i < samples; i++) {
+            heading += (random.nextFloat() - 0.5f) * 0.3f;
+            x += 0.03f * (float) Math.cos(heading) + (random.nextFloat() - 0.5f) * 0.01f;
+            z += 0.03f * (float) Math.sin(heading) + (random.nextFloat() - 0.5f) * 0.01f;
+            xs[i] = x;
+            zs[i] = z;
+            if (trail.add(x, z)) {
+                // Every sample before this one is behind a kept point now
+                covered = i;
+            }
+        }
+        assertTrue(trail.size() < samples / 5);
+        assertTrue(covered > samples - 100);
+
+        float limit = BreadcrumbTrail.DEFAULT_TOLERANCE + BreadcrumbTrail.DEFAULT_MIN_SPACING;
+        for (int i = 0; i < covered; i++) {
+            float best = Float.MAX_VALUE;
+            for (int point = 1; point < trail.size(); point++) {
+                best = Math.min(best, FrameMath.segmentDistanceSquared(
+                        trail.getX(point - 1), trail.getZ(point - 1),
+                        trail.getX(point), trail.getZ(point), xs[i], zs[i]));
+            }
+            assertTrue("sample " + i + " is " + Math.sqrt(best) + " m off",
+                    best <= limit * limit + DELTA);
+        }
+    }
+
+    @Test
+    public void ringKeepsTheNewestPointsInOrder() {
+        BreadcrumbTrail trail = new BreadcrumbTrail(4, 0.1f, 0.05f);
+        // A zigzag of 1 m steps keeps every corner: each sample keeps the one before it
+        int samples = 11;
+        for (int i = 0; i < samples; i++) {
+            trail.add(i, i % 2);
+        }
+        assertEquals(4, trail.size());
+        assertEquals(4, trail.getCapacity());
+        for (int point = 0; point < 4; point++) {
+            int sample = samples - 5 + point;
+            assertEquals(sample, trail.getX(point), DELTA);
+            assertEquals(sample % 2, trail.getZ(point), DELTA);
+        }
+    }
+
+    @Test
+    public void straightWalkKeepsOnlyItsEnds() {
+        BreadcrumbTrail trail = new BreadcrumbTrail();
+        for (int i = 0; i <= 100; i++) {
+            trail.add(i * 0.1f, 0f);
+        }
+        // The head is not kept until the walk turns
+        assertEquals(1, trail.size());
+        assertTrue(trail.add(10f, 5f));
+        assertEquals(2, trail.size());
+        assertEquals(10f, trail.getX(1), DELTA);
+        assertEquals(0f, trail.getZ(1), DELTA);
+    }
+
+    @Test
+    public void versionChangesOnlyWithTheKeptPoints() {
+        BreadcrumbTrail trail = new BreadcrumbTrail();
+        int version = trail.getVersion();
+        assertTrue(trail.add(0f, 0f));
+        assertNotEquals(version, trail.getVersion());
+
+        // Jitter and moving the head leave the kept points and the version alone
+        version = trail.getVersion();
+        assertFalse(trail.add(0.01f, 0f));
+        assertFalse(trail.add(1f, 0f));
+        assertFalse(trail.add(2f, 0f));
+        assertEquals(version, trail.getVersion());
+
+        assertTrue(trail.add(2f, 1f));
+        assertNotEquals(version, trail.getVersion());
+    }
+
+    @Test
+    public void clearForgetsTheTrailAndTheHead() {
+        BreadcrumbTrail trail = new BreadcrumbTrail();
+        trail.add(0f, 0f);
+        trail.add(1f, 0f);
+        int version = trail.getVersion();
+        trail.clear();
+        assertEquals(0, trail.size());
+        assertNotEquals(version, trail.getVersion());
+
+        // The first sample after a clear is kept straight away, the old head is gone
+        assertTrue(trail.add(5f, 5f));
+        assertEquals(1, trail.size());
+        assertEquals(5f, trail.getX(0), DELTA);
+        assertFalse(trail.add(6f, 5f));
+        assertTrue(trail.add(6f, 6f));
+        assertEquals(6f, trail.getX(1), DELTA);
+        assertEquals(5f, trail.getZ(1), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapacityBelowTwo() {
+        new BreadcrumbTrail(1, 0.1f, 0.05f);
+    }
+}
@@ -0,0 +1,125 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FloorPlanTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Every tile holds its own level, column and row, so misplaced tiles show up
+    private static byte[] tile(int level, int column, int row) {
+        return new byte[] {(byte) level, (byte) column, (byte) row};
+    }
+
+    private File write(float pixelsPerMeter) throws IOException {
+        OccupancyGrid grid = new OccupancyGrid(70, 45, 10);
+        for (int column = 0; column < grid.getColumns(); column++) {
+            grid.setBlocked(column, 20, true);
+        }
+        grid.setBlocked(69, 44, true);
+        FloorPlanWriter writer = new FloorPlanWriter(700, 450, pixelsPerMeter);
+        writer.setOrigin(298, 250);
+        writer.addMarker("augmented_images_earth", 298f, 250f);
+        writer.addMarker("door", 10.5f, 449f);
+        writer.setGrid(grid);
+        File file = new File(folder.getRoot(), "plan.arfp");
+        // Leave out the last tile of the full resolution level
+        writer.write(file, 256, (level, column, row, bounds) ->
+                level == 0 && column == 2 && row == 1 ? new byte[0] : tile(level, column, row));
+        return file;
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        FloorPlan plan = FloorPlan.open(write(MapProjection.PIXELS_PER_METER));
+        assertEquals(700, plan.getWidth());
+        assertEquals(450, plan.getHeight());
+        assertEquals(298, plan.getOriginX());
+        assertEquals(250, plan.getOriginY());
+        assertEquals(256, plan.getTileSize());
+
+        List<String> markers = new ArrayList<>();
+        plan.forEachMarker((name, x, y) -> markers.add(name + " " + x + " " + y));
+        assertEquals("[augmented_images_earth 298.0 250.0, door 10.5 449.0]", markers.toString());
+
+        OccupancyGrid grid = plan.readGrid();
+        assertEquals(70, grid.getColumns());
+        assertEquals(45, grid.getRows());
+        assertEquals(10, grid.getCellPixels());
+        int blocked = 0;
+        for (int cell = 0; cell < grid.getCellCount(); cell++) {
+            if (grid.isBlocked(cell)) {
+                blocked++;
+            }
+        }
+        assertEquals(71, blocked);
+        assertTrue(grid.isBlocked(13, 20));
+        assertTrue(grid.isBlocked(69, 44));
+        assertFalse(grid.isBlocked(13, 21));
+
+        TilePyramid pyramid = plan.getPyramid();
+        for (int level = 0; level < pyramid.getLevelCount(); level++) {
+            for (int row = 0; row < pyramid.getRows(level); row++) {
+                for (int column = 0; column < pyramid.getColumns(level); column++) {
+                    ByteBuffer tile = plan.getTile(level, column, row);
+                    if (level == 0 && column == 2 && row == 1) {
+                        assertNull(tile);
+                        continue;
+                    }
+                    byte[] bytes = new byte[tile.remaining()];
+                    tile.get(bytes);
+                    assertEquals(Arrays.toString(tile(level, column, row)),
+                            Arrays.toString(bytes));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectsAnotherScale() throws IOException {
+        File file = write(50f);
+        try {
+            FloorPlan.open(file);
+            fail();
+        } catch (IOException expected) {
+            // Drawn at the wrong size otherwise
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedPackage() throws IOException {
+        File file = write(MapProjection.PIXELS_PER_METER);
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            access.setLength(FloorPlan.HEADER_SIZE + 4);
+        }
+        try {
+            FloorPlan.open(file);
+            fail();
+        } catch (IOException expected) {
+            // Section out of range
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherVersion() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FloorPlan.HEADER_SIZE);
+        header.putInt(0, FloorPlan.MAGIC).putInt(4, 1);
+        FloorPlan.wrap(header);
+    }
+}
@@ -0,0 +1,150 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlowFieldTest {
+    // A long thin grid has more padded cells but fewer cells than a square one after it
+    @Test
+    public void solvesSmallerGridAfterLongerOne() {
+        FlowField field = new FlowField();
+        field.solve(new OccupancyGrid(1, 10, 10), 0);
+        OccupancyGrid square = new OccupancyGrid(4, 4, 10);
+        field.solve(square, 15);
+        assertEquals(3, field.getDistance(0) / 2);
+        assertEquals(0, field.getDistance(15));
+    }
+
+    @Test
+    public void distancesMatchBreadthFirstSearch() {
+        Random random = new Random(11);
+        FlowField field = new FlowField();
+        for (int round = 0; round < 50; round++) {
+            OccupancyGrid grid = randomGrid(random, 1 + random.nextInt(40), 1 + random.nextInt(40));
+            int target = random.nextInt(grid.getCellCount());
+            field.solve(grid, target);
+            int[] expected = breadthFirst(grid, target);
+            for (int cell = 0; cell < grid.getCellCount(); cell++) {
+                assertEquals(expected[cell], field.getDistance(cell));
+            }
+        }
+    }
+
+    // Directions lead to the target through walkable cells without cutting wall corners
+    @Test
+    public void directionsReachTheTarget() {
+        Random random = new Random(5);
+        FlowField field = new FlowField();
+        for (int round = 0; round < 50; round++) {
+            OccupancyGrid grid = randomGrid(random, 2 + random.nextInt(30), 2 + random.nextInt(30));
+            int target = random.nextInt(grid.getCellCount());
+            field.solve(grid, target);
+            int columns = grid.getColumns();
+            for (int start = 0; start < grid.getCellCount(); start++) {
+                if (field.getDistance(start) == FlowField.UNREACHABLE) {
+                    assertEquals(FlowField.NONE, field.getDirection(start));
+                    continue;
+                }
+                int cell = start;
+                int steps = 0;
+                while (cell != target) {
+                    int direction = field.getDirection(cell);
+                    assertTrue(direction != FlowField.NONE);
+                    int dc = Math.round(Math.signum(FlowField.getColumnStep(direction)));
+                    int dr = Math.round(Math.signum(FlowField.getRowStep(direction)));
+                    int column = cell % columns;
+                    int row = cell / columns;
+                    if (dc != 0 && dr != 0) {
+                        assertFalse(grid.isBlocked(column + dc, row));
+                        assertFalse(grid.isBlocked(column, row + dr));
+                    }
+                    cell = (row + dr) * columns + column + dc;
+                    assertTrue(cell == target || !grid.isBlocked(cell));
+                    assertTrue(++steps <= field.getDistance(start));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void walledOffCellsAreUnreachable() {
+        OccupancyGrid grid = new OccupancyGrid(5, 1, 10);
+        grid.setBlocked(2, 0, true);
+        FlowField field = new FlowField();
+        field.solve(grid, 0);
+        assertEquals(1, field.getDistance(1));
+        assertEquals(FlowField.UNREACHABLE, field.getDistance(2));
+        assertEquals(FlowField.UNREACHABLE, field.getDistance(4));
+        assertEquals(FlowField.NONE, field.getDirection(4));
+        assertEquals(FlowField.NONE, field.getDirection(0));
+    }
+
+    @Test
+    public void blockedTargetCanBeReached() {
+        OccupancyGrid grid = new OccupancyGrid(3, 1, 10);
+        grid.setBlocked(2, 0, true);
+        FlowField field = new FlowField();
+        field.solve(grid, 2);
+        assertEquals(2, field.getDistance(0));
+    }
+
+    // A building floor at 10 cm cells, solved whenever the target changes
+    @Test(timeout = 10000)
+    public void solvesLargeFloorQuickly() {
+        OccupancyGrid grid = randomGrid(new Random(1), 1000, 500);
+        FlowField field = new FlowField();
+        field.solve(grid, 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            field.solve(grid, i * 997);
+        }
+        long millis = (System.nanoTime() - start) / 5 / 1_000_000;
+        assertTrue("solve took " + millis + " ms", millis < 500);
+    }
+
+    private static OccupancyGrid randomGrid(Random random, int columns, int rows) {
+        OccupancyGrid grid = new OccupancyGrid(columns, rows, 10);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                grid.setBlocked(column, row, random.nextInt(4) == 0);
+            }
+        }
+        return grid;
+    }
+
+    // Steps to the target through walkable cells, 4-connected
+    private static int[] breadthFirst(OccupancyGrid grid, int target) {
+        int columns = grid.getColumns();
+        int rows = grid.getRows();
+        int[] distance = new int[grid.getCellCount()];
+        Arrays.fill(distance, FlowField.UNREACHABLE);
+        distance[target] = 0;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(target);
+        int[][] steps = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            for (int[] step : steps) {
+                int column = cell % columns + step[0];
+                int row = cell / columns + step[1];
+                if (column < 0 || row < 0 || column >= columns || row >= rows
+                        || grid.isBlocked(column, row)) {
+                    continue;
+                }
+                int next = row * columns + column;
+                if (distance[next] == FlowField.UNREACHABLE) {
+                    distance[next] = distance[cell] + 1;
+                    queue.add(next);
+                }
+            }
+        }
+        return distance;
+    }
+}
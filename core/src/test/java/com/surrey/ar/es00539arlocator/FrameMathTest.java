@@ -0,0 +1,64 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameMathTest {
+    private static final int CALLS = 100000;
+
+    @Test
+    public void relativePositionFlipsForward() {
+        float[] out = new float[3];
+        FrameMath.relativePosition(1f, 2f, 3f, 4f, 6f, 1f, out);
+        assertArrayEquals(new float[] {3f, 4f, 2f}, out, 0f);
+    }
+
+    @Test
+    public void lookRotationTurnsZTowardsDirection() {
+        float[] q = new float[4];
+        assertTrue(FrameMath.lookRotation(1f, 0f, 0f, 0f, 1f, 0f, q));
+        // A quarter turn around y takes +z to +x
+        float half = (float) Math.sqrt(0.5);
+        assertArrayEquals(new float[] {0f, half, 0f, half}, q, 1e-6f);
+        assertFalse(FrameMath.lookRotation(0f, 0f, 0f, 0f, 1f, 0f, q));
+    }
+
+    @Test
+    public void segmentDistanceClampsToEnds() {
+        assertEquals(1f, FrameMath.segmentDistanceSquared(0f, 0f, 2f, 0f, 1f, 1f), 1e-6f);
+        assertEquals(2f, FrameMath.segmentDistanceSquared(0f, 0f, 2f, 0f, 3f, 1f), 1e-6f);
+    }
+
+    // The per-frame math must not feed the GC
+    @Test
+    public void frameMathDoesNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        float[] position = new float[3];
+        float[] rotation = new float[4];
+        float sum = 0f;
+        long thread = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < CALLS; i++) {
+            FrameMath.relativePosition(0f, 0f, 0f, i, 1f, -i, position);
+            FrameMath.lookRotation(position[0], 1f, position[2], 0f, 1f, 0f, rotation);
+            sum += FrameMath.segmentDistanceSquared(0f, 0f, i, 1f, 2f, 3f) + rotation[3];
+        }
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+        // Reading the counter allocates a little, one array per call would be megabytes
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+        assertTrue(sum > 0f);
+    }
+}
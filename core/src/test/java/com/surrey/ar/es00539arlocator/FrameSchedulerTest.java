@@ -0,0 +1,160 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameSchedulerTest {
+    private static final long MILLI = 1_000_000L;
+    private static final long FRAME = 16 * MILLI;
+
+    // Only moves when a task or the test says so
+    private long now;
+    private final Clock clock = () -> now;
+    private final List<String> ran = new ArrayList<>();
+    private FrameScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        now = 1000 * MILLI;
+        scheduler = new FrameScheduler(clock, 5 * MILLI);
+    }
+
+    private Runnable work(String name, long nanos) {
+        return () -> {
+            ran.add(name);
+            now += nanos;
+        };
+    }
+
+    private void frame() {
+        ran.clear();
+        scheduler.runFrame();
+        now += FRAME;
+    }
+
+    @Test
+    public void runsTasksInPriorityOrder() {
+        scheduler.add("normal", FrameScheduler.PRIORITY_NORMAL, work("normal", 0));
+        scheduler.add("critical", FrameScheduler.PRIORITY_CRITICAL, work("critical", 0));
+        scheduler.add("high", FrameScheduler.PRIORITY_HIGH, work("high", 0));
+        scheduler.add("critical2", FrameScheduler.PRIORITY_CRITICAL, work("critical2", 0));
+        frame();
+        assertEquals("[critical, critical2, high, normal]", ran.toString());
+        assertEquals(0, scheduler.getOverBudgetFrames());
+    }
+
+    @Test
+    public void limitsTasksToTheirRate() {
+        FrameScheduler.Task map =
+                scheduler.add("map", FrameScheduler.PRIORITY_NORMAL, work("map", 0));
+        map.setMaxRate(10f);
+        for (int i = 0; i < 60; i++) {
+            frame();
+        }
+        // 60 frames of 16 ms are 960 ms, one run every 7th frame at 112 ms apart
+        assertEquals(9, map.getRuns());
+        assertEquals(51, map.getSkips());
+        assertEquals(0, map.getDeferrals());
+    }
+
+    @Test
+    public void defersTasksOverBudgetToTheNextFrame() {
+        scheduler.add("guidance", FrameScheduler.PRIORITY_CRITICAL, work("guidance", 6 * MILLI));
+        FrameScheduler.Task images =
+                scheduler.add("images", FrameScheduler.PRIORITY_HIGH, work("images", 0));
+        images.setMaxRate(1f);
+        frame();
+        assertEquals("[guidance]", ran.toString());
+        assertEquals(1, images.getDeferrals());
+        assertEquals(1, scheduler.getOverBudgetFrames());
+
+        // Due again on the next frame, whatever its rate
+        scheduler.setBudgetNanos(10 * MILLI);
+        frame();
+        assertEquals("[guidance, images]", ran.toString());
+        assertFalse(images.wasDeferred());
+        assertEquals(1, images.getRuns());
+        frame();
+        assertEquals("[guidance]", ran.toString());
+        assertEquals(1, images.getSkips());
+    }
+
+    @Test
+    public void deferredTaskSeesItWasDeferred() {
+        scheduler.add("guidance", FrameScheduler.PRIORITY_CRITICAL, () -> now += 6 * MILLI);
+        boolean[] deferred = new boolean[1];
+        FrameScheduler.Task task = scheduler.add("task", FrameScheduler.PRIORITY_NORMAL,
+                () -> deferred[0] = scheduler.getTasks().get(1).wasDeferred());
+        frame();
+        scheduler.setBudgetNanos(10 * MILLI);
+        frame();
+        assertEquals(1, task.getRuns());
+        assertTrue(deferred[0]);
+    }
+
+    @Test
+    public void criticalTasksRunOverBudget() {
+        scheduler.add("slow", FrameScheduler.PRIORITY_CRITICAL, work("slow", 20 * MILLI));
+        scheduler.add("guidance", FrameScheduler.PRIORITY_CRITICAL, work("guidance", 0));
+        frame();
+        assertEquals("[slow, guidance]", ran.toString());
+        assertEquals(0, scheduler.getOverBudgetFrames());
+    }
+
+    @Test
+    public void busyFramesCannotStarveATask() {
+        scheduler.add("guidance", FrameScheduler.PRIORITY_CRITICAL, work("guidance", 6 * MILLI));
+        FrameScheduler.Task map =
+                scheduler.add("map", FrameScheduler.PRIORITY_NORMAL, work("map", 0));
+        for (int i = 0; i < 8; i++) {
+            frame();
+        }
+        // Deferred three frames, run on the fourth, twice over
+        assertEquals(2, map.getRuns());
+        assertEquals(6, map.getDeferrals());
+        assertEquals(6, scheduler.getOverBudgetFrames());
+        assertEquals(8, scheduler.getFrames());
+    }
+
+    // The budget counts from the start of the frame, so it is the sum of the tasks that matters
+    @Test
+    public void budgetCoversAllTasksOfAFrame() {
+        FrameScheduler.Task a =
+                scheduler.add("a", FrameScheduler.PRIORITY_HIGH, work("a", 3 * MILLI));
+        scheduler.add("b", FrameScheduler.PRIORITY_HIGH, work("b", 3 * MILLI));
+        FrameScheduler.Task c =
+                scheduler.add("c", FrameScheduler.PRIORITY_HIGH, work("c", 3 * MILLI));
+        for (int i = 0; i < FrameScheduler.DEFAULT_MAX_DEFERRED_FRAMES; i++) {
+            frame();
+            assertEquals("[a, b]", ran.toString());
+        }
+        frame();
+        assertEquals("[a, b, c]", ran.toString());
+        assertEquals(4, a.getRuns());
+        assertEquals(1, c.getRuns());
+        assertEquals(FrameScheduler.DEFAULT_MAX_DEFERRED_FRAMES, c.getDeferrals());
+    }
+
+    @Test
+    public void dumpsOneLinePerTask() throws IOException {
+        scheduler.add("guidance", FrameScheduler.PRIORITY_CRITICAL, work("guidance", 0));
+        scheduler.add("map", FrameScheduler.PRIORITY_NORMAL, work("map", 0)).setMaxRate(1f);
+        frame();
+        frame();
+        StringBuilder out = new StringBuilder();
+        scheduler.dump(out);
+        String[] lines = out.toString().split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertEquals("2 frames, 0 over budget", lines[0]);
+        assertTrue(lines[1].startsWith("guidance "));
+        assertTrue(lines[2].matches("map\\s+1 runs\\s+1 skipped\\s+0 deferred"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameTraceWriterTest {
+    static LocationRegistry locations() {
+        LocationRegistry locations = new LocationRegistry();
+        locations.addLocation(new Location("Office", "office", 298, 250));
+        locations.addOriginMarker("earth", "Office");
+        locations.addObjectMarker("keys_marker", "Office", "keys");
+        return locations;
+    }
+
+    static void fill(TraceFrame frame, int i) {
+        frame.clear();
+        frame.setCamera(1000L * i, i, 1f, -i, 0f, 0f, 0f, 1f);
+        if (i % 3 == 0) {
+            frame.addImage("earth", TraceFrame.TRACKING, TraceFrame.FULL_TRACKING,
+                    0.5f, 0f, -1f, 0f, 0f, 0f, 1f);
+        }
+        if (i % 5 == 0) {
+            frame.addTap(i, 0f, 2f, 0f, 0f, 0f, 1f);
+        }
+    }
+
+    @Test
+    public void frameSizesMatchTheFormat() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameTraceWriter writer = new FrameTraceWriter(bytes, locations());
+        TraceFrame frame = new TraceFrame();
+        writer.close();
+        int header = bytes.size();
+
+        bytes.reset();
+        writer = new FrameTraceWriter(bytes, locations());
+        frame.setCamera(1L, 0f, 0f, 0f, 0f, 0f, 0f, 1f);
+        writer.write(frame);
+        frame.addImage("earth", TraceFrame.TRACKING, TraceFrame.FULL_TRACKING,
+                0f, 0f, 0f, 0f, 0f, 0f, 1f);
+        frame.addTap(0f, 0f, 0f, 0f, 0f, 0f, 1f);
+        writer.write(frame);
+        writer.close();
+        // Name record: tag, id and the name as modified UTF-8
+        int name = 1 + 2 + 2 + "earth".length();
+        assertEquals(header + 41 + name + 41 + 32 + 28, bytes.size());
+    }
+
+    @Test
+    public void readerGetsBackWhatWasWritten() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameTraceWriter writer = new FrameTraceWriter(bytes, locations());
+        TraceFrame frame = new TraceFrame();
+        for (int i = 0; i < 20; i++) {
+            fill(frame, i);
+            writer.write(frame);
+        }
+        writer.close();
+        assertEquals(20, writer.getFrameCount());
+
+        FrameTraceReader reader = new FrameTraceReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(2, reader.getLocations().getMarkerCount());
+        TraceFrame expected = new TraceFrame();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(reader.read(frame));
+            fill(expected, i);
+            assertSameFrame(expected, frame);
+        }
+        assertFalse(reader.read(frame));
+        reader.close();
+    }
+
+    static void assertSameFrame(TraceFrame expected, TraceFrame actual) {
+        assertEquals(expected.getTimestampNanos(), actual.getTimestampNanos());
+        for (int i = 0; i < TraceFrame.POSE_SIZE; i++) {
+            assertEquals(expected.getCamera()[i], actual.getCamera()[i], 0f);
+        }
+        assertEquals(expected.getImageCount(), actual.getImageCount());
+        for (int i = 0; i < expected.getImageCount(); i++) {
+            assertEquals(expected.getImageName(i), actual.getImageName(i));
+            assertEquals(expected.getImageTrackingState(i), actual.getImageTrackingState(i));
+            assertEquals(expected.getImageTrackingMethod(i), actual.getImageTrackingMethod(i));
+        }
+        for (int i = 0; i < expected.getImageCount() * TraceFrame.POSE_SIZE; i++) {
+            assertEquals(expected.getImagePoses()[i], actual.getImagePoses()[i], 0f);
+        }
+        assertEquals(expected.getTapCount(), actual.getTapCount());
+        for (int i = 0; i < expected.getTapCount() * TraceFrame.POSE_SIZE; i++) {
+            assertEquals(expected.getTapPoses()[i], actual.getTapPoses()[i], 0f);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LocationRegistryTest {
+    private static final String[] TYPES = {"keys", "oculos", "wallet"};
+    private static final int LOCATIONS = 500;
+    private static final int OBJECT_MARKERS = 10;
+
+    // Locations in a corridor, each the neighbor of the next
+    private static LocationRegistry corridor(int locations, int objectMarkers) {
+        LocationRegistry registry = new LocationRegistry();
+        for (int i = 0; i < locations; i++) {
+            registry.addLocation(new Location("Room " + i, "room_" + i, 100, 100));
+            registry.addOriginMarker("origin_" + i, "Room " + i);
+            for (int j = 0; j < objectMarkers; j++) {
+                registry.addObjectMarker("object_" + i + "_" + j, "Room " + i,
+                        TYPES[j % TYPES.length]);
+            }
+            if (i > 0) {
+                registry.addNeighbors("Room " + (i - 1), "Room " + i);
+            }
+        }
+        return registry;
+    }
+
+    @Test
+    public void lookupFindsEveryMarker() {
+        LocationRegistry registry = corridor(LOCATIONS, OBJECT_MARKERS);
+        assertEquals(LOCATIONS * (1 + OBJECT_MARKERS), registry.getMarkerCount());
+        for (int i = 0; i < LOCATIONS; i++) {
+            Location location = registry.getLocation("Room " + i);
+            LocationRegistry.Marker origin = registry.lookup("origin_" + i);
+            assertSame(location, origin.getLocation());
+            assertTrue(origin.isOrigin());
+            assertNull(origin.getObjectType());
+            for (int j = 0; j < OBJECT_MARKERS; j++) {
+                LocationRegistry.Marker object = registry.lookup("object_" + i + "_" + j);
+                assertSame(location, object.getLocation());
+                assertFalse(object.isOrigin());
+                assertEquals(TYPES[j % TYPES.length], object.getObjectType());
+            }
+            assertEquals(1 + OBJECT_MARKERS, registry.getMarkers(location).size());
+        }
+        assertNull(registry.lookup("origin_" + LOCATIONS));
+    }
+
+    @Test
+    public void detectableMarkersAreOwnAndNeighborMarkers() {
+        LocationRegistry registry = corridor(LOCATIONS, OBJECT_MARKERS);
+        for (int i = 0; i < LOCATIONS; i++) {
+            Location location = registry.getLocation("Room " + i);
+            Set<String> expected = new HashSet<>();
+            for (int room = Math.max(0, i - 1); room <= Math.min(LOCATIONS - 1, i + 1); room++) {
+                expected.add("origin_" + room);
+                for (int j = 0; j < OBJECT_MARKERS; j++) {
+                    expected.add("object_" + room + "_" + j);
+                }
+            }
+            List<LocationRegistry.Marker> detectable = registry.getDetectableMarkers(location);
+            assertEquals(expected.size(), detectable.size());
+            for (LocationRegistry.Marker marker : detectable) {
+                assertTrue(expected.contains(marker.getName()));
+            }
+        }
+    }
+
+    @Test
+    public void unknownLocationDetectsEveryOriginMarker() {
+        LocationRegistry registry = corridor(LOCATIONS, OBJECT_MARKERS);
+        List<LocationRegistry.Marker> detectable = registry.getDetectableMarkers(null);
+        assertEquals(LOCATIONS, detectable.size());
+        for (LocationRegistry.Marker marker : detectable) {
+            assertTrue(marker.isOrigin());
+        }
+    }
+
+    @Test
+    public void neighborsAreSymmetricAndAddedOnce() {
+        LocationRegistry registry = corridor(3, 1);
+        registry.addNeighbors("Room 1", "Room 0");
+        registry.addNeighbors("Room 0", "Room 1");
+        Location first = registry.getLocation("Room 0");
+        Location middle = registry.getLocation("Room 1");
+        Location last = registry.getLocation("Room 2");
+        assertEquals(1, registry.getNeighbors(first).size());
+        assertSame(middle, registry.getNeighbors(first).get(0));
+        assertEquals(2, registry.getNeighbors(middle).size());
+        assertTrue(registry.getNeighbors(middle).contains(first));
+        assertTrue(registry.getNeighbors(middle).contains(last));
+        assertEquals(4, registry.getDetectableMarkers(first).size());
+        assertEquals(6, registry.getDetectableMarkers(middle).size());
+    }
+
+    @Test
+    public void rejectsInvalidRegistrations() {
+        LocationRegistry registry = corridor(2, 1);
+        expectRejected(() -> registry.addNeighbors("Room 0", "Room 0"));
+        expectRejected(() -> registry.addNeighbors("Room 0", "Attic"));
+        expectRejected(() -> registry.addOriginMarker("origin_0", "Room 1"));
+        expectRejected(() -> registry.addObjectMarker("loose", "Room 0", null));
+        expectRejected(() -> registry.addObjectMarker("lost", "Attic", "keys"));
+        expectRejected(() -> registry.addLocation(new Location("Room 0", "room_0", 0, 0)));
+        assertEquals(4, registry.getMarkerCount());
+    }
+
+    // A scan over the markers would make the large registry a hundred times slower
+    @Test(timeout = 10000)
+    public void lookupCostDoesNotGrowWithMarkers() {
+        LocationRegistry small = corridor(10, OBJECT_MARKERS);
+        LocationRegistry large = corridor(1000, OBJECT_MARKERS);
+        String[] smallNames = names(10);
+        String[] largeNames = names(1000);
+        long smallNanos = Long.MAX_VALUE;
+        long largeNanos = Long.MAX_VALUE;
+        // Best of several rounds, so that warm up and collections do not count
+        for (int round = 0; round < 10; round++) {
+            smallNanos = Math.min(smallNanos, timeLookups(small, smallNames));
+            largeNanos = Math.min(largeNanos, timeLookups(large, largeNames));
+        }
+        assertTrue("small " + smallNanos + " ns, large " + largeNanos + " ns",
+                largeNanos < 10 * smallNanos);
+    }
+
+    private static String[] names(int locations) {
+        String[] names = new String[locations * (1 + OBJECT_MARKERS)];
+        int n = 0;
+        for (int i = 0; i < locations; i++) {
+            names[n++] = "origin_" + i;
+            for (int j = 0; j < OBJECT_MARKERS; j++) {
+                names[n++] = "object_" + i + "_" + j;
+            }
+        }
+        return names;
+    }
+
+    private static long timeLookups(LocationRegistry registry, String[] names) {
+        long start = System.nanoTime();
+        for (int i = 0; i < 200_000; i++) {
+            if (registry.lookup(names[i % names.length]) == null) {
+                fail(names[i % names.length]);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void expectRejected(Runnable registration) {
+        try {
+            registration.run();
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // The registry is left as it was
+        }
+    }
+}
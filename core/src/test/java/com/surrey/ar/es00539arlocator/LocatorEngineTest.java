@@ -0,0 +1,97 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LocatorEngineTest {
+    private final LocationRegistry locations = new LocationRegistry();
+    private final ObjectRegistry objects = new ObjectRegistry();
+    private final AnchorUpdatePolicy anchorPolicy = new AnchorUpdatePolicy();
+    private final float[] anchorPose = new float[7];
+    private LocatorEngine engine;
+    private Location office;
+    private Location lab;
+
+    @Before
+    public void setUp() {
+        office = new Location("Office", "office", 100, 100);
+        lab = new Location("Lab", "lab", 100, 100);
+        locations.addLocation(office);
+        locations.addLocation(lab);
+        locations.addOriginMarker("office_earth", "Office");
+        locations.addOriginMarker("lab_earth", "Lab");
+        engine = new LocatorEngine(locations, objects, anchorPolicy);
+    }
+
+    private LocationRegistry.Marker see(String marker, float x) {
+        LocationRegistry.Marker seen = engine.updateImage(marker, TraceFrame.TRACKING,
+                TraceFrame.FULL_TRACKING, x, 0f, 0f, 0f, 0f, 0f, 1f, anchorPose);
+        if (seen != null && seen.isOrigin()) {
+            engine.moveOrigin(seen, anchorPose[0], anchorPose[1], anchorPose[2]);
+        }
+        return seen;
+    }
+
+    @Test
+    public void stillMarkerIsFilteredAsJitter() {
+        assertSame(office, see("office_earth", 0f).getLocation());
+        assertNull(see("office_earth", 0.001f));
+    }
+
+    // Walking back to a marker that has not moved must still switch to its location
+    @Test
+    public void originOfAnotherLocationAlwaysGetsThrough() {
+        see("office_earth", 0f);
+        see("lab_earth", 5f);
+        assertSame(lab, engine.getLocation());
+
+        LocationRegistry.Marker marker = see("office_earth", 0f);
+        assertSame(office, marker.getLocation());
+        assertSame(office, engine.getLocation());
+        marker = see("lab_earth", 5f);
+        assertSame(lab, marker.getLocation());
+        assertSame(lab, engine.getLocation());
+    }
+
+    @Test
+    public void switchingLocationKeepsOnlyTheNewOriginAnchor() {
+        see("office_earth", 0f);
+        see("lab_earth", 5f);
+        assertNull(see("lab_earth", 5f));
+        // The office marker was forgotten, its next pose anchors wherever it is
+        assertTrue(anchorPolicy.update("office_earth", 0f, 0f, 0f, 0f, 0f, 0f, 1f));
+    }
+
+    @Test
+    public void mapPixelsMatchMapProjection() {
+        see("office_earth", 0f);
+        engine.setMapSize(200, 200);
+        float[][] positions = {{0f, 0f}, {0.25f, -0.4f}, {-0.6f, 0.9f}, {0.99f, -0.99f}};
+        for (float[] position : positions) {
+            objects.add("keys", position[0], 0f, position[1]);
+        }
+        engine.update(new TraceFrame());
+
+        MapProjection map = new MapProjection();
+        map.set(office.getOriginX(), office.getOriginY(), 200, 200);
+        assertEquals(positions.length, engine.getMapPixelCount());
+        // The query returns the objects in grid order, so compare the pixels as sorted sets
+        long[] expected = new long[positions.length];
+        long[] actual = new long[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            expected[i] = map.toPixelX(positions[i][1]) * 1000L + map.toPixelY(positions[i][0]);
+            actual[i] = engine.getMapPixelsX()[i] * 1000L + engine.getMapPixelsY()[i];
+        }
+        Arrays.sort(expected);
+        Arrays.sort(actual);
+        assertArrayEquals(expected, actual);
+    }
+}
@@ -0,0 +1,183 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ObjectRegistryTest {
+    private static final String[] TYPES = {"keys", "oculos", "wallet"};
+
+    @Test
+    public void queriesMatchLinearScan() {
+        Random random = new Random(7);
+        ObjectRegistry registry = new ObjectRegistry(0.5f);
+        registry.setOrigin(3f, 0f, -2f);
+        List<TrackedObject> live = new ArrayList<>();
+        List<TrackedObject> out = new ArrayList<>();
+        for (int step = 0; step < 5000; step++) {
+            int action = random.nextInt(10);
+            if (action < 5 || live.isEmpty()) {
+                live.add(registry.add(TYPES[random.nextInt(TYPES.length)],
+                        coordinate(random), random.nextFloat(), coordinate(random)));
+            } else if (action < 7) {
+                TrackedObject object = live.get(random.nextInt(live.size()));
+                assertTrue(registry.move(object, coordinate(random), 0f, coordinate(random)));
+            } else if (action < 8) {
+                assertTrue(registry.remove(live.remove(random.nextInt(live.size()))));
+            }
+            assertEquals(live.size(), registry.size());
+
+            float x = coordinate(random);
+            float z = coordinate(random);
+            String type = random.nextBoolean() ? null : TYPES[random.nextInt(TYPES.length)];
+            TrackedObject nearest = registry.nearest(x, z, type);
+            TrackedObject expected = linearNearest(live, x, z, type);
+            if (expected == null) {
+                assertNull(nearest);
+            } else {
+                assertEquals(distanceSquared(expected, x, z), distanceSquared(nearest, x, z), 0f);
+            }
+
+            out.clear();
+            int k = 1 + random.nextInt(5);
+            int found = registry.nearest(x, z, k, type, out);
+            assertEquals(Math.min(k, count(live, type)), found);
+            for (int i = 1; i < found; i++) {
+                assertTrue(distanceSquared(out.get(i - 1), x, z) <= distanceSquared(out.get(i), x, z));
+            }
+            if (found > 0) {
+                assertEquals(distanceSquared(expected, x, z), distanceSquared(out.get(0), x, z), 0f);
+            }
+
+            out.clear();
+            float radius = random.nextFloat() * 5f;
+            int inRadius = registry.withinRadius(x, z, radius, type, out);
+            int expectedInRadius = 0;
+            for (TrackedObject object : live) {
+                if ((type == null || type.equals(object.getType()))
+                        && distanceSquared(object, x, z) <= radius * radius) {
+                    expectedInRadius++;
+                }
+            }
+            assertEquals(expectedInRadius, inRadius);
+
+            out.clear();
+            int inBounds = registry.withinBounds(x - 3f, z - 2f, x + 3f, z + 2f, out);
+            int expectedInBounds = 0;
+            for (TrackedObject object : live) {
+                if (object.getX() >= x - 3f && object.getX() <= x + 3f
+                        && object.getZ() >= z - 2f && object.getZ() <= z + 2f) {
+                    expectedInBounds++;
+                }
+            }
+            assertEquals(expectedInBounds, inBounds);
+        }
+    }
+
+    @Test
+    public void removingObjectsFreesTheirCells() {
+        ObjectRegistry registry = new ObjectRegistry();
+        List<TrackedObject> objects = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            objects.add(registry.add("keys", i, 0f, -i));
+        }
+        assertEquals(1000, registry.getCellCount());
+        for (TrackedObject object : objects) {
+            registry.remove(object);
+        }
+        assertEquals(0, registry.getCellCount());
+        assertNull(registry.nearest(0f, 0f, null));
+    }
+
+    @Test
+    public void movingAnObjectFreesItsOldCell() {
+        ObjectRegistry registry = new ObjectRegistry();
+        TrackedObject object = registry.add("keys", 0f, 0f, 0f);
+        for (int i = 1; i <= 100; i++) {
+            registry.move(object, i * 10f, 0f, 0f);
+        }
+        assertEquals(1, registry.getCellCount());
+        assertSame(object, registry.nearest(0f, 0f, "keys"));
+    }
+
+    @Test
+    public void moveRejectsRemovedObject() {
+        ObjectRegistry registry = new ObjectRegistry();
+        TrackedObject removed = registry.add("keys", 1f, 0f, 1f);
+        TrackedObject kept = registry.add("keys", 5f, 0f, 5f);
+        registry.remove(removed);
+
+        assertFalse(registry.move(removed, 0f, 0f, 0f));
+        assertFalse(registry.remove(removed));
+        assertEquals(1, registry.size());
+        assertSame(kept, registry.nearest(0f, 0f, null));
+    }
+
+    @Test
+    public void nearestOnlyReturnsTheRequestedType() {
+        ObjectRegistry registry = new ObjectRegistry();
+        registry.add("keys", 0f, 0f, 0f);
+        TrackedObject oculos = registry.add("oculos", 40f, 0f, 40f);
+        assertSame(oculos, registry.nearest(0f, 0f, "oculos"));
+        assertNull(registry.nearest(0f, 0f, "wallet"));
+    }
+
+    // Walking rings out to a far outlier once cost the area of the whole grid
+    @Test(timeout = 2000)
+    public void farOutliersDoNotSlowDownNearest() {
+        ObjectRegistry registry = new ObjectRegistry();
+        registry.add("keys", 0f, 0f, 0f);
+        TrackedObject far = registry.add("oculos", 1e6f, 0f, 1e6f);
+        registry.add("oculos", -1e6f, 0f, -1e6f);
+        List<TrackedObject> out = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            assertSame(far, registry.nearest(1e6f, 1e6f - 1f, "oculos"));
+            out.clear();
+            registry.nearest(0f, 0f, 2, "oculos", out);
+            assertEquals(2, out.size());
+        }
+    }
+
+    private static float coordinate(Random random) {
+        // Mostly close together, with the odd far away object
+        return random.nextInt(50) == 0
+                ? (random.nextFloat() - 0.5f) * 2000f
+                : (random.nextFloat() - 0.5f) * 20f;
+    }
+
+    private static TrackedObject linearNearest(List<TrackedObject> objects, float x, float z,
+                                               String type) {
+        TrackedObject best = null;
+        for (TrackedObject object : objects) {
+            if ((type == null || type.equals(object.getType()))
+                    && (best == null || distanceSquared(object, x, z) < distanceSquared(best, x, z))) {
+                best = object;
+            }
+        }
+        return best;
+    }
+
+    private static int count(List<TrackedObject> objects, String type) {
+        int count = 0;
+        for (TrackedObject object : objects) {
+            if (type == null || type.equals(object.getType())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static float distanceSquared(TrackedObject object, float x, float z) {
+        float dx = object.getX() - x;
+        float dz = object.getZ() - z;
+        return dx * dx + dz * dz;
+    }
+}
@@ -0,0 +1,169 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PositionLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopenedLogHasLivePositions() throws IOException {
+        File file = new File(folder.getRoot(), "positions.log");
+        PositionLog log = new PositionLog(file);
+        log.put(1, "keys", 1f, 2f, 3f);
+        log.put(2, "oculos", 4f, 5f, 6f);
+        log.put(1, "keys", 7f, 8f, 9f);
+        log.remove(2);
+        log.close();
+
+        log = new PositionLog(file);
+        List<PositionLog.Entry> entries = new ArrayList<>(log.getEntries());
+        assertEquals(1, entries.size());
+        assertEquals(1L, entries.get(0).key);
+        assertEquals("keys", entries.get(0).type);
+        assertEquals(7f, entries.get(0).x, 0f);
+        assertEquals(9f, entries.get(0).z, 0f);
+        assertEquals(4, log.getRecordCount());
+        log.close();
+    }
+
+    // A crash in the middle of an append leaves a record whose checksum does not match
+    @Test
+    public void tornRecordIsDropped() throws IOException {
+        File file = new File(folder.getRoot(), "positions.log");
+        PositionLog log = new PositionLog(file);
+        log.put(1, "keys", 1f, 0f, 0f);
+        log.put(2, "keys", 2f, 0f, 0f);
+        log.put(3, "keys", 3f, 0f, 0f);
+        log.close();
+        corrupt(file, 2);
+
+        log = new PositionLog(file);
+        assertEquals(2, log.size());
+        assertEquals(2, log.getRecordCount());
+        log.put(4, "keys", 4f, 0f, 0f);
+        log.close();
+
+        log = new PositionLog(file);
+        assertEquals(3, log.size());
+        log.close();
+    }
+
+    @Test
+    public void recordsAfterCorruptOneAreClearedForGood() throws IOException {
+        File file = new File(folder.getRoot(), "positions.log");
+        PositionLog log = new PositionLog(file);
+        for (int key = 1; key <= 4; key++) {
+            log.put(key, "keys", key, 0f, 0f);
+        }
+        log.close();
+        corrupt(file, 1);
+
+        log = new PositionLog(file);
+        assertEquals(1, log.size());
+        // The corrupt record and the two after it
+        assertEquals(3, log.getRecoveredRecords());
+        log.put(5, "keys", 5f, 0f, 0f);
+        log.close();
+
+        // Records 3 and 4 must not come back once record 2 is overwritten
+        log = new PositionLog(file);
+        assertEquals(2, log.size());
+        assertEquals(0, log.getRecoveredRecords());
+        log.close();
+    }
+
+    @Test
+    public void compactionKeepsLivePositions() throws IOException {
+        File file = new File(folder.getRoot(), "positions.log");
+        PositionLog log = new PositionLog(file);
+        log.put(1, "oculos", 0f, 0f, 0f);
+        for (int i = 0; !log.needsCompaction(); i++) {
+            log.put(2, "keys", i, 0f, 0f);
+        }
+        float last = log.getEntries().toArray(new PositionLog.Entry[0])[1].x;
+        log.compact();
+        assertEquals(2, log.getRecordCount());
+        log.put(3, "keys", 0f, 0f, 0f);
+        log.close();
+
+        log = new PositionLog(file);
+        assertEquals(3, log.size());
+        assertEquals(last, log.getEntries().toArray(new PositionLog.Entry[0])[1].x, 0f);
+        assertFalse(new File(file.getPath() + ".compact").exists());
+        log.close();
+    }
+
+    @Test
+    public void failedCompactionLeavesLogUsable() throws IOException {
+        File file = new File(folder.getRoot(), "positions.log");
+        PositionLog log = new PositionLog(file);
+        log.put(1, "keys", 1f, 0f, 0f);
+        // A directory that cannot be deleted where the compacted log goes
+        File blocker = new File(file.getPath() + ".compact");
+        assertTrue(blocker.mkdir());
+        assertTrue(new File(blocker, "file").createNewFile());
+        try {
+            log.compact();
+            fail("compaction should fail");
+        } catch (IOException expected) {
+            // The log is still open
+        }
+        log.put(2, "keys", 2f, 0f, 0f);
+        log.close();
+
+        log = new PositionLog(file);
+        assertEquals(2, log.size());
+        log.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void closedLogFailsLoudly() throws IOException {
+        PositionLog log = new PositionLog(new File(folder.getRoot(), "positions.log"));
+        log.close();
+        log.put(1, "keys", 0f, 0f, 0f);
+    }
+
+    // Replaying the log is on the path to showing restored objects
+    @Test(timeout = 5000)
+    public void recoversFiftyThousandRecordsQuickly() throws IOException {
+        File file = new File(folder.getRoot(), "positions.log");
+        PositionLog log = new PositionLog(file);
+        for (int i = 0; i < 50000; i++) {
+            log.put(i % 500, "keys", i, 0f, 0f);
+        }
+        log.close();
+
+        long start = System.nanoTime();
+        log = new PositionLog(file);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertEquals(500, log.size());
+        assertEquals(50000, log.getRecordCount());
+        assertTrue("recovery took " + millis + " ms", millis < 2000);
+        log.close();
+    }
+
+    // Flips a byte in the middle of a record, as a write cut short would
+    private static void corrupt(File file, int record) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long offset = PositionLog.HEADER_SIZE + (long) record * PositionLog.RECORD_SIZE + 20;
+            raf.seek(offset);
+            int value = raf.read();
+            raf.seek(offset);
+            raf.write(value ^ 0xff);
+        }
+    }
+}
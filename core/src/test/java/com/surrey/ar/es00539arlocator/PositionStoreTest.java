@@ -0,0 +1,60 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+public class PositionStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(timeout = 10000)
+    public void storeSeesPositionsOfTheStoreItReplaced() throws Exception {
+        File a = new File(folder.getRoot(), "positions_a.log");
+        File b = new File(folder.getRoot(), "positions_b.log");
+
+        // Switching from a to b and straight back to a
+        PositionStore first = new PositionStore(a);
+        first.put(1, "keys", 1f, 0f, 0f);
+        PositionStore second = new PositionStore(b, first.close());
+        second.put(2, "keys", 2f, 0f, 0f);
+        PositionStore third = new PositionStore(a, second.close());
+        third.put(3, "keys", 3f, 0f, 0f);
+
+        List<PositionLog.Entry> entries = third.load().get();
+        assertEquals(1, entries.size());
+        assertEquals(1L, entries.get(0).key);
+        third.close().get();
+
+        // Both updates made to a reached the file, once each
+        PositionLog log = new PositionLog(a);
+        assertEquals(2, log.size());
+        assertEquals(2, log.getRecordCount());
+        log.close();
+        log = new PositionLog(b);
+        assertEquals(1, log.size());
+        log.close();
+    }
+
+    @Test(timeout = 10000)
+    public void closeCompletesAfterPendingWrites() throws Exception {
+        File file = new File(folder.getRoot(), "positions.log");
+        PositionStore store = new PositionStore(file);
+        for (int key = 0; key < 100; key++) {
+            store.put(key, "keys", key, 0f, 0f);
+        }
+        store.remove(0);
+        CompletableFuture<Void> closed = store.close();
+        closed.get();
+
+        PositionLog log = new PositionLog(file);
+        assertEquals(99, log.size());
+        log.close();
+    }
+}
@@ -0,0 +1,74 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShelfPackerTest {
+    @Test
+    public void fillsAShelfBeforeStartingTheNext() {
+        ShelfPacker packer = new ShelfPacker(100, 1);
+        int[] out = new int[2];
+        assertTrue(packer.add(40, 30, out));
+        assertArrayEquals(new int[] {1, 1}, out);
+        assertTrue(packer.add(40, 20, out));
+        assertArrayEquals(new int[] {43, 1}, out);
+        assertEquals(32, packer.getHeight());
+
+        // No room left on the first shelf, a new one goes below it
+        assertTrue(packer.add(40, 20, out));
+        assertArrayEquals(new int[] {1, 33}, out);
+        assertEquals(54, packer.getHeight());
+    }
+
+    @Test
+    public void picksTheShelfThatWastesLeastHeight() {
+        ShelfPacker packer = new ShelfPacker(100, 0);
+        int[] out = new int[2];
+        packer.add(60, 40, out);
+        packer.add(60, 10, out);
+        assertArrayEquals(new int[] {0, 40}, out);
+        // Fits on both shelves, the lower one wastes less
+        packer.add(30, 10, out);
+        assertArrayEquals(new int[] {60, 40}, out);
+        assertEquals(50, packer.getHeight());
+    }
+
+    @Test
+    public void rejectsRectanglesWiderThanThePacker() {
+        ShelfPacker packer = new ShelfPacker(64, 2);
+        int[] out = {-1, -1};
+        assertFalse(packer.add(61, 10, out));
+        assertArrayEquals(new int[] {-1, -1}, out);
+        assertEquals(0, packer.getHeight());
+        assertTrue(packer.add(60, 10, out));
+    }
+
+    @Test
+    public void rectanglesNeverOverlap() {
+        Random random = new Random(3);
+        ShelfPacker packer = new ShelfPacker(256, 1);
+        List<int[]> placed = new ArrayList<>();
+        int[] out = new int[2];
+        // Many more shelves than the packer starts with room for
+        for (int i = 0; i < 500; i++) {
+            int width = 1 + random.nextInt(100);
+            int height = 1 + random.nextInt(40);
+            assertTrue(packer.add(width, height, out));
+            int[] rect = {out[0], out[1], out[0] + width, out[1] + height};
+            assertTrue(rect[0] >= 1 && rect[2] <= 255 && rect[3] <= packer.getHeight() - 1);
+            for (int[] other : placed) {
+                assertFalse(rect[0] < other[2] && other[0] < rect[2]
+                        && rect[1] < other[3] && other[1] < rect[3]);
+            }
+            placed.add(rect);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TileCacheTest {
+    // Values are byte arrays, sized by their length
+    private final TileCache<byte[]> cache = new TileCache<>(1000, value -> value.length);
+
+    @Test
+    public void evictsLeastRecentlyUsedOverBudget() {
+        byte[] first = new byte[400];
+        byte[] second = new byte[400];
+        cache.put(1, first);
+        cache.put(2, second);
+        // Touching the first leaves the second the least recently used
+        assertSame(first, cache.get(1));
+        cache.put(3, new byte[400]);
+
+        assertEquals(2, cache.size());
+        assertEquals(800, cache.getBytes());
+        assertTrue(cache.contains(1));
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(3));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void replacingAValueChargesOnlyTheNewSize() {
+        cache.put(1, new byte[600]);
+        cache.put(1, new byte[300]);
+        assertEquals(1, cache.size());
+        assertEquals(300, cache.getBytes());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void valueOverTheWholeBudgetIsNotCached() {
+        cache.put(1, new byte[100]);
+        cache.put(2, new byte[1001]);
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(1));
+        assertEquals(100, cache.getBytes());
+    }
+
+    @Test
+    public void shrinkingTheBudgetEvicts() {
+        for (int key = 0; key < 5; key++) {
+            cache.put(key, new byte[200]);
+        }
+        assertEquals(1000, cache.getBytes());
+        cache.setMaxBytes(500);
+        assertEquals(2, cache.size());
+        assertEquals(400, cache.getBytes());
+        assertTrue(cache.contains(3));
+        assertTrue(cache.contains(4));
+
+        cache.trimTo(0);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertEquals(5, cache.getEvictions());
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        cache.put(1, new byte[10]);
+        cache.get(1);
+        cache.get(1);
+        assertNull(cache.get(2));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void listenerSeesEveryValueThatLeaves() {
+        List<byte[]> removed = new ArrayList<>();
+        TileCache<byte[]> tracked = new TileCache<>(1000, value -> value.length, removed::add);
+        byte[] evicted = new byte[600];
+        byte[] replaced = new byte[100];
+        byte[] oversized = new byte[2000];
+        byte[] kept = new byte[300];
+        tracked.put(1, evicted);
+        tracked.put(2, replaced);
+        tracked.put(2, kept);
+        tracked.put(3, oversized);
+        tracked.put(4, new byte[600]);
+
+        assertEquals(3, removed.size());
+        assertSame(replaced, removed.get(0));
+        assertSame(oversized, removed.get(1));
+        assertSame(evicted, removed.get(2));
+
+        tracked.clear();
+        assertEquals(5, removed.size());
+        assertTrue(removed.contains(kept));
+    }
+}
@@ -0,0 +1,102 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TilePyramidTest {
+    // 1000 x 600 in 256 pixel tiles: 4 x 3 tiles at level 0, the last ones cut short
+    private final TilePyramid pyramid = new TilePyramid(1000, 600, 256);
+
+    @Test
+    public void levelsEndWithTheWholePlanInOneTile() {
+        assertEquals(3, pyramid.getLevelCount());
+        assertEquals(4, pyramid.getColumns(0));
+        assertEquals(3, pyramid.getRows(0));
+        assertEquals(2, pyramid.getColumns(1));
+        assertEquals(2, pyramid.getRows(1));
+        assertEquals(1, pyramid.getColumns(2));
+        assertEquals(1, pyramid.getRows(2));
+        assertEquals(1, new TilePyramid(256, 256, 256).getLevelCount());
+        assertEquals(4, TilePyramid.getSampleSize(2));
+    }
+
+    @Test
+    public void levelForKeepsOneTilePixelPerScreenPixel() {
+        assertEquals(0, pyramid.levelFor(2f));
+        assertEquals(0, pyramid.levelFor(1f));
+        assertEquals(0, pyramid.levelFor(0.6f));
+        assertEquals(1, pyramid.levelFor(0.5f));
+        assertEquals(1, pyramid.levelFor(0.3f));
+        assertEquals(2, pyramid.levelFor(0.25f));
+        // Never past the last level
+        assertEquals(2, pyramid.levelFor(0.01f));
+        assertEquals(0, pyramid.levelFor(0f));
+        assertEquals(0, pyramid.levelFor(Float.NaN));
+    }
+
+    @Test
+    public void tileBoundsAreClippedToThePlan() {
+        int[] bounds = new int[4];
+        pyramid.getTileBounds(0, 1, 1, bounds);
+        assertArrayEquals(new int[] {256, 256, 512, 512}, bounds);
+        pyramid.getTileBounds(0, 3, 2, bounds);
+        assertArrayEquals(new int[] {768, 512, 1000, 600}, bounds);
+        pyramid.getTileBounds(1, 1, 0, bounds);
+        assertArrayEquals(new int[] {512, 0, 1000, 512}, bounds);
+        pyramid.getTileBounds(2, 0, 0, bounds);
+        assertArrayEquals(new int[] {0, 0, 1000, 600}, bounds);
+    }
+
+    @Test
+    public void forEachTileVisitsTheIntersectingTiles() {
+        List<Long> visited = new ArrayList<>();
+        int count = pyramid.forEachTile(0, 300f, 100f, 600f, 300f,
+                (level, column, row) -> visited.add(TilePyramid.key(level, column, row)));
+        assertEquals(4, count);
+        assertEquals(4, visited.size());
+        assertEquals(TilePyramid.key(0, 1, 0), (long) visited.get(0));
+        assertEquals(TilePyramid.key(0, 2, 0), (long) visited.get(1));
+        assertEquals(TilePyramid.key(0, 1, 1), (long) visited.get(2));
+        assertEquals(TilePyramid.key(0, 2, 1), (long) visited.get(3));
+    }
+
+    @Test
+    public void forEachTileStopsAtTileBoundaries() {
+        List<Long> visited = new ArrayList<>();
+        int count = pyramid.forEachTile(0, 256f, 0f, 512f, 256f,
+                (level, column, row) -> visited.add(TilePyramid.key(level, column, row)));
+        assertEquals(1, count);
+        assertEquals(TilePyramid.key(0, 1, 0), (long) visited.get(0));
+        // Just past the boundary reaches into the next tile
+        assertEquals(4, pyramid.forEachTile(0, 256f, 0f, 512.5f, 256.5f,
+                (level, column, row) -> { }));
+    }
+
+    @Test
+    public void forEachTileClampsToThePlan() {
+        assertEquals(12, pyramid.forEachTile(0, -500f, -500f, 5000f, 5000f,
+                (level, column, row) -> { }));
+        assertEquals(1, pyramid.forEachTile(2, -500f, -500f, 5000f, 5000f,
+                (level, column, row) -> { }));
+        assertEquals(0, pyramid.forEachTile(0, 2000f, 0f, 3000f, 600f,
+                (level, column, row) -> { }));
+    }
+
+    @Test
+    public void keysRoundTrip() {
+        long key = TilePyramid.key(5, 123456, 654321);
+        assertEquals(5, TilePyramid.levelOf(key));
+        assertEquals(123456, TilePyramid.columnOf(key));
+        assertEquals(654321, TilePyramid.rowOf(key));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyPlan() {
+        new TilePyramid(0, 600, 256);
+    }
+}
@@ -0,0 +1,95 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TraceRecorderTest {
+    @Test(timeout = 10000)
+    public void writesEveryFrameInOrder() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TraceRecorder recorder = new TraceRecorder(
+                new FrameTraceWriter(bytes, FrameTraceWriterTest.locations()), 4);
+        TraceFrame frame = new TraceFrame();
+        int recorded = 0;
+        while (recorded < 200) {
+            FrameTraceWriterTest.fill(frame, recorded);
+            assertTrue(recorder.record(frame));
+            if (recorder.getFrameCount() > recorded) {
+                recorded++;
+            } else {
+                // Only 4 frames fit in the queue, wait for the writer like a slow frame would
+                Thread.sleep(1);
+            }
+        }
+        recorder.close().get();
+
+        FrameTraceReader reader = new FrameTraceReader(new ByteArrayInputStream(bytes.toByteArray()));
+        TraceFrame expected = new TraceFrame();
+        for (int i = 0; i < 200; i++) {
+            assertTrue(reader.read(frame));
+            FrameTraceWriterTest.fill(expected, i);
+            FrameTraceWriterTest.assertSameFrame(expected, frame);
+        }
+        assertFalse(reader.read(frame));
+    }
+
+    // A stalled disk must not stall the frames
+    @Test(timeout = 10000)
+    public void dropsFramesInsteadOfBlocking() throws Exception {
+        CountDownLatch stalled = new CountDownLatch(1);
+        OutputStream slow = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    stalled.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+        // Frames reach the stream once the writer's 64 KB buffer is full
+        TraceRecorder recorder = new TraceRecorder(
+                new FrameTraceWriter(slow, FrameTraceWriterTest.locations()), 8);
+        TraceFrame frame = new TraceFrame();
+        for (int i = 0; i < 5000; i++) {
+            FrameTraceWriterTest.fill(frame, i);
+            assertTrue(recorder.record(frame));
+        }
+        assertEquals(5000, recorder.getFrameCount() + recorder.getDroppedFrames());
+        assertTrue(recorder.getDroppedFrames() > 0);
+        stalled.countDown();
+        recorder.close().get();
+    }
+
+    @Test(timeout = 10000)
+    public void writeFailureStopsRecording() throws Exception {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        TraceRecorder recorder = new TraceRecorder(
+                new FrameTraceWriter(broken, FrameTraceWriterTest.locations()), 8);
+        TraceFrame frame = new TraceFrame();
+        try {
+            recorder.close().get();
+            fail("closing should fail");
+        } catch (ExecutionException expected) {
+            assertNotNull(recorder.getFailure());
+        }
+        assertFalse(recorder.record(frame));
+    }
+}
@@ -0,0 +1,125 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TypedPoolTest {
+    private static final String[] TYPES = {"oculos", "keys", "earth"};
+
+    private final Map<String, Integer> released = new HashMap<>();
+    private final TypedPool<Object> pool =
+            new TypedPool<>(type -> released.merge(type, 1, Integer::sum), 4);
+
+    @Test
+    public void reusesObjectsOfTheSameTypeLastInFirstOut() {
+        Object first = new Object();
+        Object second = new Object();
+        assertNull(pool.poll("keys"));
+        assertTrue(pool.offer("keys", first));
+        assertTrue(pool.offer("keys", second));
+        assertNull(pool.poll("oculos"));
+        assertSame(second, pool.poll("keys"));
+        assertSame(first, pool.poll("keys"));
+        assertEquals(2, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void dropsObjectsBeyondTheCap() {
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i < 4, pool.offer("keys", new Object()));
+        }
+        assertEquals(4, pool.getIdleCount("keys"));
+        assertEquals(2, pool.getDrops());
+        assertEquals(Integer.valueOf(2), released.get("keys"));
+    }
+
+    @Test
+    public void loweringTheCapDropsIdleObjects() {
+        for (int i = 0; i < 4; i++) {
+            pool.offer("keys", new Object());
+            pool.offer("earth", new Object());
+        }
+        pool.setMaxIdlePerType(1);
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(6, pool.getDrops());
+        assertEquals(Integer.valueOf(3), released.get("earth"));
+        assertFalse(pool.offer("earth", new Object()));
+    }
+
+    // Thousands of placements and removals create objects only while the number shown grows
+    @Test
+    public void placementsReuseObjects() {
+        pool.setMaxIdlePerType(64);
+        Random random = new Random(3);
+        List<String> liveTypes = new ArrayList<>();
+        List<Object> live = new ArrayList<>();
+        int created = 0;
+        int mostLive = 0;
+        for (int i = 0; i < 20000; i++) {
+            // Up to 50 objects shown at a time
+            if (live.isEmpty() || (live.size() < 50 && random.nextBoolean())) {
+                String type = TYPES[random.nextInt(TYPES.length)];
+                Object object = pool.poll(type);
+                if (object == null) {
+                    object = new Object();
+                    created++;
+                }
+                liveTypes.add(type);
+                live.add(object);
+                mostLive = Math.max(mostLive, live.size());
+            } else {
+                int index = random.nextInt(live.size());
+                assertTrue(pool.offer(liveTypes.remove(index), live.remove(index)));
+            }
+        }
+        // At worst every type once had as many objects as were ever shown together
+        assertTrue("created " + created, created <= TYPES.length * mostLive);
+        assertEquals(created, pool.getMisses());
+        assertTrue(pool.getHits() > 10 * created);
+        assertEquals(0, pool.getDrops());
+        assertEquals(created, pool.getIdleCount() + live.size());
+    }
+
+    @Test
+    public void steadyPlacementsDoNotAllocate() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported()) {
+            return;
+        }
+        Object[] live = new Object[TYPES.length * 4];
+        for (int i = 0; i < live.length; i++) {
+            live[i] = new Object();
+        }
+        for (int i = 0; i < live.length; i++) {
+            pool.offer(TYPES[i % TYPES.length], live[i]);
+        }
+        long thread = Thread.currentThread().getId();
+        long before = allocations.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100_000; i++) {
+            String type = TYPES[i % TYPES.length];
+            Object object = pool.poll(type);
+            pool.offer(type, object);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(thread) - before;
+        // Reading the counter allocates a little, one deque node per placement would be megabytes
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+        assertEquals(live.length, pool.getIdleCount());
+    }
+}
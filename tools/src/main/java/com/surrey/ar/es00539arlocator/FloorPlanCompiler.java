@@ -0,0 +1,152 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Compiles a floor plan image and its description into a {@link FloorPlan} package at build
+ * time. The plan is scaled to {@link MapProjection#PIXELS_PER_METER}, and is not turned: relative
+ * positions follow the AR world axes, not the origin marker's, so the image must already have
+ * its x axis forward and its y axis to the right, as {@link MapProjection} draws them.
+ *
+ * <pre>
+ * FloorPlanCompiler plan.properties out.arfp
+ * </pre>
+ *
+ * The description is a properties file:
+ * <pre>
+ * # Plan image, relative to the description, and its scale
+ * image=overmap.png
+ * pixelsPerMeter=100
+ * # Origin marker pixel
+ * origin=298,250
+ * # Other fixed markers, same units
+ * markers=door_a 10 20; door_b 400 20
+ * # Optional: grid cell size after scaling, darkest luminance that is not a wall, tile size
+ * cellPixels=10
+ * wallLuminance=128
+ * tileSize=256
+ * </pre>
+ */
+public class FloorPlanCompiler {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: FloorPlanCompiler plan.properties out.arfp");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        File descriptor = new File(args[0]);
+        File out = new File(args[1]);
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(descriptor)) {
+            properties.load(in);
+        }
+        compile(properties, descriptor.getAbsoluteFile().getParentFile(), out);
+        System.out.println(String.format(Locale.US, "%s: %d bytes in %.1f ms",
+                out, out.length(), (System.nanoTime() - start) / 1e6));
+    }
+
+    /** Compiles a description, with the image path relative to {@code baseDir}. */
+    public static void compile(Properties properties, File baseDir, File out) throws IOException {
+        File imageFile = new File(required(properties, "image"));
+        if (!imageFile.isAbsolute()) {
+            imageFile = new File(baseDir, imageFile.getPath());
+        }
+        BufferedImage source = ImageIO.read(imageFile);
+        if (source == null) {
+            throw new IOException("Cannot read plan image " + imageFile);
+        }
+        float sourceScale = Float.parseFloat(properties.getProperty("pixelsPerMeter", "100"));
+        float[] origin = parsePosition(required(properties, "origin").replace(',', ' '));
+        int cellPixels = Integer.parseInt(properties.getProperty("cellPixels",
+                Integer.toString(OccupancyGrid.DEFAULT_CELL_PIXELS)));
+        int wallLuminance = Integer.parseInt(properties.getProperty("wallLuminance",
+                Integer.toString(OccupancyGrid.DEFAULT_WALL_LUMINANCE)));
+        int tileSize = Integer.parseInt(properties.getProperty("tileSize", "256"));
+
+        // Scale to the app's plan scale
+        double scale = MapProjection.PIXELS_PER_METER / sourceScale;
+        AffineTransform placement = AffineTransform.getScaleInstance(scale, scale);
+        int width = (int) Math.ceil(source.getWidth() * scale);
+        int height = (int) Math.ceil(source.getHeight() * scale);
+        BufferedImage plan = render(source, placement, width, height);
+
+        FloorPlanWriter writer = new FloorPlanWriter(width, height, MapProjection.PIXELS_PER_METER);
+        Point2D point = placement.transform(new Point2D.Float(origin[0], origin[1]), null);
+        writer.setOrigin((int) Math.round(point.getX()), (int) Math.round(point.getY()));
+        String markers = properties.getProperty("markers", "").trim();
+        if (!markers.isEmpty()) {
+            for (String marker : markers.split(";")) {
+                String[] fields = marker.trim().split("\\s+", 2);
+                if (fields.length != 2) {
+                    throw new IllegalArgumentException("Bad marker " + marker);
+                }
+                float[] at = parsePosition(fields[1]);
+                point = placement.transform(new Point2D.Float(at[0], at[1]), null);
+                writer.addMarker(fields[0], (float) point.getX(), (float) point.getY());
+            }
+        }
+
+        int[] pixels = plan.getRGB(0, 0, width, height, null, 0, width);
+        writer.setGrid(OccupancyGrid.fromPixels(pixels, width, height, 1, cellPixels, wallLuminance));
+        writer.write(out, tileSize, (level, column, row, tile) -> {
+            int sampleSize = TilePyramid.getSampleSize(level);
+            int tileWidth = tile[2] - tile[0];
+            int tileHeight = tile[3] - tile[1];
+            AffineTransform sample = AffineTransform.getScaleInstance(1.0 / sampleSize, 1.0 / sampleSize);
+            sample.translate(-tile[0], -tile[1]);
+            BufferedImage image = render(plan, sample, (tileWidth + sampleSize - 1) / sampleSize,
+                    (tileHeight + sampleSize - 1) / sampleSize);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", bytes);
+            return bytes.toByteArray();
+        });
+    }
+
+    // Floor plans are opaque, anything outside the source is floor
+    private static BufferedImage render(BufferedImage source, AffineTransform transform,
+                                        int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        if (!transform.isIdentity()) {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        graphics.drawImage(source, transform, null);
+        graphics.dispose();
+        return image;
+    }
+
+    // "x y"
+    private static float[] parsePosition(String value) {
+        String[] fields = value.trim().split("\\s+");
+        if (fields.length != 2) {
+            throw new IllegalArgumentException("Bad position " + value
+                    + ", plans are not turned so markers take no yaw");
+        }
+        return new float[] {Float.parseFloat(fields[0]), Float.parseFloat(fields[1])};
+    }
+
+    private static String required(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + key);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,138 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runs a {@link SyncRelay} and many simulated {@link SyncClient}s on loopback, all in one
+ * location, and prints the update latency from one client's put to another client's listener,
+ * and the bytes each update costs on the wire.
+ *
+ * <pre>
+ * SyncLoad [--clients N] [--objects M] [--seconds S]
+ * </pre>
+ *
+ * Every client moves each of its objects by a few centimeters on every tick. The height of each
+ * move carries a sequence number, which the receiving client uses to look up the send time.
+ * This measures, SyncRelayTest checks what is delivered.
+ */
+public class SyncLoad {
+    private static final String LOCATION = "Load";
+    // Sequence numbers wrap, sends older than this many updates are no longer timed
+    private static final int SEQUENCES = 1 << 16;
+
+    private int clients = 20;
+    private int objects = 10;
+    private int seconds = 10;
+
+    private final AtomicLongArray sendNanos = new AtomicLongArray(SEQUENCES);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private int sequence;
+
+    public static void main(String[] args) throws Exception {
+        SyncLoad load = new SyncLoad();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            int value = Integer.parseInt(args[i + 1]);
+            switch (args[i]) {
+                case "--clients":
+                    load.clients = value;
+                    break;
+                case "--objects":
+                    load.objects = value;
+                    break;
+                case "--seconds":
+                    load.seconds = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        load.run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        SyncRelay relay = new SyncRelay(0);
+        Thread relayThread = new Thread(() -> {
+            try {
+                relay.run();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "relay");
+        relayThread.start();
+
+        List<SyncClient> started = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            SyncClient client = new SyncClient("127.0.0.1", relay.getPort(), LOCATION,
+                    this::onChanges);
+            client.start();
+            started.add(client);
+        }
+
+        Random random = new Random(42);
+        float[] positions = new float[2 * clients * objects];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = random.nextFloat() * 20f;
+        }
+        long end = System.currentTimeMillis() + 1000L * seconds;
+        while (System.currentTimeMillis() < end) {
+            for (int c = 0; c < clients; c++) {
+                for (int o = 0; o < objects; o++) {
+                    int index = 2 * (c * objects + o);
+                    positions[index] += (random.nextFloat() - 0.5f) * 0.05f;
+                    positions[index + 1] += (random.nextFloat() - 0.5f) * 0.05f;
+                    int sent = sequence++ % SEQUENCES;
+                    sendNanos.set(sent, System.nanoTime());
+                    started.get(c).put(((long) c << 32) | o, "keys",
+                            positions[index], SyncProtocol.toMeters(sent), positions[index + 1]);
+                }
+            }
+            Thread.sleep(SyncProtocol.TICK_MILLIS);
+        }
+        // Let the last tick through before counting
+        Thread.sleep(3 * SyncProtocol.TICK_MILLIS);
+
+        long bytesSent = 0;
+        long bytesReceived = 0;
+        long changesSent = 0;
+        long changesReceived = 0;
+        for (SyncClient client : started) {
+            bytesSent += client.getBytesSent();
+            bytesReceived += client.getBytesReceived();
+            changesSent += client.getChangesSent();
+            changesReceived += client.getChangesReceived();
+            client.close();
+        }
+        relay.close();
+        relayThread.join();
+
+        System.out.println(String.format(Locale.US,
+                "%d clients x %d objects for %d s: %d updates sent, %d received",
+                clients, objects, seconds, changesSent, changesReceived));
+        System.out.println(String.format(Locale.US,
+                "latency p50 %.1f ms, p99 %.1f ms, max %.1f ms",
+                latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6,
+                latency.getMax() / 1e6));
+        System.out.println(String.format(Locale.US,
+                "%.2f bytes per update sent, %.2f bytes per update received",
+                (double) bytesSent / Math.max(1, changesSent),
+                (double) bytesReceived / Math.max(1, changesReceived)));
+    }
+
+    // Called on the sync thread of each client
+    private void onChanges(List<SyncProtocol.Change> changes) {
+        long now = System.nanoTime();
+        for (SyncProtocol.Change change : changes) {
+            if (!change.isRemoval()) {
+                latency.record(now - sendNanos.get(SyncProtocol.toMillis(change.y) % SEQUENCES));
+            }
+        }
+    }
+}
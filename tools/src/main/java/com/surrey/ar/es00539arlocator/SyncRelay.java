@@ -0,0 +1,230 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reference relay for {@link SyncClient}: keeps the latest position of every object of every
+ * location, and forwards each change to the other clients in the same location. A client that
+ * joins a location first receives every position known there.
+ *
+ * <pre>
+ * SyncRelay [port]
+ * </pre>
+ *
+ * Runs on one thread with non-blocking sockets. Changes are coalesced per client and sent once
+ * per {@link SyncProtocol#TICK_MILLIS}, so a client that moves an object on every frame costs
+ * the others one delta per tick.
+ */
+public class SyncRelay implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(SyncRelay.class.getName());
+
+    private static class Peer {
+        final SyncConnection connection;
+        final SyncProtocol.Encoder encoder = new SyncProtocol.Encoder();
+        final SyncProtocol.Decoder decoder = new SyncProtocol.Decoder();
+        String location;
+        // Keys whose latest value this peer has not been sent yet
+        final Set<Long> dirty = new LinkedHashSet<>();
+
+        Peer(SyncConnection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private volatile boolean closed;
+    // Latest position of every object, and the peers, by location
+    private final Map<String, Map<Long, SyncProtocol.Change>> positions = new HashMap<>();
+    private final Map<String, List<Peer>> peers = new HashMap<>();
+    private final List<SyncProtocol.Change> received = new ArrayList<>();
+    private final List<SyncProtocol.Change> outgoing = new ArrayList<>();
+
+    private volatile long changesIn;
+    private volatile long changesOut;
+
+    /** Listens on the given port, 0 for any free port. */
+    public SyncRelay(int port) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : SyncProtocol.DEFAULT_PORT;
+        SyncRelay relay = new SyncRelay(port);
+        System.out.println("Sync relay listening on port " + relay.getPort());
+        relay.run();
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public long getChangesIn() {
+        return changesIn;
+    }
+
+    public long getChangesOut() {
+        return changesOut;
+    }
+
+    /** Serves clients until {@link #close} is called, then closes every socket. */
+    public void run() throws IOException {
+        try {
+            serve();
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Peer) {
+                    ((Peer) key.attachment()).connection.close();
+                }
+            }
+            server.close();
+            selector.close();
+        }
+    }
+
+    private void serve() throws IOException {
+        long nextTick = System.currentTimeMillis();
+        while (!closed) {
+            long now = System.currentTimeMillis();
+            if (now >= nextTick) {
+                tick();
+                nextTick = now + SyncProtocol.TICK_MILLIS;
+            }
+            selector.select(Math.max(1, nextTick - now));
+            for (SelectionKey key : selector.selectedKeys()) {
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Peer peer = (Peer) key.attachment();
+                try {
+                    if (key.isReadable() && !peer.connection.read(frame -> onFrame(peer, frame))) {
+                        drop(peer, null);
+                        continue;
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        peer.connection.flush();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    drop(peer, e);
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+    /** Stops {@link #run}, from any thread. */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        SyncConnection connection = new SyncConnection(channel, selector, SelectionKey.OP_READ);
+        channel.keyFor(selector).attach(new Peer(connection));
+    }
+
+    private void onFrame(Peer peer, ByteBuffer frame) {
+        byte kind = SyncProtocol.frameKind(frame);
+        if (kind == SyncProtocol.HELLO) {
+            if (peer.location != null) {
+                throw new IllegalStateException("Sync peer said hello twice");
+            }
+            peer.location = SyncProtocol.readHello(frame);
+            peers.computeIfAbsent(peer.location, location -> new ArrayList<>()).add(peer);
+            peer.dirty.addAll(positionsOf(peer.location).keySet());
+        } else if (kind == SyncProtocol.BATCH) {
+            if (peer.location == null) {
+                throw new IllegalStateException("Sync batch before hello");
+            }
+            received.clear();
+            peer.decoder.readBatch(frame, received);
+            changesIn += received.size();
+            Map<Long, SyncProtocol.Change> located = positionsOf(peer.location);
+            List<Peer> others = peers.get(peer.location);
+            for (SyncProtocol.Change change : received) {
+                if (change.isRemoval()) {
+                    located.remove(change.key);
+                } else {
+                    located.put(change.key, change);
+                }
+                for (Peer other : others) {
+                    if (other != peer) {
+                        other.dirty.add(change.key);
+                    }
+                }
+            }
+        }
+    }
+
+    private Map<Long, SyncProtocol.Change> positionsOf(String location) {
+        return positions.computeIfAbsent(location, name -> new HashMap<>());
+    }
+
+    // Sends every peer the latest value of what changed for it since the last tick
+    private void tick() {
+        for (List<Peer> located : new ArrayList<>(peers.values())) {
+            for (Peer peer : new ArrayList<>(located)) {
+                if (peer.dirty.isEmpty()) {
+                    continue;
+                }
+                Map<Long, SyncProtocol.Change> latest = positionsOf(peer.location);
+                outgoing.clear();
+                for (Long key : peer.dirty) {
+                    SyncProtocol.Change change = latest.get(key);
+                    outgoing.add(change != null ? change : SyncProtocol.Change.removal(key));
+                }
+                peer.dirty.clear();
+                try {
+                    for (int i = 0; i < outgoing.size(); ) {
+                        i = peer.encoder.encode(outgoing, i);
+                        if (peer.encoder.getFrameChanges() > 0) {
+                            peer.connection.send(peer.encoder.getFrame());
+                            changesOut += peer.encoder.getFrameChanges();
+                        }
+                    }
+                } catch (IOException e) {
+                    drop(peer, e);
+                }
+            }
+        }
+    }
+
+    // The objects of a peer that leaves stay where they are, they are still in the room
+    private void drop(Peer peer, Exception e) {
+        if (e != null) {
+            LOGGER.log(Level.INFO, "Dropping sync peer", e);
+        }
+        peer.connection.close();
+        if (peer.location != null) {
+            peers.get(peer.location).remove(peer);
+        }
+    }
+}
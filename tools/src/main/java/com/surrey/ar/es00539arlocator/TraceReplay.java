@@ -0,0 +1,175 @@
+package com.surrey.ar.es00539arlocator;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Replays a recorded frame trace through {@link LocatorEngine} as fast as possible and prints
+ * the throughput, the frame latency percentiles and a checksum of the guidance and map output,
+ * which only changes when the update logic behaves differently.
+ *
+ * <pre>
+ * TraceReplay trace.arft [--objects N] [--repeat R] [--map WIDTHxHEIGHT] [--plan plan.png|plan.arfp]
+ * </pre>
+ *
+ * {@code --objects} scatters N extra objects around the origin before replaying, to load test
+ * the registry and the map. {@code --plan} guides around the walls of the given floor plan,
+ * taken to be the plan of the first location. A compiled {@code .arfp} plan brings its own
+ * origin, an image is placed at the origin of the first location.
+ */
+public class TraceReplay {
+    private static final String[] TYPES = {"keys", "oculos"};
+
+    private int objects;
+    private int repeat = 1;
+    private int mapWidth = 1024;
+    private int mapHeight = 768;
+    private File plan;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println(
+                    "Usage: TraceReplay trace [--objects N] [--repeat R] [--map WIDTHxHEIGHT]"
+                            + " [--plan plan.png|plan.arfp]");
+            System.exit(2);
+        }
+        TraceReplay replay = new TraceReplay();
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--objects":
+                    replay.objects = Integer.parseInt(value);
+                    break;
+                case "--repeat":
+                    replay.repeat = Integer.parseInt(value);
+                    break;
+                case "--map":
+                    String[] size = value.split("x");
+                    replay.mapWidth = Integer.parseInt(size[0]);
+                    replay.mapHeight = Integer.parseInt(size[1]);
+                    break;
+                case "--plan":
+                    replay.plan = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        replay.run(new File(args[0]));
+    }
+
+    private void run(File file) throws IOException {
+        // Decode the whole trace up front so only the update logic is timed
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        List<TraceFrame> frames = new ArrayList<>();
+        LocationRegistry locations;
+        try (FrameTraceReader reader = new FrameTraceReader(new ByteArrayInputStream(bytes))) {
+            locations = reader.getLocations();
+            TraceFrame frame = new TraceFrame();
+            while (reader.read(frame)) {
+                frames.add(frame);
+                frame = new TraceFrame();
+            }
+        }
+        System.out.println(String.format(Locale.US, "%s: %d frames, %d bytes, %d locations",
+                file, frames.size(), bytes.length, locations.getLocations().size()));
+
+        OccupancyGrid grid = null;
+        FloorPlan compiled = null;
+        if (plan != null && plan.getName().endsWith(".arfp")) {
+            compiled = FloorPlan.open(plan);
+            grid = compiled.readGrid();
+            mapWidth = compiled.getWidth();
+            mapHeight = compiled.getHeight();
+        } else if (plan != null) {
+            BufferedImage image = ImageIO.read(plan);
+            if (image == null) {
+                throw new IOException("Cannot read plan " + plan);
+            }
+            int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(),
+                    null, 0, image.getWidth());
+            grid = OccupancyGrid.fromPixels(pixels, image.getWidth(), image.getHeight(), 1,
+                    OccupancyGrid.DEFAULT_CELL_PIXELS, OccupancyGrid.DEFAULT_WALL_LUMINANCE);
+            mapWidth = image.getWidth();
+            mapHeight = image.getHeight();
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long checksum = 0;
+        long total = 0;
+        for (int run = 0; run < repeat; run++) {
+            LocatorEngine engine = new LocatorEngine(locations, new ObjectRegistry(),
+                    new AnchorUpdatePolicy());
+            engine.setCurrentType(TYPES[0]);
+            engine.setMapSize(mapWidth, mapHeight);
+            if (grid != null && !locations.getLocations().isEmpty()) {
+                Location location = locations.getLocations().iterator().next();
+                engine.setNavigation(compiled != null
+                        ? new NavigationGuide(grid, compiled.getOriginX(), compiled.getOriginY(),
+                                NavigationGuide.DEFAULT_MAX_FIELDS)
+                        : new NavigationGuide(grid, location.getOriginX(), location.getOriginY(),
+                                NavigationGuide.DEFAULT_MAX_FIELDS));
+            }
+            scatter(engine.getObjects());
+
+            checksum = 0;
+            long start = System.nanoTime();
+            for (TraceFrame frame : frames) {
+                long frameStart = System.nanoTime();
+                engine.update(frame);
+                latency.record(System.nanoTime() - frameStart);
+                checksum = 31 * checksum + checksum(engine);
+            }
+            total += System.nanoTime() - start;
+        }
+
+        long replayed = (long) frames.size() * repeat;
+        System.out.println(String.format(Locale.US,
+                "%d frames in %.1f ms, %.0f frames/s, p50 %.1f us, p99 %.1f us, max %.1f us",
+                replayed, total / 1e6, replayed / (total / 1e9),
+                latency.getPercentile(50) / 1e3, latency.getPercentile(99) / 1e3,
+                latency.getMax() / 1e3));
+        System.out.println(String.format("output checksum %016x", checksum));
+    }
+
+    // Same seed on every run, so the checksum is comparable between builds
+    private void scatter(ObjectRegistry registry) {
+        Random random = new Random(objects);
+        float extent = Math.max(mapWidth, mapHeight) / MapProjection.PIXELS_PER_METER;
+        for (int i = 0; i < objects; i++) {
+            registry.add(TYPES[i % TYPES.length], (random.nextFloat() * 2f - 1f) * extent, 0f,
+                    (random.nextFloat() * 2f - 1f) * extent);
+        }
+    }
+
+    private static long checksum(LocatorEngine engine) {
+        long hash = engine.hasGuidance() ? 1 : 0;
+        if (engine.hasGuidance()) {
+            float[] guidance = engine.getGuidance();
+            for (float component : guidance) {
+                // Rounded, so that harmless float differences do not change the checksum
+                hash = 31 * hash + Math.round(component * 1000f);
+            }
+        }
+        // Same order as the former (x, y) pairs, so that recorded checksums still match
+        int[] pixelsX = engine.getMapPixelsX();
+        int[] pixelsY = engine.getMapPixelsY();
+        for (int i = 0; i < engine.getMapPixelCount(); i++) {
+            hash = 31 * hash + pixelsX[i];
+            hash = 31 * hash + pixelsY[i];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,94 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class FloorPlanCompilerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // A 12 by 8 meter plan at 50 pixels per meter with a wall across it 2 meters from the top
+    private Properties describe() throws IOException {
+        BufferedImage image = new BufferedImage(600, 400, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 600, 400);
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(0, 95, 600, 10);
+        graphics.dispose();
+        ImageIO.write(image, "png", new File(folder.getRoot(), "plan.png"));
+
+        Properties properties = new Properties();
+        properties.setProperty("image", "plan.png");
+        properties.setProperty("pixelsPerMeter", "50");
+        properties.setProperty("origin", "150,50");
+        properties.setProperty("markers", "augmented_images_earth 150 50; door 600 400");
+        return properties;
+    }
+
+    @Test
+    public void compiledPlanOpensScaledToTheAppScale() throws IOException {
+        File out = new File(folder.getRoot(), "plan.arfp");
+        FloorPlanCompiler.compile(describe(), folder.getRoot(), out);
+        FloorPlan plan = FloorPlan.open(out);
+
+        assertEquals(MapProjection.PIXELS_PER_METER, plan.getPixelsPerMeter(), 0f);
+        assertEquals(1200, plan.getWidth());
+        assertEquals(800, plan.getHeight());
+        assertEquals(300, plan.getOriginX());
+        assertEquals(100, plan.getOriginY());
+        List<String> markers = new ArrayList<>();
+        plan.forEachMarker((name, x, y) -> markers.add(name + " " + x + " " + y));
+        assertEquals("[augmented_images_earth 300.0 100.0, door 1200.0 800.0]", markers.toString());
+
+        // The wall is 2 meters from the top, 200 plan pixels at the app scale
+        OccupancyGrid grid = plan.readGrid();
+        assertEquals(120, grid.getColumns());
+        assertEquals(80, grid.getRows());
+        assertTrue(grid.isBlocked(grid.cellAt(600f, 200f)));
+        assertFalse(grid.isBlocked(grid.cellAt(600f, 100f)));
+        assertFalse(grid.isBlocked(grid.cellAt(600f, 300f)));
+
+        // Not turned: a position 1 meter along relative x from the origin lands on the wall
+        MapProjection projection = new MapProjection();
+        projection.set(plan.getOriginX(), plan.getOriginY(), plan.getWidth(), plan.getHeight());
+        assertTrue(grid.isBlocked(grid.cellAt(projection.toPixelX(3f), projection.toPixelY(1f))));
+        assertFalse(grid.isBlocked(grid.cellAt(projection.toPixelX(1f), projection.toPixelY(3f))));
+
+        ByteBuffer encoded = plan.getTile(0, 0, 0);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        BufferedImage tile = ImageIO.read(new ByteArrayInputStream(bytes));
+        assertNotNull(tile);
+        assertEquals(plan.getTileSize(), tile.getWidth());
+        assertEquals(Color.WHITE.getRGB(), tile.getRGB(10, 10));
+        assertEquals(Color.BLACK.getRGB(), tile.getRGB(10, 200));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOriginYaw() throws IOException {
+        Properties properties = describe();
+        properties.setProperty("origin", "150,50,90");
+        File out = new File(folder.getRoot(), "plan.arfp");
+        FloorPlanCompiler.compile(properties, folder.getRoot(), out);
+    }
+}
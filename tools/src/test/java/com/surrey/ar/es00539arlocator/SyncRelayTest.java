@@ -0,0 +1,160 @@
+package com.surrey.ar.es00539arlocator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** A relay and several clients on loopback, checking the positions each client ends up with. */
+public class SyncRelayTest {
+    private static final long WAIT_MILLIS = 5000;
+    // Positions travel rounded to whole millimeters
+    private static final float DELTA = 0.001f;
+
+    private SyncRelay relay;
+    private Thread relayThread;
+    private final List<SyncClient> clients = new ArrayList<>();
+
+    /** What a client was told, as a device would apply it. */
+    private static class Received implements SyncProtocol.Listener {
+        final Map<Long, SyncProtocol.Change> positions = new ConcurrentHashMap<>();
+
+        @Override
+        public void onChanges(List<SyncProtocol.Change> changes) {
+            for (SyncProtocol.Change change : changes) {
+                if (change.isRemoval()) {
+                    positions.remove(change.key);
+                } else {
+                    positions.put(change.key, change);
+                }
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        relay = new SyncRelay(0);
+        relayThread = new Thread(() -> {
+            try {
+                relay.run();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "relay");
+        relayThread.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        for (SyncClient client : clients) {
+            client.close();
+        }
+        relay.close();
+        relayThread.join(WAIT_MILLIS);
+    }
+
+    private SyncClient connect(String location, Received received) throws IOException {
+        SyncClient client = new SyncClient("127.0.0.1", relay.getPort(), location, received);
+        client.start();
+        clients.add(client);
+        return client;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + WAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void assertPosition(Received received, long key, String type,
+                                       float x, float y, float z) {
+        SyncProtocol.Change change = received.positions.get(key);
+        assertEquals(type, change.type);
+        assertEquals(x, change.x, DELTA);
+        assertEquals(y, change.y, DELTA);
+        assertEquals(z, change.z, DELTA);
+    }
+
+    @Test(timeout = 20000)
+    public void everyClientGetsThePositionsOfTheOthers() throws Exception {
+        int count = 5;
+        int objects = 10;
+        List<Received> received = new ArrayList<>();
+        for (int c = 0; c < count; c++) {
+            Received listener = new Received();
+            received.add(listener);
+            SyncClient client = connect("Office", listener);
+            for (int o = 0; o < objects; o++) {
+                client.put(((long) c << 32) | o, "keys", c + o / 8f, -1.25f, -c - o / 16f);
+            }
+        }
+        for (Received listener : received) {
+            await(() -> listener.positions.size() == (count - 1) * objects);
+        }
+        for (int c = 0; c < count; c++) {
+            Received listener = received.get(c);
+            for (int other = 0; other < count; other++) {
+                for (int o = 0; o < objects; o++) {
+                    long key = ((long) other << 32) | o;
+                    if (other == c) {
+                        // A client is never sent its own changes
+                        assertFalse(listener.positions.containsKey(key));
+                    } else {
+                        assertPosition(listener, key, "keys", other + o / 8f, -1.25f,
+                                -other - o / 16f);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void lastMoveAndRemovalArrive() throws Exception {
+        Received received = new Received();
+        SyncClient sender = connect("Office", new Received());
+        connect("Office", received);
+        sender.put(1, "keys", 1f, 0f, 1f);
+        sender.put(2, "oculos", 2f, 0f, 2f);
+        await(() -> received.positions.size() == 2);
+
+        // Moved many times within a tick, only the last position counts
+        for (int i = 0; i <= 100; i++) {
+            sender.put(1, "keys", 1f + i / 100f, 0f, 1f);
+        }
+        sender.remove(2);
+        await(() -> received.positions.size() == 1
+                && Math.abs(received.positions.get(1L).x - 2f) < DELTA);
+        assertPosition(received, 1, "keys", 2f, 0f, 1f);
+        assertNull(received.positions.get(2L));
+    }
+
+    @Test(timeout = 20000)
+    public void lateClientGetsWhatIsKnownInItsLocation() throws Exception {
+        SyncClient office = connect("Office", new Received());
+        SyncClient lab = connect("Lab", new Received());
+        office.put(1, "keys", 3f, 0.5f, -2f);
+        lab.put(2, "oculos", 7f, 0f, 7f);
+        await(() -> relay.getChangesIn() == 2);
+
+        Received late = new Received();
+        connect("Office", late);
+        await(() -> late.positions.size() == 1);
+        assertPosition(late, 1, "keys", 3f, 0.5f, -2f);
+        // Nothing from the other location, even after another tick
+        Thread.sleep(3 * SyncProtocol.TICK_MILLIS);
+        assertEquals(1, late.positions.size());
+    }
+}